@@ -1,11 +1,16 @@
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 
@@ -54,11 +59,35 @@ public class AlgoPrefixSpan{
 	private int minsuppAbsolute;
 
 	/** writer to write output file */
-	BufferedWriter writer = null;
+	PatternWriter writer = null;
+	
+	/** the pattern being written, and its line encoded in the text format */
+	private final PatternWriter.Line line = new PatternWriter.Line();
+	/** the builder of the compressed sets of sequence ids of the patterns */
+	private final SequenceIDSet.Builder sequenceIDBuilder = new SequenceIDSet.Builder();
+	
+	/** writers of the output files when several minimum supports are used in the same execution (or null) */
+	private PatternWriter[] outputWriters = null;
+	
+	/** the absolute minimum support of each output file */
+	private int[] outputSupports = null;
+	
+	/** the number of patterns written to each output file */
+	private int[] outputPatternCounts = null;
 	
 	/** The sequential patterns that are found  (if the user want to keep them into memory) */
 	private SequentialPatterns patterns = null;
 	
+	/** The sequential patterns that are found, in a prefix tree (if the user want to keep them 
+	 * into memory and setUsePatternTrie(true) was called) */
+	private PatternTrie patternTrie = null;
+	
+	/** if true, the patterns kept into memory are stored in a PatternTrie instead of SequentialPatterns */
+	private boolean usePatternTrie = false;
+	/** the consumer receiving the patterns instead of keeping them into memory, if no output file is 
+	 * given (or null) */
+	private PatternConsumer patternConsumer = null;
+	
 	/** maximum pattern length in terms of item count */
 	private int maximumPatternLength = 1000;
 	
@@ -79,6 +108,187 @@ public class AlgoPrefixSpan{
 	/** boolean indicating whether this database contains itemsets with multiple items or not */
 	boolean containsItemsetsWithMultipleItems = false;
 	
+	/** if true, the binary cache file of the input file is used to load the sequence database */
+	boolean useDatasetCache = false;
+	
+	/** if true, the tokens of the sequence database are stored off the heap */
+	boolean useOffHeapStorage = false;
+	
+	/** if true, the tokens of the sequence database are compressed */
+	boolean useCompressedStorage = false;
+	
+	/** if true, the identical sequences of the sequence database are merged */
+	boolean deduplicateSequences = false;
+	
+	/** the weight of each sequence of the database, or null if all the weights are 1 */
+	private int[] sequenceWeights;
+	
+	/** if true, the items are replaced by their slots in the sequence database */
+	boolean recodeItems = false;
+	
+	/** for each slot, the corresponding item (slot 0 is not used). A slot is assigned 
+	 * to each frequent item, by decreasing support, so that the slots are dense 
+	 * identifiers that can be used as indexes in arrays.*/
+	private int[] slotItems;
+	
+	/** for each slot, the position of the corresponding item in the item index of the database */
+	private int[] slotIndexPositions;
+	
+	/** for each slot, the support of the corresponding item */
+	private int[] slotSupports;
+	
+	/** the slot of each item smaller than the length of this table (0 if the item is infrequent) */
+	private int[] slotTable;
+	
+	/** the slot of each frequent item that is too large for the slot table */
+	private IntIntHashMap slotMap;
+	
+	/** the maximum length of the slot table */
+	private static final int MAX_SLOT_TABLE_LENGTH = 1 << 22;
+	
+	/** for each slot, the pair of the corresponding item while it is counted by a scan of a projected 
+	 * database (null otherwise). The same array is used by all the scans, and it is cleared 
+	 * at the end of each scan. */
+	private Pair[] pairsOfSlot;
+	
+	/** same as pairsOfSlot, for the items that appear in an itemset that is a postfix */
+	private Pair[] pairsInPostfixOfSlot;
+	
+	/** buffer for translating the current pattern to the original items when it is saved,
+	 * if the items are replaced by their slots **/
+	private int[] outputBuffer = new int[BUFFERS_SIZE];
+	
+	/** buffer for the frequent items of an itemset while the infrequent items are removed */
+	private int[] itemsetBuffer = new int[BUFFERS_SIZE];
+	
+	/** the pairs, the sequence ids and the positions of the pseudosequences found by the 
+	 * current scan of a projected database, in the order of the scan. They are copied 
+	 * to the arena of the current depth at the end of the scan. */
+	private Pair[] scanPairs = new Pair[BUFFERS_SIZE];
+	private int[] scanSequenceIDs = new int[BUFFERS_SIZE];
+	private int[] scanPositions = new int[BUFFERS_SIZE];
+	
+	/** the number of pseudosequences found by the current scan */
+	private int scanCount = 0;
+	
+	/** for each depth of the recursion (the length of the prefix), the arrays (arena) containing 
+	 * the projected databases of the prefixes of that length that are frequent: the sequence ids 
+	 * and the positions of their pseudosequences. The projected databases of a depth are 
+	 * overwritten by the next scan at the same depth, when the previous ones have been explored. */
+	private int[][] arenaSequenceIDs = new int[16][];
+	private int[][] arenaPositions = new int[16][];
+	
+	/** if true, each projected database is scanned twice: first to count the support of the items,
+	 * and then to build the projected databases of the frequent items only */
+	boolean countBeforeProjecting = false;
+	
+	/** what is done for each item found by a scan of a projected database */
+	private static final int COUNT_AND_PROJECT = 0;
+	private static final int COUNT_SUPPORTS = 1;
+	private static final int PROJECT_FREQUENT_ITEMS = 2;
+	
+	/** for each candidate extension of the current prefix (the slot of an item, followed by the slots
+	 * of the items in a postfix), the id of the last sequence that was counted (or -1), the number of 
+	 * sequences and the support counted by the current scan */
+	private int[] lastSequenceIDOfCandidate;
+	private int[] sizeOfCandidate;
+	private int[] supportOfCandidate;
+	
+	/** the candidates found by the current scan, in the order of their first occurrence */
+	private int[] touchedCandidates;
+	private int touchedCandidateCount = 0;
+	
+	/** the tokens of the sequence database, as they are read by the scans of the projected databases */
+	private TokenStore tokens;
+	
+	/** the position of the first token of each sequence, followed by the number of tokens */
+	private int[] sequenceStarts;
+	
+	/** if true, an index of the positions of the items is built for the long sequences, and the 
+	 * pseudosequences that cannot contain a larger pattern are not kept in the projected databases.
+	 * This is used only if the itemsets contain a single item, and the supports are counted 
+	 * before projecting. */
+	private boolean useSequenceIndex = false;
+	
+	/** the index of the positions of the items in the long sequences (or null) */
+	private SequenceIndex sequenceIndex = null;
+	
+	/** true if the pseudosequences that do not contain any frequent item after the 
+	 * prefix are not added to the projected databases */
+	private boolean skipHopelessPseudoSequences = false;
+	
+	/** a pseudosequence of an indexed sequence is read with the index if it is longer than this 
+	 * number of tokens for each frequent item looked up */
+	private static final int INDEX_LOOKUP_COST = 16;
+	
+	/** the number of threads used to explore the projected databases (1 to explore them sequentially) */
+	private int threadCount = 1;
+	
+	/** the minimum number of pseudosequences of a projected database that is explored by a 
+	 * new task in parallel mode. The smaller ones are explored by the task that finds them. */
+	private static final int MIN_PARALLEL_PROJECTION_SIZE = 1 << 10;
+	
+	/** in parallel mode, the instance of this class that runs the algorithm, and that contains 
+	 * the workers that are not used by a task (null otherwise) */
+	private AlgoPrefixSpan root = null;
+	private ConcurrentLinkedQueue<AlgoPrefixSpan> idleWorkers;
+	
+	/** if this instance is a worker, the tasks started by the current task (null otherwise) */
+	private List<SubtreeTask> forkedTasks = null;
+	
+	/** if larger than 0, the number of most frequent patterns to be found (top-k mode, see setTopK()) */
+	private int topK = 0;
+	
+	/** in top-k mode, the k most frequent patterns found so far, the one with the smallest support 
+	 * (and found last among the patterns with this support) being the first */
+	private PriorityQueue<TopKPattern> topKPatterns = null;
+	
+	/** the patterns that are saved: all the frequent patterns, the closed ones (no larger pattern has 
+	 * the same support) or the maximal ones (no larger pattern is frequent), see setPatternType() */
+	public static final int ALL_PATTERNS = 0;
+	public static final int CLOSED_PATTERNS = 1;
+	public static final int MAXIMAL_PATTERNS = 2;
+	private int patternType = ALL_PATTERNS;
+	
+	/** what is done with a pattern according to its type: it is saved, it is not saved, or neither
+	 * it nor the larger patterns starting with it are saved, so they are not explored */
+	private static final int SAVE_PATTERN = 0;
+	private static final int SKIP_PATTERN = 1;
+	private static final int SKIP_SUBTREE = 2;
+	
+	/** for the checks of the closed patterns, the ids of the sequences containing the current 
+	 * pattern, the positions of its itemsets in the buffer (first and after last token), and the 
+	 * positions of the itemsets of the sequence that is checked in the array of tokens */
+	private int[] checkedSequenceIDs = new int[BUFFERS_SIZE];
+	private int[] patternItemsetStarts = new int[BUFFERS_SIZE];
+	private int[] patternItemsetEnds = new int[BUFFERS_SIZE];
+	private int[] itemsetStarts = new int[BUFFERS_SIZE];
+	private int[] itemsetEnds = new int[BUFFERS_SIZE];
+	
+	/** for the sequence that is checked, the itemset where the first instance of each prefix of the 
+	 * pattern ends, the itemset where the last instance of each suffix starts, and the itemsets 
+	 * matched by each itemset of the pattern in the last instance ending with the first instance 
+	 * of the pattern (the periods of BIDE are between them) */
+	private int[] firstInstanceEnds = new int[BUFFERS_SIZE];
+	private int[] lastInstanceStarts = new int[BUFFERS_SIZE];
+	private int[] lastInFirstStarts = new int[BUFFERS_SIZE];
+	
+	/** the candidate extensions of the current pattern that are found in all the sequences checked so far: 
+	 * where the item is inserted (see markPeriod()), its slot, and if it is also in all the semi-maximum periods */
+	private int[] candidatePeriods = new int[BUFFERS_SIZE];
+	private int[] candidateSlots = new int[BUFFERS_SIZE];
+	private boolean[] candidateInSemiPeriods = new boolean[BUFFERS_SIZE];
+	private int candidateCount = 0;
+	
+	/** for each slot, the last stamp of a period (or semi-maximum period) containing its item */
+	private int[] periodStampOfSlot;
+	private int[] semiPeriodStampOfSlot;
+	private int periodStamp = 0;
+	
+	/** in maximal mode, true if the pattern whose projected database is explored next is closed, 
+	 * and it is saved if the scan of its projected database does not find a frequent larger pattern */
+	private boolean maximalityUnchecked = false;
+	
 	/**
 	 * Default constructor
 	 */
@@ -100,8 +310,45 @@ public class AlgoPrefixSpan{
 		
 		// Load the sequence database
 		sequenceDatabase = new SequenceDatabase(); 
-		sequenceDatabase.loadFile(inputFile);
-		sequenceCount = sequenceDatabase.size();
+		sequenceDatabase.setUseOffHeapStorage(useOffHeapStorage);
+		sequenceDatabase.setUseCompressedStorage(useCompressedStorage);
+		sequenceDatabase.loadFile(inputFile, useDatasetCache);
+		
+		return runAlgorithm(minsupRelative, outputFilePath);
+	}
+	
+	/**
+	 * Run the algorithm on a sequence database that is already loaded, for example
+	 * to mine a sample without saving it to a file and reading it again. 
+	 * The sequences of the database are modified by the algorithm.
+	 * @param database : a sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 *                         or null if you want the result to be saved into memory
+	 * @return return the result, if saved into memory, otherwise null
+	 * @throws IOException  exception if error while writing the file
+	 */
+	public SequentialPatterns runAlgorithm(SequenceDatabase database, double minsupRelative, String outputFilePath) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		sequenceDatabase = database;
+		return runAlgorithm(minsupRelative, outputFilePath);
+	}
+	
+	/**
+	 * Run the algorithm on the sequence database that has been loaded
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 *                         or null if you want the result to be saved into memory
+	 * @return return the result, if saved into memory, otherwise null
+	 * @throws IOException  exception if error while writing the file
+	 */
+	private SequentialPatterns runAlgorithm(double minsupRelative, String outputFilePath) throws IOException {
+		if(deduplicateSequences){
+			sequenceDatabase.deduplicate();
+		}
+		sequenceCount = sequenceDatabase.getTotalWeight();
 		
 		// convert to a absolute minimum support
 		this.minsuppAbsolute = (int) Math.ceil(minsupRelative * sequenceCount);
@@ -123,6 +370,94 @@ public class AlgoPrefixSpan{
 		return patterns;
 	}
 	
+	/**
+	 * Run the algorithm with several minimum supports in a single execution. Since a pattern is 
+	 * not frequent if one of its prefixes is not frequent, the patterns of every minimum support are found
+	 * by a single exploration with the smallest minimum support, and each pattern is written to the
+	 * output file of every minimum support that it reaches. Each output file is the same as the output
+	 * file of an execution with its own minimum support.
+	 * @param inputFile : a sequence database
+	 * @param minsupRelatives  :  the minimum supports as values in [0,1]
+	 * @param outputFilePaths : the paths of the output files, one for each minimum support
+	 * @return the number of patterns written to each output file
+	 * @throws IOException  exception if error while writing the files
+	 */
+	public int[] runAlgorithm(String inputFile, double[] minsupRelatives, String[] outputFilePaths) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		// Load the sequence database
+		sequenceDatabase = new SequenceDatabase(); 
+		sequenceDatabase.setUseOffHeapStorage(useOffHeapStorage);
+		sequenceDatabase.setUseCompressedStorage(useCompressedStorage);
+		sequenceDatabase.loadFile(inputFile, useDatasetCache);
+		
+		return runAlgorithm(minsupRelatives, outputFilePaths);
+	}
+	
+	/**
+	 * Run the algorithm with several minimum supports in a single execution, on a sequence database
+	 * that is already loaded. The sequences of the database are modified by the algorithm.
+	 * @param database : a sequence database
+	 * @param minsupRelatives  :  the minimum supports as values in [0,1]
+	 * @param outputFilePaths : the paths of the output files, one for each minimum support
+	 * @return the number of patterns written to each output file
+	 * @throws IOException  exception if error while writing the files
+	 */
+	public int[] runAlgorithm(SequenceDatabase database, double[] minsupRelatives, String[] outputFilePaths) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		sequenceDatabase = database;
+		return runAlgorithm(minsupRelatives, outputFilePaths);
+	}
+	
+	/**
+	 * Run the algorithm with several minimum supports on the sequence database that has been loaded
+	 * @param minsupRelatives  :  the minimum supports as values in [0,1]
+	 * @param outputFilePaths : the paths of the output files, one for each minimum support
+	 * @return the number of patterns written to each output file
+	 * @throws IOException  exception if error while writing the files
+	 */
+	private int[] runAlgorithm(double[] minsupRelatives, String[] outputFilePaths) throws IOException {
+		if(deduplicateSequences){
+			sequenceDatabase.deduplicate();
+		}
+		sequenceCount = sequenceDatabase.getTotalWeight();
+		
+		// convert to absolute minimum supports, and open the output files
+		outputSupports = new int[minsupRelatives.length];
+		outputWriters = new PatternWriter[minsupRelatives.length];
+		outputPatternCounts = new int[minsupRelatives.length];
+		int smallest = 0;
+		for(int i = 0; i < minsupRelatives.length; i++){
+			outputSupports[i] = Math.max(1, (int) Math.ceil(minsupRelatives[i] * sequenceCount));
+			outputWriters[i] = new PatternWriter(outputFilePaths[i], showSequenceIdentifiers);
+			if(outputSupports[i] < outputSupports[smallest]){
+				smallest = i;
+			}
+		}
+		
+		// run the algorithm with the smallest minimum support
+		this.minsuppAbsolute = outputSupports[smallest];
+		writer = outputWriters[smallest];
+		prefixSpan(sequenceDatabase, outputFilePaths[smallest]);
+		
+		sequenceDatabase = null;
+		
+		// record end time
+		endTime = System.currentTimeMillis();
+		// close the output files
+		for(PatternWriter outputWriter : outputWriters){
+			outputWriter.close();
+		}
+		int[] patternCounts = outputPatternCounts;
+		outputWriters = null;
+		outputSupports = null;
+		outputPatternCounts = null;
+		return patternCounts;
+	}
+	
 	/**
 	 * Run the algorithm
 	 * @param database : a sequence database
@@ -143,7 +478,12 @@ public class AlgoPrefixSpan{
 		
 		// Load the sequence database
 		sequenceDatabase = new SequenceDatabase(); 
-		sequenceDatabase.loadFile(inputFile);
+		sequenceDatabase.setUseOffHeapStorage(useOffHeapStorage);
+		sequenceDatabase.setUseCompressedStorage(useCompressedStorage);
+		sequenceDatabase.loadFile(inputFile, useDatasetCache);
+		if(deduplicateSequences){
+			sequenceDatabase.deduplicate();
+		}
 		
 		// run the algorithm
 		prefixSpan(sequenceDatabase, outputFilePath);
@@ -159,6 +499,73 @@ public class AlgoPrefixSpan{
 		return patterns;
 	}
 	
+	/**
+	 * Run the algorithm lazily: the patterns are found one at a time, when they are requested
+	 * from the returned iterator, instead of being saved to a file or in memory. The caller can
+	 * stop at any time, and the memory used is bounded by the projected databases of the
+	 * prefixes of the current pattern. The patterns are returned in the same order as they are 
+	 * written to the output file by runAlgorithm() with a single thread, with the ids of the 
+	 * sequences containing them. This instance must not be used to run the algorithm again 
+	 * before the iterator is exhausted or discarded.
+	 * @param inputFile : a sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @return an iterator over the frequent sequential patterns
+	 * @throws IOException  exception if error while reading the file
+	 */
+	public Iterator<SequentialPattern> iterator(String inputFile, double minsupRelative) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		// Load the sequence database
+		sequenceDatabase = new SequenceDatabase(); 
+		sequenceDatabase.setUseOffHeapStorage(useOffHeapStorage);
+		sequenceDatabase.setUseCompressedStorage(useCompressedStorage);
+		sequenceDatabase.loadFile(inputFile, useDatasetCache);
+		
+		return iterator(minsupRelative);
+	}
+	
+	/**
+	 * Run the algorithm lazily on a sequence database that is already loaded (see 
+	 * iterator(String, double)). The sequences of the database are modified by the algorithm.
+	 * @param database : a sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @return an iterator over the frequent sequential patterns
+	 */
+	public Iterator<SequentialPattern> iterator(SequenceDatabase database, double minsupRelative) {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		sequenceDatabase = database;
+		return iterator(minsupRelative);
+	}
+	
+	/**
+	 * Run the algorithm lazily on the sequence database that has been loaded
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @return an iterator over the frequent sequential patterns
+	 */
+	private Iterator<SequentialPattern> iterator(double minsupRelative) {
+		if(deduplicateSequences){
+			sequenceDatabase.deduplicate();
+		}
+		sequenceCount = sequenceDatabase.getTotalWeight();
+		
+		// convert to a absolute minimum support
+		this.minsuppAbsolute = (int) Math.ceil(minsupRelative * sequenceCount);
+		if(this.minsuppAbsolute == 0){ // protection
+			this.minsuppAbsolute = 1;
+		}
+		patternCount = 0;
+		
+		// the patterns are neither saved to a file nor in memory
+		writer = null;
+		patterns = null;
+		patternTrie = null;
+		prepareSequenceDatabase();
+		return new PatternIterator();
+	}
+	
 	/**
 	 * This is the main method for the PrefixSpan algorithm that is called
 	 * to start the algorithm
@@ -171,209 +578,804 @@ public class AlgoPrefixSpan{
 		// if the user want to keep the result into memory
 		if(outputFilePath == null){
 			writer = null;
-			patterns = new SequentialPatterns("FREQUENT SEQUENTIAL PATTERNS");
+			if(patternConsumer != null){
+				patterns = null;
+				patternTrie = null;
+			}else if(usePatternTrie){
+				patterns = null;
+				patternTrie = new PatternTrie(showSequenceIdentifiers);
+			}else{
+				patterns = new SequentialPatterns("FREQUENT SEQUENTIAL PATTERNS");
+				patternTrie = null;
+			}
 		}else{ // if the user want to save the result to a file
 			patterns = null;
-			writer = new BufferedWriter(new FileWriter(outputFilePath)); 
+			patternTrie = null;
+			// with several minimum supports, the output files are already open
+			if(outputWriters == null){
+				writer = new PatternWriter(outputFilePath, showSequenceIdentifiers);
+			}
+		}
+		
+		// find the frequent items and remove the infrequent ones
+		prepareSequenceDatabase();
+		
+		//============= WE EXPLORE EACH PROJECTED DATABASE  ================================
+		if(topK > 0){
+			exploreTopK();
+		}else{
+			exploreFrequentItems();
 		}
 		
-		sequenceCount = sequenceDatabase.size();
+		// the patterns in the prefix tree can be looked up when they are all known
+		if(patternTrie != null){
+			patternTrie.finish();
+		}
+	}
+	
+	/**
+	 * Explore the projected databases in top-k mode, and save the k most frequent patterns. 
+	 * If there are at least k frequent items, the minimum support is the support of the k-th one, 
+	 * and it is raised while the patterns are found. Otherwise, a first exploration is done with
+	 * the support of the most frequent item as minimum support, and it is done again with half
+	 * the minimum support until k patterns are found (or the minimum support given is reached).
+	 * The first explorations are fast because their minimum support is large, and they avoid 
+	 * exploring the patterns with a very small support before k patterns are found.
+	 * @throws IOException if error writing to file
+	 */
+	private void exploreTopK() throws IOException {
+		int lowerBound = minsuppAbsolute;
+		int frequentItemCount = slotItems.length - 1;
+		int roundSupport = lowerBound;
+		if(frequentItemCount >= topK){
+			roundSupport = slotSupports[topK];
+		}else if(frequentItemCount > 0){
+			roundSupport = slotSupports[1];
+		}
+		while(true){
+			minsuppAbsolute = roundSupport;
+			patternCount = 0;
+			topKPatterns = new PriorityQueue<TopKPattern>();
+			exploreFrequentItems();
+			// if k patterns have been found, the minimum support has been raised above the k-th largest support
+			if(topKPatterns.size() == topK || roundSupport == lowerBound){
+				break;
+			}
+			roundSupport = Math.max(lowerBound, roundSupport / 2);
+		}
+		if(topKPatterns.size() == topK){
+			minsuppAbsolute = topKPatterns.peek().support;
+		}
+		// the patterns are saved when they are all known
+		saveTopKPatterns();
+	}
+	
+	/**
+	 * Find the frequent items of the sequence database, assign their slots and remove the 
+	 * infrequent items, before the projected databases of the frequent items are explored.
+	 * The output (a file or the memory) must have been chosen.
+	 */
+	private void prepareSequenceDatabase() {
+		sequenceCount = sequenceDatabase.getTotalWeight();
+		// the weight of each sequence, if the identical sequences have been merged
+		sequenceWeights = sequenceDatabase.getSequenceWeights();
 		
 		//============== CALCULATE FREQUENCY OF SINGLE ITEMS =============
 		// We have to scan the database to find all frequent sequential patterns of size 1.
 		// We note the sequences in which the items appear.
-		Map<Integer, List<Integer>> mapSequenceID = findSequencesContainingItems();
+		findSequencesContainingItems();
+		
+		// in top-k mode, the k most frequent items are k patterns, so the k-th largest
+		// support of the items is a first minimum support
+		if(topK > 0 && sequenceDatabase.getIndexedItemCount() >= topK){
+			this.minsuppAbsolute = Math.max(minsuppAbsolute, largestItemSupport(topK));
+		}
+		
+		// We assign a slot to each frequent item
+		assignSlotsToFrequentItems();
+		
+		// the tokens are replaced in place (or encoded again) by the removal of the infrequent items
+		tokens = sequenceDatabase.getTokens();
+		sequenceStarts = sequenceDatabase.getSequenceStarts();
+		
+		// the pseudosequences that cannot contain a larger pattern are needed only for
+		// the ids of the sequences containing the patterns
+		boolean sequenceIDsNeeded = sequenceIDsNeeded();
+		skipHopelessPseudoSequences = useSequenceIndex && countBeforeProjecting
+				&& !containsItemsetsWithMultipleItems && !sequenceIDsNeeded && patternType == ALL_PATTERNS;
 
-		//====== Remove infrequent items and explore each projected database ================
+		//====== Remove infrequent items ================
 		// if this database have multiple items per itemset
 		if(containsItemsetsWithMultipleItems){
-			prefixspanWithMultipleItems(mapSequenceID);	
+			prefixspanWithMultipleItems();	
 		}else{
 			// if this database does not have multiple items per itemset
 			// we use an optimize version of the same code
-			prefixspanWithSingleItems(mapSequenceID);	
+			prefixspanWithSingleItems();	
 		}
 	}
 	
 	/**
-	 * Remove infrequent items and explore each projected databas for itemsets of size 1
-	 * @param mapSequenceID the set of items with their frequencies
-	 * @throws IOException if error writing to file
+	 * Find the k-th largest support of the items of the sequence database. The item index
+	 * of the sequence database must have been built.
+	 * @param k the rank of the support (at most the number of items)
+	 * @return the support
+	 */
+	private int largestItemSupport(int k) {
+		int itemCount = sequenceDatabase.getIndexedItemCount();
+		int[] supports = new int[itemCount];
+		for(int i=0; i < itemCount; i++){
+			supports[i] = weightedSupport(sequenceDatabase.getSequenceIDsOfIndexedItem(i));
+		}
+		Arrays.sort(supports);
+		return supports[itemCount - k];
+	}
+	
+	/**
+	 * Assign a slot to each frequent item, by decreasing support (the most frequent item
+	 * gets the slot 1). The item index of the sequence database must have been built.
+	 */
+	private void assignSlotsToFrequentItems() {
+		// sort the frequent items by decreasing support, and then by position in the index
+		int itemCount = sequenceDatabase.getIndexedItemCount();
+		long[] keys = new long[itemCount];
+		int frequentItemCount = 0;
+		int maxItem = 0;
+		for(int i=0; i < itemCount; i++){
+			int support = weightedSupport(sequenceDatabase.getSequenceIDsOfIndexedItem(i));
+			if(support >= minsuppAbsolute){
+				keys[frequentItemCount++] = ((long)(Integer.MAX_VALUE - support) << 32) | i;
+				maxItem = Math.max(maxItem, sequenceDatabase.getIndexedItem(i));
+			}
+		}
+		Arrays.sort(keys, 0, frequentItemCount);
+		
+		// assign the slots
+		slotItems = new int[frequentItemCount + 1];
+		slotIndexPositions = new int[frequentItemCount + 1];
+		slotSupports = new int[frequentItemCount + 1];
+		slotTable = new int[Math.min(maxItem + 1, MAX_SLOT_TABLE_LENGTH)];
+		slotMap = new IntIntHashMap();
+		for(int slot=1; slot <= frequentItemCount; slot++){
+			int position = (int) keys[slot - 1];
+			int item = sequenceDatabase.getIndexedItem(position);
+			slotItems[slot] = item;
+			slotIndexPositions[slot] = position;
+			slotSupports[slot] = Integer.MAX_VALUE - (int) (keys[slot - 1] >>> 32);
+			if(item < slotTable.length){
+				slotTable[item] = slot;
+			}else{
+				slotMap.put(item, slot);
+			}
+		}
+		allocateScanArrays();
+	}
+	
+	/**
+	 * Allocate the arrays indexed by slots that are used by the scans of the projected databases.
+	 */
+	private void allocateScanArrays() {
+		pairsOfSlot = new Pair[slotItems.length];
+		pairsInPostfixOfSlot = new Pair[slotItems.length];
+		if(countBeforeProjecting){
+			int candidateCount = 2 * slotItems.length;
+			lastSequenceIDOfCandidate = new int[candidateCount];
+			Arrays.fill(lastSequenceIDOfCandidate, -1);
+			sizeOfCandidate = new int[candidateCount];
+			supportOfCandidate = new int[candidateCount];
+			touchedCandidates = new int[candidateCount];
+		}
+		if(patternType != ALL_PATTERNS){
+			periodStampOfSlot = new int[slotItems.length];
+			semiPeriodStampOfSlot = new int[slotItems.length];
+			periodStamp = 0;
+		}
+	}
+	
+	/**
+	 * Calculate the support of a set of sequences, which is the sum of their weights.
+	 * @param sequenceIDs the ids of the sequences
+	 * @return the support
+	 */
+	private int weightedSupport(List<Integer> sequenceIDs) {
+		if(sequenceWeights == null){
+			return sequenceIDs.size();
+		}
+		int support = 0;
+		for(int sequenceID : sequenceIDs){
+			support += sequenceWeights[sequenceID];
+		}
+		return support;
+	}
+	
+	/**
+	 * Get the ids of the sequences of the input file corresponding to some sequences of
+	 * the database. They are different if the identical sequences have been merged.
+	 * @param sequenceIDs the ids of the sequences of the database, in increasing order
+	 * @return the compressed set of the ids of the sequences of the input file
+	 */
+	private SequenceIDSet originalSequenceIDs(List<Integer> sequenceIDs) {
+		for(int sequenceID : sequenceIDs){
+			addOriginalSequenceIDs(sequenceID);
+		}
+		return sequenceIDBuilder.build();
+	}
+	
+	/**
+	 * Add the ids of the sequences of the input file corresponding to a sequence of the database
+	 * to the set that is built.
+	 * @param sequenceID the id of the sequence of the database
+	 */
+	private void addOriginalSequenceIDs(int sequenceID) {
+		if(sequenceWeights == null){
+			sequenceIDBuilder.add(sequenceID);
+			return;
+		}
+		for(int originalID : sequenceDatabase.getOriginalSequenceIDs(sequenceID)){
+			sequenceIDBuilder.add(originalID);
+		}
+	}
+	
+	/**
+	 * Get the ids of the sequences of the input file containing the pseudosequences of a projected database.
+	 * @param projectedDatabase the pair containing the projected database
+	 * @return the compressed set of the ids of the sequences of the input file
+	 */
+	private SequenceIDSet sequenceIDsOf(Pair projectedDatabase) {
+		for (int i = 0; i< projectedDatabase.size(); i++) {
+			addOriginalSequenceIDs(projectedDatabase.getSequenceID(i));
+		}
+		return sequenceIDBuilder.build();
+	}
+	
+	/**
+	 * Get the slot of an item
+	 * @param item the item
+	 * @return the slot, or 0 if the item is not frequent
+	 */
+	private int slotOf(int item) {
+		if(item < slotTable.length){
+			return slotTable[item];
+		}
+		return slotMap.get(item, 0);
+	}
+	
+	/**
+	 * Get the slot of a token of the sequence database, which is the token itself
+	 * if the items are replaced by their slots.
+	 * @param token the token (an item)
+	 * @return the slot
 	 */
-	private void prefixspanWithSingleItems(
-			Map<Integer, List<Integer>> mapSequenceID) throws IOException {
+	private int slotOfToken(int token) {
+		return recodeItems ? token : slotOf(token);
+	}
+	
+	/**
+	 * Remove infrequent items from a database whose itemsets contain a single item
+	 */
+	private void prefixspanWithSingleItems() {
 		//=============== REMOVE INFREQUENT ITEMS ========================
 		// We scan the database to remove infrequent items  and resize sequences after removal
+		TokenStore tokens = sequenceDatabase.getTokens();
+		int[] sequenceStarts = sequenceDatabase.getSequenceStarts();
+		
+		// we will copy the frequent items one by one but not those items that are infrequent
+		// The following variable will be used to remember the position were to copy (we start at 0).
+		int currentPosition = 0;
+		// the position of the first token of the current sequence before the removal
+		int readPosition = sequenceStarts[0];
+		
+		// the tokens are written by a writer, which replaces them in place or encodes them again
+		TokenStore.Writer writer = tokens.rewrite();
+		
 		// for each sequence in the current database
 		for(int i=0; i < sequenceDatabase.size(); i++){
-			int[] sequence  = sequenceDatabase.getSequences().get(i);
-			
-			// we will copy the frequent items one by one but not those items that are infrequent
-			// The following variable will be used to remember the position were to copy (we start at 0).
-			int currentPosition = 0;
+			int sequenceEnd = sequenceStarts[i+1];
+			// the sequence will start at the current position after the removal
+			int sequenceStart = currentPosition;
+			sequenceStarts[i] = sequenceStart;
+			writer.startSequence();
 			
 			// for each token in this sequence (item, separator between itemsets (-1) or end of sequence (-2)
-			for(int j =0; j < sequence.length; j++){
-				int token = sequence[j];
+			for(int j = readPosition; j < sequenceEnd; j++){
+				int token = tokens.get(j);
 				
 				// if it is an item
 				if(token > 0){
-					boolean isFrequent = mapSequenceID.get(token).size() >= minsuppAbsolute;
+					int slot = slotOf(token);
 					
 					// if the item is frequent
-					if(isFrequent){
-						// copy the item to the current position
-						sequence[currentPosition] = token;
+					if(slot > 0){
+						// copy the item (or its slot) to the current position
+						writer.write(recodeItems ? slot : token);
 						// increment the current position
 						currentPosition++;
 					}	
 				}else if(token == -2){
 					// if the sequence is not empty after having removed the infrequent items
-					if(currentPosition >0){
-						// copy the item to the current position
-						sequence[currentPosition] = -2;
-						
-						// now replace the previous array with the new array
-						int[] newSequence = new int[currentPosition+1];
-						System.arraycopy(sequence, 0, newSequence, 0, currentPosition+1);
-						sequenceDatabase.getSequences().set(i, newSequence);
-						// continue to next sequence
-						continue; 
-					}else{
-						// if the sequence is  empty, delete this sequence by replacing it with null
-						sequenceDatabase.getSequences().set(i, null);
+					// we copy the end of sequence, otherwise the sequence becomes empty
+					if(currentPosition > sequenceStart){
+						writer.write(-2);
+						currentPosition++;
 					}
 				}
 			}
+			readPosition = sequenceEnd;
 		}
+		writer.finish();
+		sequenceStarts[sequenceDatabase.size()] = currentPosition;
 		
-		//============= WE EXPLORE EACH PROJECTED DATABASE  ================================
-		// For each frequent item
-		for(Entry<Integer, List<Integer>> entry : mapSequenceID.entrySet()){
-			int support = entry.getValue().size();
-			// if the item is frequent  (has a support >= minsup)
-			if(support >= minsuppAbsolute){ 
-				int item = entry.getKey();
-
-				// The prefix is a frequent sequential pattern.
-				// We save it in the result.
-				savePattern(item, support, entry.getValue());  
-
-				// We make a recursive call to try to find larger sequential
-				// patterns starting with this prefix
-				if(maximumPatternLength >1){
-					
-					// Create the prefix for this projected database by copying the item in the buffer
-					patternBuffer[0] = item;
-
-					// build the projected database for that item
-					List<PseudoSequence> projectedDatabase  = buildProjectedDatabaseSingleItems(item, entry.getValue());
-					
-					// recursive call
-					recursionSingleItems(projectedDatabase, 2, 0); 
-				}
-			}
+		// index the positions of the items in the long sequences
+		if(useSequenceIndex && countBeforeProjecting){
+			sequenceIndex = new SequenceIndex(tokens, sequenceStarts, sequenceDatabase.size(), 
+					SequenceIndex.DEFAULT_MIN_INDEXED_LENGTH);
 		}
 	}
 
 
 	/**
-	 * Remove infrequent items and explore each projected databas for itemsets of size 1
-	 * @param mapSequenceID the set of items with their frequencies
-	 * @throws IOException
+	 * Remove infrequent items from a database whose itemsets may contain multiple items
 	 */
-	private void prefixspanWithMultipleItems(Map<Integer, List<Integer>> mapSequenceID) throws IOException {
+	private void prefixspanWithMultipleItems() {
 
 		//=============== REMOVE INFREQUENT ITEMS ========================
 		// We scan the database to remove infrequent items  and resize sequences after removal
+		TokenStore tokens = sequenceDatabase.getTokens();
+		int[] sequenceStarts = sequenceDatabase.getSequenceStarts();
+		
+		// we will copy the frequent items one by one but not those items that are infrequent
+		// The following variable will be used to remember the position were to copy (we start at 0).
+		int currentPosition = 0;
+		// the position of the first token of the current sequence before the removal
+		int readPosition = sequenceStarts[0];
+		
+		// the tokens are written by a writer, which replaces them in place or encodes them again
+		TokenStore.Writer writer = tokens.rewrite();
+		
 		// for each sequence in the current database
 		for(int i=0; i < sequenceDatabase.size(); i++){
-			int[] sequence  = sequenceDatabase.getSequences().get(i);
-			
-			// we will copy the frequent items one by one but not those items that are infrequent
-			// The following variable will be used to remember the position were to copy (we start at 0).
-			int currentPosition = 0;
+			int sequenceEnd = sequenceStarts[i+1];
+			// the sequence will start at the current position after the removal
+			int sequenceStart = currentPosition;
+			sequenceStarts[i] = sequenceStart;
+			writer.startSequence();
 			// variable to count the number of items in the current itemset (after removing infrequent items)
 			int currentItemsetItemCount = 0;
 			
 			// for each token in this sequence (item, separator between itemsets (-1) or end of sequence (-2)
-			for(int j =0; j < sequence.length; j++){
-				int token = sequence[j];
+			for(int j = readPosition; j < sequenceEnd; j++){
+				int token = tokens.get(j);
 				
 				// if it is an item
 				if(token > 0){
-					boolean isFrequent = mapSequenceID.get(token).size() >= minsuppAbsolute;
+					int slot = slotOf(token);
 					
 					// if the item is frequent
-					if(isFrequent){
-						// copy the item to the current position
-						sequence[currentPosition] = token;
-						// increment the current position
-						currentPosition++;
+					if(slot > 0){
+						// keep the item (or its slot) in the current itemset
+						if(currentItemsetItemCount == itemsetBuffer.length){
+							itemsetBuffer = Arrays.copyOf(itemsetBuffer, itemsetBuffer.length * 2);
+						}
+						itemsetBuffer[currentItemsetItemCount] = recodeItems ? slot : token;
 						// increment the number of items in the current itemset
 						currentItemsetItemCount++;
 					}	
 				}else if(token == -1){
 					// if this itemset is not empty after having removed the infrequent items
 					if(currentItemsetItemCount >0){
+						// copy the items of the itemset to the current position
+						currentPosition += writeItemset(writer, currentItemsetItemCount);
 						// copy the itemset separator (-1) to the current position
-						sequence[currentPosition] = -1;
+						writer.write(-1);
 						// increment the current position
 						currentPosition++;
 						// reset the number of items in the current itemset for the next itemset
 						currentItemsetItemCount = 0;
 					}
 				}else if(token == -2){
+					// copy the items of the last itemset if it was not ended by a separator
+					currentPosition += writeItemset(writer, currentItemsetItemCount);
+					currentItemsetItemCount = 0;
 					// if the sequence is not empty after having removed the infrequent items
-					if(currentPosition >0){
-						// copy the item to the current position
-						sequence[currentPosition] = -2;
-						
-						// now replace the previous array with the new array
-						int[] newSequence = new int[currentPosition+1];
-						System.arraycopy(sequence, 0, newSequence, 0, currentPosition+1);
-						sequenceDatabase.getSequences().set(i, newSequence);
-						// continue to next sequence
-						continue; 
-					}else{
-						// if the sequence is  empty, delete this sequence by replacing it with null
-						sequenceDatabase.getSequences().set(i, null);
+					// we copy the end of sequence, otherwise the sequence becomes empty
+					if(currentPosition > sequenceStart){
+						writer.write(-2);
+						currentPosition++;
 					}
 				}
 			}
+			currentPosition += writeItemset(writer, currentItemsetItemCount);
+			readPosition = sequenceEnd;
 		}
-		
-		//============= WE EXPLORE EACH PROJECTED DATABASE  ================================
-		// For each frequent item
-		for(Entry<Integer, List<Integer>> entry : mapSequenceID.entrySet()){
-			int support = entry.getValue().size();
-			// if the item is frequent  (has a support >= minsup)
-			if(support >= minsuppAbsolute){ 
-				int item = entry.getKey();
-
-				// The prefix is a frequent sequential pattern.
-				// We save it in the result.
-				savePattern(item, support, entry.getValue());  
-
-				// We make a recursive call to try to find larger sequential
-				// patterns starting with this prefix
-				if(maximumPatternLength >1){
-					
-					// Create the prefix for this projected database by copying the item in the buffer
-					patternBuffer[0] = item;
-
-					// build the projected database for that item
-					List<PseudoSequence> projectedDatabase  = buildProjectedDatabaseFirstTimeMultipleItems(item, entry.getValue());
-					
-					// recursive call
-					recursion(patternBuffer, projectedDatabase, 2, 0); 
-				}
-			}
-		}
+		writer.finish();
+		sequenceStarts[sequenceDatabase.size()] = currentPosition;
 	}
 	
 	/**
-	 * This method saves a sequential pattern containing a single item to the output file or
+	 * Save each frequent item and explore its projected database, sequentially or 
+	 * with several threads (see setThreadCount()).
+	 * @throws IOException if error writing to file
+	 */
+	private void exploreFrequentItems() throws IOException {
+		// in top-k mode, the minimum support is raised by the patterns found, so they are explored sequentially
+		boolean parallel = threadCount > 1 && topK == 0;
+		// in closed or maximal mode, the items whose larger patterns cannot be saved are not explored
+		boolean[] skippedSubtrees = new boolean[slotItems.length];
+		// For each frequent item
+		for(int slot = 1; slot < slotItems.length; slot++){
+			// in top-k mode, the items are not frequent anymore after the first one whose 
+			// support is smaller than the minimum support (the slots are ordered by support)
+			if(slotSupports[slot] < minsuppAbsolute){
+				break;
+			}
+			List<Integer> sequenceIDs = sequenceDatabase.getSequenceIDsOfIndexedItem(slotIndexPositions[slot]);
+			
+			// in closed or maximal mode, check if the item is saved and explored
+			int check = SAVE_PATTERN;
+			if(patternType != ALL_PATTERNS && topK == 0){
+				patternBuffer[0] = recodeItems ? slot : slotItems[slot];
+				check = checkPattern(0, sequenceIDs);
+				skippedSubtrees[slot] = check == SKIP_SUBTREE;
+			}
+
+			// The prefix is a frequent sequential pattern.
+			// We save it in the result.
+			if(check == SAVE_PATTERN){
+				savePattern(slotItems[slot], slotSupports[slot], sequenceIDs);  
+			}
+
+			// We make a recursive call to try to find larger sequential
+			// patterns starting with this prefix
+			if(maximumPatternLength >1 && parallel == false && topK == 0 && check != SKIP_SUBTREE){
+				exploreItem(slot);
+			}
+		}
+		
+		// in top-k mode, all the items are saved before they are explored, so that the minimum support
+		// is raised by the most frequent ones. The items whose support has become smaller than the
+		// minimum support are not explored (the slots are ordered by decreasing support).
+		if(maximumPatternLength >1 && topK > 0){
+			for(int slot = 1; slot < slotItems.length && slotSupports[slot] >= minsuppAbsolute; slot++){
+				exploreItem(slot);
+			}
+		}
+		
+		// in parallel mode, the projected database of each item is explored by a task. The tasks 
+		// explore the projected databases of the larger patterns in new tasks (work-stealing)
+		if(maximumPatternLength >1 && parallel){
+			idleWorkers = new ConcurrentLinkedQueue<AlgoPrefixSpan>();
+			ForkJoinPool pool = new ForkJoinPool(threadCount);
+			try{
+				List<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+				for(int slot = 1; slot < slotItems.length; slot++){
+					if(skippedSubtrees[slot]){
+						continue;
+					}
+					SubtreeTask task = new SubtreeTask(slot, null, 0, null, false);
+					pool.execute(task);
+					tasks.add(task);
+				}
+				for(SubtreeTask task : tasks){
+					patternCount += task.join();
+				}
+			}catch(UncheckedIOException e){
+				throw e.getCause();
+			}finally{
+				pool.shutdown();
+				idleWorkers = null;
+			}
+		}
+	}
+	
+	/**
+	 * Explore the projected database of a frequent item, to find the larger patterns starting with it.
+	 * @param slot the slot of the item
+	 * @throws IOException if error writing to file
+	 */
+	private void exploreItem(int slot) throws IOException {
+		List<Integer> sequenceIDs = sequenceDatabase.getSequenceIDsOfIndexedItem(slotIndexPositions[slot]);
+		// the item as it appears in the sequences
+		int token = recodeItems ? slot : slotItems[slot];
+		
+		// Create the prefix for this projected database by copying the item in the buffer
+		patternBuffer[0] = token;
+
+		// build the projected database for that item and make a recursive call
+		if(containsItemsetsWithMultipleItems){
+			Pair projectedDatabase  = buildProjectedDatabaseFirstTimeMultipleItems(token, sequenceIDs);
+			recursion(patternBuffer, projectedDatabase, 2, 0); 
+		}else{
+			Pair projectedDatabase  = buildProjectedDatabaseSingleItems(token, sequenceIDs);
+			recursionSingleItems(projectedDatabase, 2, 0); 
+		}
+	}
+	
+	/**
+	 * Explore the projected database of a frequent pattern found by a recursive call, to find the 
+	 * larger patterns. In parallel mode, the large projected databases are explored by a new task
+	 * and the small ones are explored immediately by the current task.
+	 * @param pair the pair containing the projected database
+	 * @param k the length of the larger patterns
+	 * @param lastBufferPosition the last position of the frequent pattern in the buffer
+	 * @throws IOException if error writing to file
+	 */
+	private void explore(Pair pair, int k, int lastBufferPosition) throws IOException {
+		if(forkedTasks != null && pair.size() >= MIN_PARALLEL_PROJECTION_SIZE){
+			// the new task needs its own copy of the prefix and of the projected database,
+			// because the buffer and the arena are reused by the current task
+			int[] prefix = Arrays.copyOf(patternBuffer, lastBufferPosition + 1);
+			SubtreeTask task = new SubtreeTask(k, prefix, lastBufferPosition, pair.copy(), maximalityUnchecked);
+			maximalityUnchecked = false;
+			task.fork();
+			forkedTasks.add(task);
+		}else if(containsItemsetsWithMultipleItems){
+			recursion(patternBuffer, pair, k, lastBufferPosition);
+		}else{
+			recursionSingleItems(pair, k, lastBufferPosition);
+		}
+	}
+	
+	/**
+	 * Create an instance of this class that explores projected databases in parallel mode. It shares
+	 * the sequence database, the frequent items and the output with this instance, 
+	 * but it has its own buffers and arenas.
+	 * @return the worker
+	 */
+	private AlgoPrefixSpan createWorker() {
+		AlgoPrefixSpan worker = new AlgoPrefixSpan();
+		worker.root = this;
+		worker.sequenceDatabase = sequenceDatabase;
+		// the store may keep the position of the last token read, so each worker has its own view
+		worker.tokens = tokens.duplicate();
+		worker.minsuppAbsolute = minsuppAbsolute;
+		worker.maximumPatternLength = maximumPatternLength;
+		worker.showSequenceIdentifiers = showSequenceIdentifiers;
+		worker.sequenceWeights = sequenceWeights;
+		worker.recodeItems = recodeItems;
+		worker.slotItems = slotItems;
+		worker.slotIndexPositions = slotIndexPositions;
+		worker.slotSupports = slotSupports;
+		worker.slotTable = slotTable;
+		worker.slotMap = slotMap;
+		worker.containsItemsetsWithMultipleItems = containsItemsetsWithMultipleItems;
+		worker.countBeforeProjecting = countBeforeProjecting;
+		worker.sequenceStarts = sequenceStarts;
+		worker.sequenceIndex = sequenceIndex;
+		worker.skipHopelessPseudoSequences = skipHopelessPseudoSequences;
+		worker.patternType = patternType;
+		worker.writer = writer;
+		worker.outputWriters = outputWriters;
+		worker.outputSupports = outputSupports;
+		worker.outputPatternCounts = outputPatternCounts;
+		worker.patterns = patterns;
+		worker.patternTrie = patternTrie;
+		worker.patternConsumer = patternConsumer;
+		worker.sequenceCount = sequenceCount;
+		worker.allocateScanArrays();
+		worker.forkedTasks = new ArrayList<SubtreeTask>();
+		return worker;
+	}
+	
+	/**
+	 * This class represents the exploration of a projected database in parallel mode, which is the 
+	 * projected database of a frequent item, or of a larger pattern found by another task. The task 
+	 * uses a worker (an instance of AlgoPrefixSpan) that is not used by another task, 
+	 * and it returns the number of patterns found by itself and by the tasks that it has started.
+	 */
+	private final class SubtreeTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		/** the slot of the item (first level) or the length of the larger patterns */
+		private final int slotOrLength;
+		/** the prefix of the projected database, or null for the projected database of an item */
+		private final int[] prefix;
+		private final int lastBufferPosition;
+		private final Pair projectedDatabase;
+		/** in maximal mode, true if the prefix is saved if it has no frequent larger pattern */
+		private final boolean maximalityUnchecked;
+		
+		SubtreeTask(int slotOrLength, int[] prefix, int lastBufferPosition, Pair projectedDatabase, boolean maximalityUnchecked) {
+			this.slotOrLength = slotOrLength;
+			this.prefix = prefix;
+			this.lastBufferPosition = lastBufferPosition;
+			this.projectedDatabase = projectedDatabase;
+			this.maximalityUnchecked = maximalityUnchecked;
+		}
+		
+		@Override
+		protected Integer compute() {
+			AlgoPrefixSpan root = AlgoPrefixSpan.this.root != null ? AlgoPrefixSpan.this.root : AlgoPrefixSpan.this;
+			AlgoPrefixSpan worker = root.idleWorkers.poll();
+			if(worker == null){
+				worker = root.createWorker();
+			}
+			List<SubtreeTask> children;
+			int count;
+			try{
+				worker.patternCount = 0;
+				if(prefix == null){
+					worker.exploreItem(slotOrLength);
+				}else{
+					System.arraycopy(prefix, 0, worker.patternBuffer, 0, prefix.length);
+					worker.maximalityUnchecked = maximalityUnchecked;
+					if(containsItemsetsWithMultipleItems){
+						worker.recursion(worker.patternBuffer, projectedDatabase, slotOrLength, lastBufferPosition);
+					}else{
+						worker.recursionSingleItems(projectedDatabase, slotOrLength, lastBufferPosition);
+					}
+				}
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}finally{
+				children = new ArrayList<SubtreeTask>(worker.forkedTasks);
+				count = worker.patternCount;
+				worker.forkedTasks.clear();
+				// the worker can be used by another task while this one waits for its children
+				root.idleWorkers.add(worker);
+			}
+			for(SubtreeTask child : children){
+				count += child.join();
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * This class returns the patterns found by the algorithm one at a time (see iterator()). 
+	 * The recursive calls of recursion() and recursionSingleItems() are replaced by a stack 
+	 * of frames: a frame contains the pairs found by the scan of the projected database of 
+	 * a prefix, whose own projected databases are in the arena of the depth of the frame, and
+	 * the position of the next pair to be returned. The projected database of a pattern is 
+	 * only scanned when the pattern after it is requested.
+	 */
+	private final class PatternIterator implements Iterator<SequentialPattern> {
+		/** the slot of the next item to be returned as a pattern of length 1 */
+		private int nextSlot = 1;
+		/** the frames of the prefixes that are extended, the last one being the longest */
+		private final List<Frame> frames = new ArrayList<Frame>();
+		/** the slot of the last pattern returned if it is an item whose projected database 
+		 * has not been scanned yet, or 0 */
+		private int pendingSlot = 0;
+		/** the pair of the last pattern returned if it is longer and its projected database
+		 * has not been scanned yet, or null */
+		private Pair pendingPair = null;
+		private int pendingLength;
+		private int pendingLastBufferPosition;
+		/** the next pattern, if it has been found by hasNext() */
+		private SequentialPattern nextPattern = null;
+		/** true if all the patterns have been returned */
+		private boolean finished = false;
+		
+		@Override
+		public boolean hasNext() {
+			if(nextPattern == null && finished == false){
+				nextPattern = findNextPattern();
+				if(nextPattern == null){
+					finished = true;
+					// release the database and record end time
+					sequenceDatabase = null;
+					endTime = System.currentTimeMillis();
+				}
+			}
+			return nextPattern != null;
+		}
+		
+		@Override
+		public SequentialPattern next() {
+			if(hasNext() == false){
+				throw new NoSuchElementException();
+			}
+			SequentialPattern pattern = nextPattern;
+			nextPattern = null;
+			return pattern;
+		}
+		
+		/**
+		 * Scan the projected database of the last pattern returned, if needed, and find the next pattern
+		 * @return the next pattern, or null if there is none
+		 */
+		private SequentialPattern findNextPattern() {
+			if(pendingSlot > 0){
+				// the projected database of an item (see exploreItem())
+				List<Integer> sequenceIDs = sequenceDatabase.getSequenceIDsOfIndexedItem(slotIndexPositions[pendingSlot]);
+				int token = recodeItems ? pendingSlot : slotItems[pendingSlot];
+				patternBuffer[0] = token;
+				Pair projectedDatabase = containsItemsetsWithMultipleItems
+						? buildProjectedDatabaseFirstTimeMultipleItems(token, sequenceIDs)
+						: buildProjectedDatabaseSingleItems(token, sequenceIDs);
+				pushFrame(projectedDatabase, 2, 0);
+				pendingSlot = 0;
+			}else if(pendingPair != null){
+				pushFrame(pendingPair, pendingLength, pendingLastBufferPosition);
+				pendingPair = null;
+			}
+			
+			while(frames.isEmpty() == false){
+				Frame frame = frames.get(frames.size() - 1);
+				// if all the pairs of the frame have been returned, go back to the shorter prefix
+				if(frame.next == frame.pairsInPostfix.size() + frame.pairs.size()){
+					frames.remove(frames.size() - 1);
+					continue;
+				}
+				// the items in a postfix are appended to the last itemset of the prefix,
+				// the others are appended as a new itemset (as in recursion())
+				boolean inPostfix = frame.next < frame.pairsInPostfix.size();
+				Pair pair = inPostfix ? frame.pairsInPostfix.get(frame.next) 
+						: frame.pairs.get(frame.next - frame.pairsInPostfix.size());
+				frame.next++;
+				// if the item is not frequent in the projected database
+				if(pair.getCount() < minsuppAbsolute){
+					continue;
+				}
+				int newBufferPosition = frame.lastBufferPosition;
+				if(inPostfix == false){
+					patternBuffer[++newBufferPosition] = -1;
+				}
+				patternBuffer[++newBufferPosition] = pair.item;
+				if(frame.length < maximumPatternLength){
+					pendingPair = pair;
+					pendingLength = frame.length + 1;
+					pendingLastBufferPosition = newBufferPosition;
+				}
+				patternCount++;
+				return createPattern(newBufferPosition, pair);
+			}
+			
+			// the next frequent item
+			if(nextSlot < slotItems.length){
+				int slot = nextSlot++;
+				if(maximumPatternLength > 1){
+					pendingSlot = slot;
+				}
+				patternCount++;
+				return createPattern(slotItems[slot], sequenceDatabase.getSequenceIDsOfIndexedItem(slotIndexPositions[slot]));
+			}
+			return null;
+		}
+		
+		/**
+		 * Scan the projected database of a prefix, and add the frame of its frequent items
+		 * @param database the pair containing the projected database
+		 * @param k the length of the patterns found
+		 * @param lastBufferPosition the last position of the prefix in the buffer
+		 */
+		private void pushFrame(Pair database, int k, int lastBufferPosition) {
+			if(containsItemsetsWithMultipleItems){
+				FrequentPairs frequentPairs = findAllFrequentPairs(database, k, lastBufferPosition);
+				frames.add(new Frame(frequentPairs.pairsInPostfix, frequentPairs.pairs, k, lastBufferPosition));
+			}else{
+				List<Pair> pairs = findAllFrequentPairsSingleItems(database, k);
+				frames.add(new Frame(Collections.<Pair>emptyList(), pairs, k, lastBufferPosition));
+			}
+			// check the current memory usage
+			MemoryLogger.getInstance().checkMemory();
+		}
+	}
+	
+	/**
+	 * A frame of the stack of PatternIterator: the pairs found by the scan of the projected
+	 * database of a prefix, and the position of the next pair to be returned.
+	 */
+	private static final class Frame {
+		/** the pairs of the items in a postfix, and of the other items */
+		final List<Pair> pairsInPostfix;
+		final List<Pair> pairs;
+		/** the length of the patterns of the pairs */
+		final int length;
+		/** the last position of the prefix in the buffer */
+		final int lastBufferPosition;
+		/** the position of the next pair (the pairs in a postfix come first) */
+		int next = 0;
+		
+		Frame(List<Pair> pairsInPostfix, List<Pair> pairs, int length, int lastBufferPosition) {
+			this.pairsInPostfix = pairsInPostfix;
+			this.pairs = pairs;
+			this.length = length;
+			this.lastBufferPosition = lastBufferPosition;
+		}
+	}
+	
+	/**
+	 * This method saves a sequential pattern containing a single item to the output file or
 	 * in memory, depending on if the user provided an output file path or not
 	 * when he launched the algorithm
 	 * @param item the pattern to be saved.
@@ -384,151 +1386,304 @@ public class AlgoPrefixSpan{
 	private void savePattern(int item, int support, List<Integer> sequenceIDs) throws IOException {
 		// increase the number of pattern found for statistics purposes
 		patternCount++; 
+		
+		// in top-k mode, the pattern is kept until the k most frequent patterns are known
+		if(topK > 0){
+			addTopKPattern(new int[]{item}, support, sequenceIDsNeeded() ? originalSequenceIDs(sequenceIDs) : null);
+			return;
+		}
 	
 		// if the result should be saved to a file
 		if(writer != null){
-			// create a StringBuilder
-			StringBuilder r = new StringBuilder();
-			r.append(item);
-			r.append(" -1 #SUP: ");
-			r.append(support);
-			if(showSequenceIdentifiers) {
-	        	r.append(" #SID: ");
-	        	for (Integer sid: sequenceIDs) {
-	        		r.append(sid);
-	        		r.append(" ");
-	        	}
-			}
-			// write the string to the file
-			writer.write(r.toString());
-			// start a new line
-			writer.newLine();
-		}
-		// otherwise the result is kept into memory
+			// write the pattern to the file
+			line.set(item, support, showSequenceIdentifiers ? originalSequenceIDs(sequenceIDs) : null);
+			writeLine(support);
+		}
+		// or it is passed to the consumer
+		else if(patternConsumer != null){
+			patternConsumer.consume(patternConsumer.needsPatterns() ? new int[]{item} : null, 1, support, 
+					patternConsumer.needsSequenceIDs() ? originalSequenceIDs(sequenceIDs) : null);
+		}
+		// otherwise the result is kept into memory, in the prefix tree
+		else if(patternTrie != null){
+			patternTrie.add(item, support, showSequenceIdentifiers ? originalSequenceIDs(sequenceIDs) : null);
+		}
+		// or as objects
 		else{
-			SequentialPattern pattern = new SequentialPattern();
-			pattern.addItemset(new Itemset(item));
-			pattern.setSequenceIDs(sequenceIDs);
-			patterns.addSequence(pattern, 1);
+			SequentialPattern pattern = createPattern(item, sequenceIDs);
+			synchronized(patterns){
+				patterns.addSequence(pattern, 1);
+			}
 		}
 	}
 	
+	/**
+	 * Create the object representing a sequential pattern containing a single item
+	 * @param item the item
+	 * @param sequenceIDs the list of sequences containing this item
+	 * @return the pattern
+	 */
+	private SequentialPattern createPattern(int item, List<Integer> sequenceIDs) {
+		SequentialPattern pattern = new SequentialPattern();
+		pattern.addItemset(new Itemset(item));
+		pattern.setSequenceIDs(originalSequenceIDs(sequenceIDs));
+		return pattern;
+	}
+	
 	/**
 	 * Save a pattern containing two or more items to the output file (or in memory, depending on what the user prefer)
 	 * @param lastBufferPosition the last position in the buffer for this pattern
-	 * @param pseudoSequences the list of pseudosequences where this pattern appears.
-	 * @param length the pattern length in terms of number of items.
+	 * @param pair the pair containing the support of this pattern and its projected database
 	 * @throws IOException if error when writing to file
 	 */
-	private void savePattern(int lastBufferPosition, List<PseudoSequence> pseudoSequences) throws IOException {
+	private void savePattern(int lastBufferPosition, Pair pair) throws IOException {
 		// increase the number of pattern found for statistics purposes
 		patternCount++;  
+		
+		// the consumer may not need the pattern, which is not translated to the original items
+		if(writer == null && patternConsumer != null && topK == 0){
+			patternConsumer.consume(patternConsumer.needsPatterns() ? originalPattern(lastBufferPosition) : null, 
+					lastBufferPosition + 1, pair.getCount(), 
+					patternConsumer.needsSequenceIDs() ? sequenceIDsOf(pair) : null);
+			return;
+		}
+		// get the pattern with the original items
+		int[] patternBuffer = originalPattern(lastBufferPosition);
+		
+		// in top-k mode, the pattern is kept until the k most frequent patterns are known
+		if(topK > 0){
+			addTopKPattern(Arrays.copyOf(patternBuffer, lastBufferPosition + 1), pair.getCount(), 
+					sequenceIDsNeeded() ? sequenceIDsOf(pair) : null);
+			return;
+		}
 	
 		// if the result should be saved to a file
 		if(writer != null){
-
-			// create a StringBuilder
-			StringBuilder r = new StringBuilder();
-			for(int i=0; i <= lastBufferPosition; i++){
-				r.append(patternBuffer[i]);
-				r.append(" ");
-			}
+			// write the pattern to the file
 			//-------------------------------------
 			// PHILIPPE: BUG FIX 2017-10 : some -1 were missing in the output file
-			// for some patterns. This fixes the problem.
-			if(patternBuffer[lastBufferPosition] != -1){
-				r.append("-1 ");
-			}
+			// for some patterns. Line.set() adds the -1 after the last itemset.
+			line.set(patternBuffer, lastBufferPosition + 1, pair.getCount(), 
+					showSequenceIdentifiers ? sequenceIDsOf(pair) : null);
 			//-------------------------------------
-			r.append("#SUP: ");
-			r.append(pseudoSequences.size());
-			if(showSequenceIdentifiers) {
-	        	r.append(" #SID: ");
-	        	for (PseudoSequence sequence: pseudoSequences) {
-	        		r.append(sequence.sequenceID);
-	        		r.append(" ");
-	        	}
-			}
-			// write the string to the file
-			writer.write(r.toString());
-			// start a new line
-			writer.newLine();
-		}
-		// otherwise the result is kept into memory
+			writeLine(pair.getCount());
+		}
+		// otherwise the result is kept into memory, in the prefix tree
+		else if(patternTrie != null){
+			patternTrie.add(patternBuffer, lastBufferPosition + 1, pair.getCount(), 
+					showSequenceIdentifiers ? sequenceIDsOf(pair) : null);
+		}
+		// or as objects
 		else{
-			SequentialPattern pattern = new SequentialPattern();
-			int itemsetCount  =0;
-			Itemset currentItemset = new Itemset();
-			for(int i=0; i <= lastBufferPosition; i++){
-				int token = patternBuffer[i];
-				if(token>0){
-					currentItemset.addItem(token);
-				}else if(token == -1){
-					pattern.addItemset(currentItemset);
-					currentItemset = new Itemset();
-					itemsetCount++;
-				}
-			}
-			pattern.addItemset(currentItemset);
-			itemsetCount++;
-			
-			List<Integer> sequencesIDs = new ArrayList<Integer>(pseudoSequences.size());
-			for (int i = 0; i< pseudoSequences.size(); i++) {
-				sequencesIDs.add(pseudoSequences.get(i).sequenceID);
-        	}
-			pattern.setSequenceIDs(sequencesIDs);
+			SequentialPattern pattern = createPattern(lastBufferPosition, pair);
 //			System.out.println(pattern);
-			patterns.addSequence(pattern, itemsetCount);
+			synchronized(patterns){
+				patterns.addSequence(pattern, pattern.size());
+			}
+		}
+	}
+	
+	/**
+	 * Create the object representing a sequential pattern containing two or more items
+	 * @param lastBufferPosition the last position in the buffer for this pattern
+	 * @param pair the pair containing the support of this pattern and its projected database
+	 * @return the pattern
+	 */
+	private SequentialPattern createPattern(int lastBufferPosition, Pair pair) {
+		// get the pattern with the original items
+		int[] patternBuffer = originalPattern(lastBufferPosition);
+		SequentialPattern pattern = new SequentialPattern();
+		Itemset currentItemset = new Itemset();
+		for(int i=0; i <= lastBufferPosition; i++){
+			int token = patternBuffer[i];
+			if(token>0){
+				currentItemset.addItem(token);
+			}else if(token == -1){
+				pattern.addItemset(currentItemset);
+				currentItemset = new Itemset();
+			}
 		}
+		pattern.addItemset(currentItemset);
+		pattern.setSequenceIDs(sequenceIDsOf(pair));
+		return pattern;
 	}
 	
 	
 	/**
-	 * For each item, calculate the sequence id of sequences containing that item
-	 * @return Map of items to sequence IDs that contains each item
-	 */
-	private Map<Integer, List<Integer>> findSequencesContainingItems() {
-		// number of items in the current itemset 
-		int itemCountInCurrentItemset;
-		// We use a map to store the sequence IDs where an item appear
-		// Key : item   Value :  a set of sequence IDs
-		Map<Integer, List<Integer>> mapSequenceID = new HashMap<Integer, List<Integer>>(); 
-		// for each sequence in the current database
-		for(int i=0; i < sequenceDatabase.size(); i++){
-			int[] sequence  = sequenceDatabase.getSequences().get(i);
-			
-			 itemCountInCurrentItemset = 0;
-			 
-			// for each token in this sequence (item, separator between itemsets (-1) or end of sequence (-2)
-			for(int token : sequence){
-				// if it is an item
-				if(token > 0){
-					// get the set of sequence IDs for this item until now
-					List<Integer> sequenceIDs = mapSequenceID.get(token);
-					if(sequenceIDs == null){
-						// if the set does not exist, create one
-						sequenceIDs = new ArrayList<Integer>();
-						mapSequenceID.put(token, sequenceIDs);
-					}
-					// add the sequence ID to the 
-					// set of sequences IDs of this item
-					// if it is not already there
-					if(sequenceIDs.size() == 0 || sequenceIDs.get(sequenceIDs.size() - 1) != i){
-						sequenceIDs.add(i);
-					}
-					itemCountInCurrentItemset++;
-					// if this itemset contains more than 1 item, we will remember that this database
-					// contains sequence with multiple items for optimization purpose.
-					if(itemCountInCurrentItemset > 1){
-						containsItemsetsWithMultipleItems = true;
+	 * Keep a pattern found in top-k mode. When k patterns have been found, the minimum support is
+	 * raised to the k-th largest support, so that the projected databases of the patterns with a 
+	 * smaller support are not explored anymore, and the patterns with a smaller support are removed.
+	 * @param pattern the items of the pattern, and -1 between the itemsets
+	 * @param support the support of the pattern
+	 * @param sequenceIDs the ids of the sequences containing the pattern (or null if they are not needed)
+	 */
+	private void addTopKPattern(int[] pattern, int support, SequenceIDSet sequenceIDs) {
+		topKPatterns.add(new TopKPattern(pattern, support, sequenceIDs, patternCount));
+		// among the patterns with the smallest support, the one found last is removed
+		if(topKPatterns.size() > topK){
+			topKPatterns.poll();
+		}
+		// a pattern found later must have a larger support than the k-th one to be kept
+		if(topKPatterns.size() == topK && topKPatterns.peek().support >= minsuppAbsolute){
+			minsuppAbsolute = topKPatterns.peek().support + 1;
+		}
+	}
+	
+	/**
+	 * Save the patterns kept in top-k mode to the output file or in memory, by decreasing 
+	 * support (and in the order in which they were found if they have the same support).
+	 * @throws IOException if error when writing to file
+	 */
+	private void saveTopKPatterns() throws IOException {
+		List<TopKPattern> result = new ArrayList<TopKPattern>(topKPatterns);
+		Collections.sort(result, new Comparator<TopKPattern>() {
+			@Override
+			public int compare(TopKPattern a, TopKPattern b) {
+				if(a.support != b.support){
+					return Integer.compare(b.support, a.support);
+				}
+				return Long.compare(a.rank, b.rank);
+			}
+		});
+		for(TopKPattern topKPattern : result){
+			int[] pattern = topKPattern.pattern;
+			if(writer != null){
+				line.set(pattern, pattern.length, topKPattern.support, 
+						showSequenceIdentifiers ? topKPattern.sequenceIDs : null);
+				writeLine(topKPattern.support);
+			}else if(patternConsumer != null){
+				patternConsumer.consume(pattern, pattern.length, topKPattern.support, topKPattern.sequenceIDs);
+			}else if(patternTrie != null){
+				patternTrie.add(pattern, pattern.length, topKPattern.support, topKPattern.sequenceIDs);
+			}else{
+				SequentialPattern sequentialPattern = new SequentialPattern();
+				Itemset currentItemset = new Itemset();
+				for(int token : pattern){
+					if(token>0){
+						currentItemset.addItem(token);
+					}else if(token == -1){
+						sequentialPattern.addItemset(currentItemset);
+						currentItemset = new Itemset();
 					}
-				}else if(token == -1){
-					itemCountInCurrentItemset = 0;
 				}
+				sequentialPattern.addItemset(currentItemset);
+				sequentialPattern.setSequenceIDs(topKPattern.sequenceIDs);
+				patterns.addSequence(sequentialPattern, sequentialPattern.size());
+			}
+		}
+		patternCount = result.size();
+		topKPatterns = null;
+	}
+	
+	/**
+	 * A pattern kept in top-k mode, ordered by support, and by reverse order of discovery 
+	 * among the patterns with the same support
+	 */
+	private static final class TopKPattern implements Comparable<TopKPattern> {
+		/** the items of the pattern, and -1 between the itemsets */
+		final int[] pattern;
+		final int support;
+		/** the ids of the sequences containing the pattern (or null if they are not needed) */
+		final SequenceIDSet sequenceIDs;
+		/** the rank of the pattern in the order in which the patterns are found */
+		final long rank;
+		
+		TopKPattern(int[] pattern, int support, SequenceIDSet sequenceIDs, long rank) {
+			this.pattern = pattern;
+			this.support = support;
+			this.sequenceIDs = sequenceIDs;
+			this.rank = rank;
+		}
+		
+		@Override
+		public int compareTo(TopKPattern other) {
+			if(support != other.support){
+				return Integer.compare(support, other.support);
+			}
+			return Long.compare(other.rank, rank);
+		}
+	}
+	
+	/**
+	 * Write the pattern set in the line to the output file. With several minimum
+	 * supports, it is written to the output file of every minimum support that the pattern reaches. 
+	 * In parallel mode, the lines of the tasks are not mixed.
+	 * @param support the support of the pattern
+	 * @throws IOException if error when writing to file
+	 */
+	private void writeLine(int support) throws IOException {
+		if(outputWriters == null){
+			writer.write(line);
+			return;
+		}
+		for(int i = 0; i < outputWriters.length; i++){
+			if(support >= outputSupports[i]){
+				synchronized(outputWriters[i]){
+					outputWriters[i].write(line);
+					outputPatternCounts[i]++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write the items of an itemset kept in the itemset buffer while removing the infrequent
+	 * items. If the items are replaced by their slots, they are sorted first, because the items 
+	 * of an itemset must be sorted and the order of the slots is not the order of the items.
+	 * @param writer the writer of the tokens of the sequence database
+	 * @param count the number of items in the buffer
+	 * @return the number of tokens written
+	 */
+	private int writeItemset(TokenStore.Writer writer, int count) {
+		if(recodeItems){
+			Arrays.sort(itemsetBuffer, 0, count);
+		}
+		for(int k=0; k < count; k++){
+			writer.write(itemsetBuffer[k]);
+		}
+		return count;
+	}
+	
+	/**
+	 * Get the current pattern with the original items. If the items are replaced by their
+	 * slots, the slots are translated to the items, and the items of each itemset are sorted.
+	 * @param lastBufferPosition the last position in the buffer for the current pattern
+	 * @return a buffer containing the pattern.
+	 */
+	private int[] originalPattern(int lastBufferPosition) {
+		if(recodeItems == false){
+			return patternBuffer;
+		}
+		// the position of the first item of the current itemset
+		int itemsetStart = 0;
+		for(int i=0; i <= lastBufferPosition; i++){
+			int token = patternBuffer[i];
+			if(token > 0){
+				outputBuffer[i] = slotItems[token];
+			}else{
+				outputBuffer[i] = token;
+				Arrays.sort(outputBuffer, itemsetStart, i);
+				itemsetStart = i + 1;
 			}
 		}
-//		System.out.println(mapSequenceID);
-		return mapSequenceID;
+		Arrays.sort(outputBuffer, itemsetStart, lastBufferPosition + 1);
+		return outputBuffer;
+	}
+	
+	/**
+	 * For each item, calculate the sequence id of sequences containing that item
+	 */
+	private void findSequencesContainingItems() {
+		// the database is scanned to build the item index, unless the index
+		// was loaded from the cache file of the dataset
+		if(sequenceDatabase.hasItemIndex() == false){
+			sequenceDatabase.buildItemIndex();
+		}
+		// if an itemset contains more than 1 item, we will remember that this database
+		// contains sequence with multiple items for optimization purpose.
+		if(sequenceDatabase.containsItemsetsWithMultipleItems()){
+			containsItemsetsWithMultipleItems = true;
+		}
 	}
 	
 	/**
@@ -538,24 +1693,22 @@ public class AlgoPrefixSpan{
 	 * @param list  The set of sequence ids containing the item
 	 * @return the projected database.
 	 */
-	private List<PseudoSequence> buildProjectedDatabaseSingleItems(int item, List<Integer> sequenceIDs) {
-		// We create a new projected database
-		List<PseudoSequence> projectedDatabase = new ArrayList<PseudoSequence>();
-
+	private Pair buildProjectedDatabaseSingleItems(int item, List<Integer> sequenceIDs) {
+		// We create a new projected database in the arena of the prefixes of length 1
+		Pair projectedDatabase = new Pair(item);
+		reserveArena(1, sequenceIDs.size());
+		projectedDatabase.setProjectedDatabase(arenaSequenceIDs[1], arenaPositions[1], 0);
 		// for each sequence that contains the current item
 loopSeq:for(int sequenceID : sequenceIDs){ 
-			int[] sequence = sequenceDatabase.getSequences().get(sequenceID);
-			
 			// for each token in this sequence (item  or end of sequence (-2)
-			for(int j=0; sequence[j] != -2; j++){
-				int token = sequence[j];
+			for(int j = sequenceDatabase.getSequenceStart(sequenceID); tokens.get(j) != -2; j++){
+				int token = tokens.get(j);
 				
 				// if it is the item that we want to use for projection
 				if(token == item){
 					// if it is not the end of the sequence
-					if(sequence[j+1] != -2){
-						PseudoSequence pseudoSequence = new PseudoSequence(sequenceID, j+1);
-						projectedDatabase.add(pseudoSequence);
+					if(tokens.get(j+1) != -2){
+						projectedDatabase.addPseudoSequence(sequenceID, j+1);
 					}
 					
 					// break because we have found what we have created the pseudosequence for the current sequence
@@ -573,25 +1726,23 @@ loopSeq:for(int sequenceID : sequenceIDs){
 	 * @param list  The set of sequence ids containing the item
 	 * @return the projected database.
 	 */
-	private List<PseudoSequence> buildProjectedDatabaseFirstTimeMultipleItems(int item, List<Integer> sequenceIDs) {
-		// We create a new projected database
-		List<PseudoSequence> projectedDatabase = new ArrayList<PseudoSequence>();
-
+	private Pair buildProjectedDatabaseFirstTimeMultipleItems(int item, List<Integer> sequenceIDs) {
+		// We create a new projected database in the arena of the prefixes of length 1
+		Pair projectedDatabase = new Pair(item);
+		reserveArena(1, sequenceIDs.size());
+		projectedDatabase.setProjectedDatabase(arenaSequenceIDs[1], arenaPositions[1], 0);
 		// for each sequence that contains the current item
 loopSeq:for(int sequenceID : sequenceIDs){ 
-			int[] sequence = sequenceDatabase.getSequences().get(sequenceID);
-			
 			// for each token in this sequence (item, separator between itemsets (-1) or end of sequence (-2)
-			for(int j=0; sequence[j] != -2; j++){
-				int token = sequence[j];
+			for(int j = sequenceDatabase.getSequenceStart(sequenceID); tokens.get(j) != -2; j++){
+				int token = tokens.get(j);
 				
 				// if it is the item that we want to use for projection
 				if(token == item){
 					// if it is not the end of the sequence
-					boolean isEndOfSequence = sequence[j+1] == -1 && sequence[j+2] == -2;
+					boolean isEndOfSequence = tokens.get(j+1) == -1 && tokens.get(j+2) == -2;
 					if(isEndOfSequence == false){
-						PseudoSequence pseudoSequence = new PseudoSequence(sequenceID, j+1);
-						projectedDatabase.add(pseudoSequence);
+						projectedDatabase.addPseudoSequence(sequenceID, j+1);
 					}
 					
 					// break because we have found what we have created the pseudosequence for the current sequence
@@ -611,7 +1762,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
 	 * @throws IOException exception if there is an error writing to the output file
 	 */
-	private void recursionSingleItems(List<PseudoSequence> database, int k, int lastBufferPosition) throws IOException {	
+	private void recursionSingleItems(Pair database, int k, int lastBufferPosition) throws IOException {	
 //		for(int i=0; i<= lastBufferPosition; i++){
 //			System.out.print(patternBuffer[i] + " ");
 //		}
@@ -621,15 +1772,27 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		
 		// find frequent items of size 1 in the current projected database, and at the same
 		// time create their respective projected databases
-		Map<Integer,List<PseudoSequence>> itemsPseudoSequences = findAllFrequentPairsSingleItems(database, lastBufferPosition);
+		List<Pair> pairs = findAllFrequentPairsSingleItems(database, k);
+		
+		// in maximal mode, the prefix may be saved now that its larger patterns are known
+		if(maximalityUnchecked){
+			maximalityUnchecked = false;
+			saveIfMaximal(database, pairs, null, lastBufferPosition);
+		}
 		
 		// release the memory used by the database
 		database = null;
 		
+		// in top-k mode, the frequent pairs are all saved before they are explored
+		if(topK > 0){
+			saveAndExploreTopK(Collections.<Pair>emptyList(), pairs, k, lastBufferPosition);
+			return;
+		}
+		
 //		for(Pair pair : pairs){
 //			System.out.print(pair.item + " isPostfix? " + pair.isPostfix() + "    " );
-//			for(PseudoSequence seq: pair.getPseudoSequences()){
-//				System.out.print( seq.getOriginalSequenceID() + "," + seq.indexFirstItem + " ");
+//			for(int i = 0; i < pair.size(); i++){
+//				System.out.print( pair.getSequenceID(i) + "," + pair.getPosition(i) + " ");
 //			}
 //			System.out.println();
 //		}
@@ -638,20 +1801,25 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		// For each pair found (a pair is an item with a boolean indicating if it
 		// appears in an itemset that is cut (a postfix) or not, and the sequence IDs
 		// where it appears in the projected database).
-		for(Entry<Integer, List<PseudoSequence>> entry : itemsPseudoSequences.entrySet()){
+		for(Pair pair : pairs){
 			// if the item is frequent in the current projected database
-			if(entry.getValue().size() >= minsuppAbsolute){
+			if(pair.getCount() >= minsuppAbsolute){
 
 				//Create the new pattern by appending the item as a new itemset to the sequence
 				patternBuffer[lastBufferPosition+1] = -1;
-				patternBuffer[lastBufferPosition+2] = entry.getKey();
+				patternBuffer[lastBufferPosition+2] = pair.item;
+				
+				// in closed or maximal mode, check if the pattern is saved and explored
+				int check = checkPattern(lastBufferPosition+2, pair, k);
 				
 				// save the pattern
-				savePattern(lastBufferPosition+2, entry.getValue());
+				if(check == SAVE_PATTERN){
+					savePattern(lastBufferPosition+2, pair);
+				}
 				
 				// make a recursive call
-				if( k < maximumPatternLength){
-					recursionSingleItems(entry.getValue(), k+1, lastBufferPosition+2);
+				if( k < maximumPatternLength && check != SKIP_SUBTREE){
+					explore(pair, k+1, lastBufferPosition+2);
 				}
 			}
 		}
@@ -667,7 +1835,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
 	 * @throws IOException exception if there is an error writing to the output file
 	 */
-	private void recursion(int[] patternBuffer, List<PseudoSequence> database, int k, int lastBufferPosition) throws IOException {	
+	private void recursion(int[] patternBuffer, Pair database, int k, int lastBufferPosition) throws IOException {	
 //		for(int i=0; i<= lastBufferPosition; i++){
 //			System.out.print(patternBuffer[i] + " ");
 //		}
@@ -679,17 +1847,29 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		// find frequent items of size 1 in the current projected database, and at the same
 		// time create their respective projected databases
 		// We create some maps of pairs for storing the frequent items. The following object
-		// contains two maps. The first one is for item extending the current pattern as an i-extension,
-		// while the second is for item extending the current pattern as an s-extension.
-		MapFrequentPairs mapsPairs = findAllFrequentPairs(database, lastBufferPosition);
+		// contains two lists. The first one is for item extending the current pattern as an s-extension,
+		// while the second is for item extending the current pattern as an i-extension.
+		FrequentPairs frequentPairs = findAllFrequentPairs(database, k, lastBufferPosition);
+		
+		// in maximal mode, the prefix may be saved now that its larger patterns are known
+		if(maximalityUnchecked){
+			maximalityUnchecked = false;
+			saveIfMaximal(database, frequentPairs.pairs, frequentPairs.pairsInPostfix, lastBufferPosition);
+		}
 		
 		// release the memory used by the database
 		database = null;
 		
+		// in top-k mode, the frequent pairs are all saved before they are explored
+		if(topK > 0){
+			saveAndExploreTopK(frequentPairs.pairsInPostfix, frequentPairs.pairs, k, lastBufferPosition);
+			return;
+		}
+		
 //		for(Pair pair : pairs){
 //			System.out.print(pair.item + " isPostfix? " + pair.isPostfix() + "    " );
-//			for(PseudoSequence seq: pair.getPseudoSequences()){
-//				System.out.print( seq.getOriginalSequenceID() + "," + seq.indexFirstItem + " ");
+//			for(int i = 0; i < pair.size(); i++){
+//				System.out.print( pair.getSequenceID(i) + "," + pair.getPosition(i) + " ");
 //			}
 //			System.out.println();
 //		}
@@ -698,8 +1878,7 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		// For each pair found that is in a postfix itemset(a pair is an item with a boolean indicating if it
 		// appears in an itemset that is cut (a postfix) or not, and the sequence IDs
 		// where it appears in the projected database).
-		for(Entry<Pair,Pair> entry : mapsPairs.mapPairsInPostfix.entrySet()){
-			Pair pair = entry.getKey();
+		for(Pair pair : frequentPairs.pairsInPostfix){
 			
 			// if the item is frequent in the current projected database
 			if(pair.getCount() >= minsuppAbsolute){
@@ -709,19 +1888,23 @@ loopSeq:for(int sequenceID : sequenceIDs){
 				newBuferPosition++;
 				patternBuffer[newBuferPosition] = pair.item;
 				
+				// in closed or maximal mode, check if the pattern is saved and explored
+				int check = checkPattern(newBuferPosition, pair, k);
+				
 				// save the pattern
-				savePattern(newBuferPosition, pair.getPseudoSequences());
+				if(check == SAVE_PATTERN){
+					savePattern(newBuferPosition, pair);
+				}
 				
 				// make a recursive call
-				if( k < maximumPatternLength){
-					recursion(patternBuffer, pair.getPseudoSequences(), k+1, newBuferPosition);
+				if( k < maximumPatternLength && check != SKIP_SUBTREE){
+					explore(pair, k+1, newBuferPosition);
 				}
 			}
 		}
 		
 		// For each pair found representing an item that is not in a postfix
-		for(Entry<Pair,Pair> entry : mapsPairs.mapPairs.entrySet()){
-			Pair pair = entry.getKey();
+		for(Pair pair : frequentPairs.pairs){
 			// if the item is frequent in the current projected database
 			if(pair.getCount() >= minsuppAbsolute){
 
@@ -732,12 +1915,17 @@ loopSeq:for(int sequenceID : sequenceIDs){
 				newBuferPosition++;
 				patternBuffer[newBuferPosition] = pair.item;
 				
+				// in closed or maximal mode, check if the pattern is saved and explored
+				int check = checkPattern(newBuferPosition, pair, k);
+				
 				// save the pattern
-				savePattern(newBuferPosition, pair.getPseudoSequences());
+				if(check == SAVE_PATTERN){
+					savePattern(newBuferPosition, pair);
+				}
 				
 				// make a recursive call
-				if( k < maximumPatternLength){
-					recursion(patternBuffer, pair.getPseudoSequences(), k+1, newBuferPosition);
+				if( k < maximumPatternLength && check != SKIP_SUBTREE){
+					explore(pair, k+1, newBuferPosition);
 				}
 			}
 		}
@@ -747,80 +1935,905 @@ loopSeq:for(int sequenceID : sequenceIDs){
 	}
 	
 	/**
-	 * Method to find all frequent items in a projected sequence database
-	 * @param sequences  the set of sequences
-	 * @param patternBuffer  the current sequential pattern that we want to try to grow
-	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
-	 * @return A list of pairs, where a pair is an item with (1) a boolean indicating if it
-	 *         is in an itemset that is "cut" and (2) the sequence IDs where it occurs.
+	 * Save the frequent pairs found by the scan of a projected database in top-k mode, and then 
+	 * explore them by decreasing support. The minimum support is raised by the pairs that are saved
+	 * before any of them is explored, and the pairs whose support becomes smaller than the minimum
+	 * support are not explored, so that the patterns with a large support are found first.
+	 * @param pairsInPostfix the pairs of the items that extend the last itemset of the prefix
+	 * @param pairs the pairs of the items that extend the prefix with a new itemset
+	 * @param k the length of the patterns of the pairs
+	 * @param lastBufferPosition the last position used in the buffer for storing the prefix
+	 * @throws IOException if error when writing to file
 	 */
-	protected Map<Integer,List<PseudoSequence>>  findAllFrequentPairsSingleItems(List<PseudoSequence> sequences, int lastBufferPosition){
-		// We use a Map the store the pairs.
-		Map<Integer,List<PseudoSequence>>  mapItemsPseudoSequences = new HashMap<Integer,List<PseudoSequence>>();
-
-		// for each sequence
-		for(PseudoSequence pseudoSequence : sequences){
-			
-			// for each sequence
-			int sequenceID = pseudoSequence.getOriginalSequenceID();
-			int[] sequence = sequenceDatabase.getSequences().get(sequenceID);
-			
-			// for each token in this sequence 
-			for(int i = pseudoSequence.indexFirstItem;  sequence[i] != -2 ; i++){
-				int token = sequence[i];
-				
-				// if it is an item
-				if(token > 0){
-					// get the pair object stored in the map if there is one already
-					List<PseudoSequence> listSequences = mapItemsPseudoSequences.get(token);
-					// if there is no pair object yet
-					if(listSequences == null){
-						listSequences = new ArrayList<PseudoSequence>();
-						// store the pair object that we created
-						mapItemsPseudoSequences.put(token, listSequences);
-					}
-					
-					// Check if that sequence as already been added to the projected database of this item
-					boolean ok = true;
-					if(listSequences.size() > 0){
-						ok = listSequences.get(listSequences.size() - 1).sequenceID != sequenceID;
-					}
-					// if not we add it
-					if(ok){
-						listSequences.add(new PseudoSequence(sequenceID, i+1));
-					}
-				}
+	private void saveAndExploreTopK(final List<Pair> pairsInPostfix, final List<Pair> pairs, int k, int lastBufferPosition) throws IOException {
+		// the positions of the frequent pairs, the pairs in a postfix being first
+		List<Integer> frequentPairs = new ArrayList<Integer>();
+		for(int i = 0; i < pairsInPostfix.size() + pairs.size(); i++){
+			boolean inPostfix = i < pairsInPostfix.size();
+			Pair pair = inPostfix ? pairsInPostfix.get(i) : pairs.get(i - pairsInPostfix.size());
+			if(pair.getCount() >= minsuppAbsolute){
+				savePattern(appendToPattern(pair, inPostfix, lastBufferPosition), pair);
+				frequentPairs.add(i);
 			}
 		}
-		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
-		// return the map of pairs
-		return mapItemsPseudoSequences;
+		MemoryLogger.getInstance().checkMemory();
+		if(k >= maximumPatternLength){
+			return;
+		}
+		
+		Collections.sort(frequentPairs, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(countOf(b), countOf(a));
+			}
+			private int countOf(int i) {
+				return i < pairsInPostfix.size() ? pairsInPostfix.get(i).getCount() : pairs.get(i - pairsInPostfix.size()).getCount();
+			}
+		});
+		for(int i : frequentPairs){
+			boolean inPostfix = i < pairsInPostfix.size();
+			Pair pair = inPostfix ? pairsInPostfix.get(i) : pairs.get(i - pairsInPostfix.size());
+			if(pair.getCount() < minsuppAbsolute){
+				break;
+			}
+			explore(pair, k+1, appendToPattern(pair, inPostfix, lastBufferPosition));
+		}
 	}
 	
+	/**
+	 * Append the item of a pair to the prefix in the buffer
+	 * @param pair the pair
+	 * @param inPostfix true to append the item to the last itemset, false to append it as a new itemset
+	 * @param lastBufferPosition the last position used in the buffer for storing the prefix
+	 * @return the last position of the new pattern in the buffer
+	 */
+	private int appendToPattern(Pair pair, boolean inPostfix, int lastBufferPosition) {
+		if(inPostfix == false){
+			patternBuffer[++lastBufferPosition] = -1;
+		}
+		patternBuffer[++lastBufferPosition] = pair.item;
+		return lastBufferPosition;
+	}
 	
 	/**
-	 * This class contains two maps, which are used for counting the
-	 * frequencies of items, whether in a postfix itemset or a normal itemset.
+	 * Check what is done with the pattern in the buffer in closed or maximal mode (see checkPattern(int, int, boolean)).
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @param pair the pair containing the projected database of the pattern
+	 * @param k the length of the pattern
+	 * @return SAVE_PATTERN, SKIP_PATTERN or SKIP_SUBTREE (always SAVE_PATTERN if all the patterns are saved)
 	 */
-	public class MapFrequentPairs{
-	    public final Map<Pair, Pair>  mapPairs = new HashMap<Pair, Pair>();
-	    public final Map<Pair, Pair>  mapPairsInPostfix = new HashMap<Pair, Pair>();
-	};
-
+	private int checkPattern(int lastBufferPosition, Pair pair, int k) {
+		if(patternType == ALL_PATTERNS){
+			return SAVE_PATTERN;
+		}
+		if(checkedSequenceIDs.length < pair.size()){
+			checkedSequenceIDs = new int[pair.size()];
+		}
+		for(int i = 0; i < pair.size(); i++){
+			checkedSequenceIDs[i] = pair.getSequenceID(i);
+		}
+		return checkPattern(lastBufferPosition, pair.size(), k < maximumPatternLength);
+	}
+	
 	/**
-	 * Method to find all frequent items in a projected sequence database
-	 * @param sequences  the set of sequences
-	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
-	 * @return A list of pairs, where a pair is an item with (1) a boolean indicating if it
-	 *         is in an itemset that is "cut" and (2) the sequence IDs where it occurs.
+	 * Check what is done with the pattern in the buffer in closed or maximal mode (see checkPattern(int, int, boolean)).
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @param sequenceIDs the ids of the sequences containing the pattern
+	 * @return SAVE_PATTERN, SKIP_PATTERN or SKIP_SUBTREE
+	 */
+	private int checkPattern(int lastBufferPosition, List<Integer> sequenceIDs) {
+		if(checkedSequenceIDs.length < sequenceIDs.size()){
+			checkedSequenceIDs = new int[sequenceIDs.size()];
+		}
+		for(int i = 0; i < sequenceIDs.size(); i++){
+			checkedSequenceIDs[i] = sequenceIDs.get(i);
+		}
+		return checkPattern(lastBufferPosition, sequenceIDs.size(), false);
+	}
+	
+	/**
+	 * Check if the pattern in the buffer is closed: it is not closed if an item can be inserted in it 
+	 * in every sequence containing it, since the larger pattern has the same support. As in BIDE, 
+	 * an item can be inserted as a new itemset if it appears in each sequence between the first instance
+	 * of the itemsets before it and the last instance of the itemsets after it (a maximum period), and 
+	 * it can be added to an itemset if it appears with it in an itemset between them. The items of the 
+	 * first sequence are candidates, which are removed when they are not found in another sequence. 
+	 * If a candidate is also found in every semi-maximum period, which ends with the last instance that
+	 * ends with the first instance of the pattern, it can also be inserted in every larger pattern starting
+	 * with this pattern, so none of them is closed (BackScan pruning). In maximal mode, a closed pattern
+	 * is not maximal if an item can be inserted in it in enough sequences to be frequent. If its 
+	 * projected database is explored, this is checked when it has been scanned (see saveIfMaximal()).
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @param size the number of sequences containing the pattern, whose ids are in checkedSequenceIDs
+	 * @param explored true if the projected database of the pattern is explored if it is not skipped
+	 * @return SAVE_PATTERN if the pattern is closed (or maximal), SKIP_PATTERN if it is not (or if
+	 *         it is saved later), and SKIP_SUBTREE if the larger patterns starting with it are not closed either
 	 */
-	protected MapFrequentPairs findAllFrequentPairs(List<PseudoSequence> sequences, int lastBufferPosition){
-		// We use an object containing two maps the store the pairs.
-		MapFrequentPairs mapsPairs = new MapFrequentPairs();
+	private int checkPattern(int lastBufferPosition, int size, boolean explored) {
+		int itemsetCount = readPatternItemsets(lastBufferPosition);
+		// an item can be inserted as a new itemset before each itemset or after the last one, 
+		// and it can be added to each itemset if the itemsets may contain several items
+		int periodCount = containsItemsetsWithMultipleItems ? 2 * itemsetCount + 1 : itemsetCount + 1;
 		
-		// find the position of the first item of the last itemset of the current sequential pattern that is grown
-		int firstPositionOfLastItemsetInBuffer = lastBufferPosition;
-		while(lastBufferPosition >0){
+		// the shortest sequence is read first, so that there are few candidates
+		int shortest = 0;
+		for(int s = 1; s < size; s++){
+			if(lengthOf(checkedSequenceIDs[s]) < lengthOf(checkedSequenceIDs[shortest])){
+				shortest = s;
+			}
+		}
+		int sequenceID = checkedSequenceIDs[shortest];
+		checkedSequenceIDs[shortest] = checkedSequenceIDs[0];
+		checkedSequenceIDs[0] = sequenceID;
+		
+		candidateCount = 0;
+		for(int s = 0; s < size; s++){
+			int sequenceItemsetCount = readSequenceItemsets(checkedSequenceIDs[s]);
+			findInstances(itemsetCount, sequenceItemsetCount);
+			if(s == 0){
+				for(int period = 0; period < periodCount; period++){
+					markPeriod(period, itemsetCount, true);
+				}
+			}else{
+				// remove the candidates that are not in their period in this sequence
+				int kept = 0;
+				int markedPeriod = -1;
+				for(int c = 0; c < candidateCount; c++){
+					int period = candidatePeriods[c];
+					if(period != markedPeriod){
+						markPeriod(period, itemsetCount, false);
+						markedPeriod = period;
+					}
+					int slot = candidateSlots[c];
+					if(periodStampOfSlot[slot] == periodStamp){
+						candidatePeriods[kept] = period;
+						candidateSlots[kept] = slot;
+						candidateInSemiPeriods[kept] = candidateInSemiPeriods[c] && semiPeriodStampOfSlot[slot] == periodStamp;
+						kept++;
+					}
+				}
+				candidateCount = kept;
+			}
+			// if no item can be inserted, the pattern is closed
+			if(candidateCount == 0){
+				if(patternType == MAXIMAL_PATTERNS && explored){
+					maximalityUnchecked = true;
+					return SKIP_PATTERN;
+				}
+				if(patternType == MAXIMAL_PATTERNS && hasFrequentExtension(itemsetCount, periodCount, size, true)){
+					return SKIP_PATTERN;
+				}
+				return SAVE_PATTERN;
+			}
+		}
+		for(int c = 0; c < candidateCount; c++){
+			if(candidateInSemiPeriods[c]){
+				return SKIP_SUBTREE;
+			}
+		}
+		return SKIP_PATTERN;
+	}
+	
+	/**
+	 * Save the pattern of a projected database that has been scanned in maximal mode, if it has no 
+	 * frequent larger pattern. It is closed, and the frequent patterns with one more item after 
+	 * its last itemset or in its last itemset have been found by the scan.
+	 * @param database the pair containing the projected database
+	 * @param pairs the pairs of the items that extend the pattern with a new itemset
+	 * @param pairsInPostfix the pairs of the items that extend the last itemset of the pattern (or null)
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @throws IOException if error when writing to file
+	 */
+	private void saveIfMaximal(Pair database, List<Pair> pairs, List<Pair> pairsInPostfix, int lastBufferPosition) throws IOException {
+		for(Pair pair : pairs){
+			if(pair.getCount() >= minsuppAbsolute){
+				return;
+			}
+		}
+		if(pairsInPostfix != null){
+			for(Pair pair : pairsInPostfix){
+				if(pair.getCount() >= minsuppAbsolute){
+					return;
+				}
+			}
+		}
+		if(checkedSequenceIDs.length < database.size()){
+			checkedSequenceIDs = new int[database.size()];
+		}
+		for(int i = 0; i < database.size(); i++){
+			checkedSequenceIDs[i] = database.getSequenceID(i);
+		}
+		int itemsetCount = readPatternItemsets(lastBufferPosition);
+		int periodCount = containsItemsetsWithMultipleItems ? 2 * itemsetCount + 1 : itemsetCount + 1;
+		if(hasFrequentExtension(itemsetCount, periodCount, database.size(), false) == false){
+			savePattern(lastBufferPosition, database);
+		}
+	}
+	
+	/**
+	 * Check if an item can be inserted in the pattern in the buffer in enough sequences containing it
+	 * to be frequent.
+	 * @param itemsetCount the number of itemsets of the pattern
+	 * @param periodCount the number of periods where the items can be inserted
+	 * @param size the number of sequences containing the pattern, whose ids are in checkedSequenceIDs
+	 * @param afterLastItemset false if the items inserted after the last itemset are not checked, 
+	 *                         because they have been found by the scan of the projected database
+	 * @return true if the pattern has a frequent larger pattern with one more item
+	 */
+	private boolean hasFrequentExtension(int itemsetCount, int periodCount, int size, boolean afterLastItemset) {
+		// the weight of the sequences that have not been read
+		int remainingWeight = 0;
+		for(int s = 0; s < size; s++){
+			remainingWeight += sequenceWeights == null ? 1 : sequenceWeights[checkedSequenceIDs[s]];
+		}
+		
+		// the support of each item in each period (the key is period * slotItems.length + slot),
+		// counted while an item found for the first time can still be frequent
+		IntIntHashMap supports = new IntIntHashMap();
+		int[] keys = new int[BUFFERS_SIZE];
+		int keyCount = 0;
+		int s = 0;
+		for(; s < size && remainingWeight >= minsuppAbsolute; s++){
+			int sequenceID = checkedSequenceIDs[s];
+			int weight = sequenceWeights == null ? 1 : sequenceWeights[sequenceID];
+			int sequenceItemsetCount = readSequenceItemsets(sequenceID);
+			findInstances(itemsetCount, sequenceItemsetCount);
+			for(int period = 0; period < periodCount; period++){
+				if(period == itemsetCount && afterLastItemset == false){
+					continue;
+				}
+				// the items of the period are found as candidates
+				candidateCount = 0;
+				markPeriod(period, itemsetCount, true);
+				for(int c = 0; c < candidateCount; c++){
+					int key = period * slotItems.length + candidateSlots[c];
+					int support = supports.get(key, 0) + weight;
+					if(support >= minsuppAbsolute){
+						candidateCount = 0;
+						return true;
+					}
+					if(support == weight){
+						if(keyCount == keys.length){
+							keys = Arrays.copyOf(keys, keyCount * 2);
+						}
+						keys[keyCount++] = key;
+					}
+					supports.put(key, support);
+				}
+			}
+			remainingWeight -= weight;
+		}
+		
+		// then only the items that can still be frequent are checked in the other sequences
+		Arrays.sort(keys, 0, keyCount);
+		if(candidateSlots.length < keyCount){
+			candidatePeriods = new int[keyCount];
+			candidateSlots = new int[keyCount];
+			candidateInSemiPeriods = new boolean[keyCount];
+		}
+		candidateCount = 0;
+		int[] candidateSupports = new int[keyCount];
+		for(int i = 0; i < keyCount; i++){
+			int support = supports.get(keys[i], 0);
+			if(support + remainingWeight >= minsuppAbsolute){
+				candidatePeriods[candidateCount] = keys[i] / slotItems.length;
+				candidateSlots[candidateCount] = keys[i] % slotItems.length;
+				candidateSupports[candidateCount++] = support;
+			}
+		}
+		for(; s < size && candidateCount > 0; s++){
+			int sequenceID = checkedSequenceIDs[s];
+			int weight = sequenceWeights == null ? 1 : sequenceWeights[sequenceID];
+			remainingWeight -= weight;
+			int sequenceItemsetCount = readSequenceItemsets(sequenceID);
+			findInstances(itemsetCount, sequenceItemsetCount);
+			int kept = 0;
+			int markedPeriod = -1;
+			for(int c = 0; c < candidateCount; c++){
+				int period = candidatePeriods[c];
+				if(period != markedPeriod){
+					markPeriod(period, itemsetCount, false);
+					markedPeriod = period;
+				}
+				int support = candidateSupports[c];
+				if(periodStampOfSlot[candidateSlots[c]] == periodStamp){
+					support += weight;
+					if(support >= minsuppAbsolute){
+						candidateCount = 0;
+						return true;
+					}
+				}
+				if(support + remainingWeight >= minsuppAbsolute){
+					candidatePeriods[kept] = period;
+					candidateSlots[kept] = candidateSlots[c];
+					candidateSupports[kept++] = support;
+				}
+			}
+			candidateCount = kept;
+		}
+		candidateCount = 0;
+		return false;
+	}
+	
+	/**
+	 * Mark the items of a period of the sequence that is checked with a new stamp, and the ones 
+	 * of the semi-maximum period with the same stamp. The periods 0 to itemsetCount are the 
+	 * periods before each itemset of the pattern and after the last one, where an item is inserted
+	 * as a new itemset. The period itemsetCount + 1 + j is the period of the itemset j, where an item
+	 * is added to it: only the itemsets of the sequence containing it are used, and its own items are 
+	 * not marked. There is no semi-maximum period after the last itemset and for the last itemset,
+	 * because the larger patterns starting with the pattern extend them.
+	 * @param period the period
+	 * @param itemsetCount the number of itemsets of the pattern
+	 * @param collect if true, the items that are marked are added to the candidates
+	 */
+	private void markPeriod(int period, int itemsetCount, boolean collect) {
+		// the itemset of the pattern to which the items are added (or -1), the itemsets of the sequence
+		// where the period starts and ends (excluded), and the one where the semi-maximum period ends
+		int itemset = -1;
+		int from;
+		int to;
+		int semiTo;
+		if(period <= itemsetCount){
+			from = firstInstanceEnds[period];
+			to = lastInstanceStarts[period];
+			semiTo = period < itemsetCount ? lastInFirstStarts[period] : from + 1;
+		}else{
+			itemset = period - itemsetCount - 1;
+			from = firstInstanceEnds[itemset];
+			to = lastInstanceStarts[itemset + 1];
+			semiTo = itemset + 1 < itemsetCount ? lastInFirstStarts[itemset + 1] : from + 1;
+		}
+		
+		if(periodStamp == Integer.MAX_VALUE){
+			Arrays.fill(periodStampOfSlot, 0);
+			Arrays.fill(semiPeriodStampOfSlot, 0);
+			periodStamp = 0;
+		}
+		periodStamp++;
+		for(int x = from + 1; x < to; x++){
+			if(itemset >= 0 && itemsetContains(x, itemset) == false){
+				continue;
+			}
+			for(int i = itemsetStarts[x]; i < itemsetEnds[x]; i++){
+				int slot = slotOfToken(tokens.get(i));
+				periodStampOfSlot[slot] = periodStamp;
+				if(x < semiTo){
+					semiPeriodStampOfSlot[slot] = periodStamp;
+				}
+			}
+		}
+		if(itemset >= 0){
+			for(int p = patternItemsetStarts[itemset]; p < patternItemsetEnds[itemset]; p++){
+				periodStampOfSlot[slotOfToken(patternBuffer[p])] = 0;
+			}
+		}
+		if(collect == false){
+			return;
+		}
+		
+		// add each marked item once
+		for(int x = from + 1; x < to; x++){
+			if(itemset >= 0 && itemsetContains(x, itemset) == false){
+				continue;
+			}
+			for(int i = itemsetStarts[x]; i < itemsetEnds[x]; i++){
+				int slot = slotOfToken(tokens.get(i));
+				if(periodStampOfSlot[slot] == periodStamp){
+					if(candidateCount == candidateSlots.length){
+						candidatePeriods = Arrays.copyOf(candidatePeriods, candidateCount * 2);
+						candidateSlots = Arrays.copyOf(candidateSlots, candidateCount * 2);
+						candidateInSemiPeriods = Arrays.copyOf(candidateInSemiPeriods, candidateCount * 2);
+					}
+					candidatePeriods[candidateCount] = period;
+					candidateSlots[candidateCount] = slot;
+					candidateInSemiPeriods[candidateCount] = semiPeriodStampOfSlot[slot] == periodStamp;
+					candidateCount++;
+					periodStampOfSlot[slot] = 0;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Find the positions of the itemsets of the pattern in the buffer.
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @return the number of itemsets
+	 */
+	private int readPatternItemsets(int lastBufferPosition) {
+		int count = 0;
+		patternItemsetStarts[0] = 0;
+		for(int i = 0; i <= lastBufferPosition; i++){
+			if(patternBuffer[i] == -1){
+				patternItemsetEnds[count++] = i;
+				patternItemsetStarts[count] = i + 1;
+			}
+		}
+		patternItemsetEnds[count++] = lastBufferPosition + 1;
+		return count;
+	}
+	
+	/**
+	 * Find the positions of the itemsets of a sequence in the array of tokens.
+	 * @param sequenceID the id of the sequence
+	 * @return the number of itemsets
+	 */
+	private int readSequenceItemsets(int sequenceID) {
+		int count = 0;
+		int i = sequenceStarts[sequenceID];
+		int start = i;
+		for(int token = tokens.get(i); token != -2; token = tokens.get(++i)){
+			// each item is an itemset if the itemsets contain a single item
+			boolean isItemsetEnd = containsItemsetsWithMultipleItems ? token == -1 : true;
+			if(isItemsetEnd){
+				int end = containsItemsetsWithMultipleItems ? i : i + 1;
+				if(end > start){
+					if(count == itemsetStarts.length){
+						itemsetStarts = Arrays.copyOf(itemsetStarts, count * 2);
+						itemsetEnds = Arrays.copyOf(itemsetEnds, count * 2);
+					}
+					itemsetStarts[count] = start;
+					itemsetEnds[count++] = end;
+				}
+				start = i + 1;
+			}
+		}
+		// the last itemset may not be followed by a separator
+		if(i > start){
+			if(count == itemsetStarts.length){
+				itemsetStarts = Arrays.copyOf(itemsetStarts, count * 2);
+				itemsetEnds = Arrays.copyOf(itemsetEnds, count * 2);
+			}
+			itemsetStarts[count] = start;
+			itemsetEnds[count++] = i;
+		}
+		return count;
+	}
+	
+	/**
+	 * Find the first instance of each prefix of the pattern, the last instance of each suffix, and 
+	 * the last instance ending with the first instance of the pattern in the sequence that has been read.
+	 * @param itemsetCount the number of itemsets of the pattern
+	 * @param sequenceItemsetCount the number of itemsets of the sequence
+	 */
+	private void findInstances(int itemsetCount, int sequenceItemsetCount) {
+		firstInstanceEnds[0] = -1;
+		for(int j = 0; j < itemsetCount; j++){
+			int x = firstInstanceEnds[j] + 1;
+			while(itemsetContains(x, j) == false){
+				x++;
+			}
+			firstInstanceEnds[j + 1] = x;
+		}
+		// the empty suffix starts after the last itemset of the sequence
+		lastInstanceStarts[itemsetCount] = sequenceItemsetCount;
+		for(int j = itemsetCount - 1; j >= 0; j--){
+			int x = lastInstanceStarts[j + 1] - 1;
+			while(itemsetContains(x, j) == false){
+				x--;
+			}
+			lastInstanceStarts[j] = x;
+		}
+		lastInFirstStarts[itemsetCount - 1] = firstInstanceEnds[itemsetCount];
+		for(int j = itemsetCount - 2; j >= 0; j--){
+			int x = lastInFirstStarts[j + 1] - 1;
+			while(itemsetContains(x, j) == false){
+				x--;
+			}
+			lastInFirstStarts[j] = x;
+		}
+	}
+	
+	/**
+	 * Check if an itemset of the sequence that has been read contains an itemset of the pattern.
+	 * @param x the index of the itemset of the sequence
+	 * @param j the index of the itemset of the pattern
+	 * @return true if it contains all its items
+	 */
+	private boolean itemsetContains(int x, int j) {
+		int end = itemsetEnds[x];
+loopItems:for(int p = patternItemsetStarts[j]; p < patternItemsetEnds[j]; p++){
+			int item = patternBuffer[p];
+			for(int i = itemsetStarts[x]; i < end; i++){
+				if(tokens.get(i) == item){
+					continue loopItems;
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the number of tokens of a sequence of the database.
+	 * @param sequenceID the id of the sequence
+	 * @return the number of tokens
+	 */
+	private int lengthOf(int sequenceID) {
+		return sequenceStarts[sequenceID + 1] - sequenceStarts[sequenceID];
+	}
+	
+	/**
+	 * Method to find all frequent items in a projected sequence database
+	 * @param database  the pair containing the projected database
+	 * @param k  the length of the prefixes of the items that are found, which is the depth
+	 *           of the arena where their projected databases are stored
+	 * @return A list of pairs, where a pair is an item with the sequence IDs where it occurs,
+	 *         in order of first occurrence.
+	 */
+	protected List<Pair> findAllFrequentPairsSingleItems(Pair database, int k){
+		// We use a list to store the pairs. The pair of each item is found using its slot.
+		List<Pair> pairs = new ArrayList<Pair>();
+		
+		if(countBeforeProjecting){
+			// count the support of each item, without creating any pair
+			scanProjectedDatabaseSingleItems(database, COUNT_SUPPORTS, pairs);
+			// create the pairs of the frequent items, and reserve the space for their projected databases
+			createFrequentPairs(pairs, null, k);
+			// build the projected databases of the frequent items
+			scanProjectedDatabaseSingleItems(database, PROJECT_FREQUENT_ITEMS, pairs);
+		}else{
+			// count the support of each item and remember all its pseudosequences
+			scanProjectedDatabaseSingleItems(database, COUNT_AND_PROJECT, pairs);
+			// store the projected databases of the frequent items
+			storeProjectedDatabases(pairs, null, k);
+		}
+		// clear the array of pairs for the next scan
+		clearPairs(pairs, pairsOfSlot);
+		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
+		// return the list of pairs
+		return pairs;
+	}
+	
+	/**
+	 * Scan a projected sequence database that does not contain itemsets with multiple items,
+	 * to find the items that can extend the current prefix
+	 * @param database  the pair containing the projected database
+	 * @param phase  what is done for each item (COUNT_AND_PROJECT, COUNT_SUPPORTS or PROJECT_FREQUENT_ITEMS)
+	 * @param pairs  the list where the pairs of the items are added
+	 */
+	private void scanProjectedDatabaseSingleItems(Pair database, int phase, List<Pair> pairs){
+		// for each sequence
+		for(int s = 0; s < database.size(); s++){
+			
+			// for each sequence
+			int sequenceID = database.getSequenceID(s);
+			// the weight of the sequence (its number of occurrences in the database)
+			int weight = sequenceWeights == null ? 1 : sequenceWeights[sequenceID];
+			
+			// the frequent items are found with the index, or only until the last one
+			if(phase == PROJECT_FREQUENT_ITEMS && (sequenceIndex != null || skipHopelessPseudoSequences)){
+				projectPseudoSequenceSingleItems(sequenceID, database.getPosition(s), pairs);
+				continue;
+			}
+			
+			// for each token in this sequence 
+			for(int i = database.getPosition(s);  tokens.get(i) != -2 ; i++){
+				int token = tokens.get(i);
+				
+				// if it is an item
+				if(token > 0){
+					// count the sequence for this item, and add it to the projected database of this item
+					visitItem(token, slotOfToken(token), false, sequenceID, weight, i+1, phase, pairs);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add a pseudosequence of a projected database that does not contain itemsets with multiple
+	 * items to the projected databases of the frequent items that it contains. If the sequence is
+	 * indexed and the pseudosequence is long, the first occurrence of each frequent item is found
+	 * with the index instead of reading the tokens. If hopeless pseudosequences are skipped, a new
+	 * pseudosequence that does not contain any frequent item is not added: an item that extends
+	 * the prefix followed by the item must be frequent, so it cannot contain a larger pattern.
+	 * @param sequenceID the id of the sequence
+	 * @param position the position where the pseudosequence starts in the array of tokens
+	 * @param pairs the pairs of the frequent items
+	 */
+	private void projectPseudoSequenceSingleItems(int sequenceID, int position, List<Pair> pairs) {
+		// the position of the end of the sequence (-2)
+		int end = sequenceStarts[sequenceID + 1] - 1;
+		
+		if(sequenceIndex != null && sequenceIndex.isIndexed(sequenceID) 
+				&& (long) pairs.size() * INDEX_LOOKUP_COST < end - position){
+			// find the last occurrence of a frequent item in the sequence
+			int lastFrequentPosition = end;
+			if(skipHopelessPseudoSequences){
+				lastFrequentPosition = -1;
+				for(Pair pair : pairs){
+					lastFrequentPosition = Math.max(lastFrequentPosition, sequenceIndex.lastOccurrence(sequenceID, pair.item));
+				}
+			}
+			// find the first occurrence of each frequent item
+			for(Pair pair : pairs){
+				int next = sequenceIndex.nextOccurrence(sequenceID, pair.item, position);
+				if(next >= 0 && next < lastFrequentPosition){
+					pair.addSequence(sequenceID, next + 1);
+				}
+			}
+			return;
+		}
+		
+		// find the last occurrence of a frequent item, by reading the tokens backward
+		int lastFrequentPosition = end;
+		if(skipHopelessPseudoSequences){
+			lastFrequentPosition--;
+			while(lastFrequentPosition >= position && pairsOfSlot[slotOfToken(tokens.get(lastFrequentPosition))] == null){
+				lastFrequentPosition--;
+			}
+		}
+		// the items after it would create hopeless pseudosequences
+		for(int i = position; i < lastFrequentPosition; i++){
+			int token = tokens.get(i);
+			Pair pair = pairsOfSlot[slotOfToken(token)];
+			// if the item is frequent
+			if(pair != null){
+				pair.addSequence(sequenceID, i + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Count a sequence containing an item found by a scan of a projected database, and add 
+	 * the pseudosequence starting after the item to the projected database of the item.
+	 * @param token the item, as it appears in the sequences
+	 * @param slot the slot of the item
+	 * @param inPostfix true if the item is in an itemset that is a postfix
+	 * @param sequenceID the id of the sequence
+	 * @param weight the weight of the sequence (its number of occurrences in the database)
+	 * @param position the position after the item in the array of tokens
+	 * @param phase what is done: with COUNT_AND_PROJECT, the pair of the item is created if needed
+	 *              and added to the list, and the pseudosequence is remembered until the end of the scan.
+	 *              With COUNT_SUPPORTS, only the support is counted. With PROJECT_FREQUENT_ITEMS, the
+	 *              pseudosequence is added if the item is frequent.
+	 * @param pairs the list where the pair of the item is added, if it is created
+	 */
+	private void visitItem(int token, int slot, boolean inPostfix, int sequenceID, int weight, int position, int phase, List<Pair> pairs) {
+		Pair[] pairsBySlot = inPostfix ? pairsInPostfixOfSlot : pairsOfSlot;
+		if(phase == COUNT_SUPPORTS){
+			// the candidates for the items in a postfix follow those for the other items
+			int candidate = inPostfix ? slot + slotItems.length : slot;
+			if(lastSequenceIDOfCandidate[candidate] != sequenceID){
+				if(lastSequenceIDOfCandidate[candidate] == -1){
+					touchedCandidates[touchedCandidateCount++] = candidate;
+				}
+				lastSequenceIDOfCandidate[candidate] = sequenceID;
+				sizeOfCandidate[candidate]++;
+				supportOfCandidate[candidate] += weight;
+			}
+		}else if(phase == PROJECT_FREQUENT_ITEMS){
+			Pair pair = pairsBySlot[slot];
+			// if the item is frequent
+			if(pair != null){
+				pair.addSequence(sequenceID, position);
+			}
+		}else{
+			// get the pair object of this item if there is one already
+			Pair pair = pairsBySlot[slot];
+			// if there is no pair object yet
+			if(pair == null){
+				// create the pair corresponding to this item and store it
+				pair = new Pair(token);
+				pairsBySlot[slot] = pair;
+				pairs.add(pair);
+			}
+			
+			// if that sequence has not already been added to the projected database of this item
+			// we add it
+			if(pair.countSequence(sequenceID, weight)){
+				addScannedPseudoSequence(pair, sequenceID, position);
+			}
+		}
+	}
+	
+	/**
+	 * Create the pairs of the items that are frequent according to the supports counted by a scan,
+	 * in the order of their first occurrence, and reserve the space for their projected databases
+	 * in the arena of a depth of the recursion. The supports are then reset for the next scan.
+	 * @param pairs the list where the pairs of the items that are not in a postfix are added
+	 * @param pairsInPostfix the list where the pairs of the items in a postfix are added (or null)
+	 * @param depth the depth
+	 */
+	private void createFrequentPairs(List<Pair> pairs, List<Pair> pairsInPostfix, int depth) {
+		int size = 0;
+		for(int i = 0; i < touchedCandidateCount; i++){
+			int candidate = touchedCandidates[i];
+			if(supportOfCandidate[candidate] >= minsuppAbsolute){
+				size += sizeOfCandidate[candidate];
+			}
+		}
+		reserveArena(depth, size);
+		
+		int start = 0;
+		for(int i = 0; i < touchedCandidateCount; i++){
+			int candidate = touchedCandidates[i];
+			if(supportOfCandidate[candidate] >= minsuppAbsolute){
+				boolean inPostfix = candidate >= slotItems.length;
+				int slot = inPostfix ? candidate - slotItems.length : candidate;
+				Pair pair = new Pair(recodeItems ? slot : slotItems[slot]);
+				pair.setCount(supportOfCandidate[candidate]);
+				pair.setProjectedDatabase(arenaSequenceIDs[depth], arenaPositions[depth], start);
+				start += sizeOfCandidate[candidate];
+				if(inPostfix){
+					pairsInPostfixOfSlot[slot] = pair;
+					pairsInPostfix.add(pair);
+				}else{
+					pairsOfSlot[slot] = pair;
+					pairs.add(pair);
+				}
+			}
+			lastSequenceIDOfCandidate[candidate] = -1;
+			sizeOfCandidate[candidate] = 0;
+			supportOfCandidate[candidate] = 0;
+		}
+		touchedCandidateCount = 0;
+	}
+	
+	/**
+	 * Remove the pairs found by a scan from an array of pairs indexed by slots.
+	 * @param pairs the pairs
+	 * @param pairsBySlot the array
+	 */
+	private void clearPairs(List<Pair> pairs, Pair[] pairsBySlot) {
+		for(Pair pair : pairs){
+			pairsBySlot[slotOfToken(pair.item)] = null;
+		}
+	}
+	
+	/**
+	 * Remember a pseudosequence found by the current scan of a projected database.
+	 * @param pair the pair of the item
+	 * @param sequenceID the id of the sequence
+	 * @param position the position where the pseudosequence starts in the array of tokens
+	 */
+	private void addScannedPseudoSequence(Pair pair, int sequenceID, int position) {
+		if(scanCount == scanPairs.length){
+			int length = scanCount * 2;
+			scanPairs = Arrays.copyOf(scanPairs, length);
+			scanSequenceIDs = Arrays.copyOf(scanSequenceIDs, length);
+			scanPositions = Arrays.copyOf(scanPositions, length);
+		}
+		scanPairs[scanCount] = pair;
+		scanSequenceIDs[scanCount] = sequenceID;
+		scanPositions[scanCount] = position;
+		scanCount++;
+	}
+	
+	/**
+	 * Copy the pseudosequences found by the current scan to the arena of a depth of the recursion,
+	 * for the frequent items only. The projected database of each item is stored contiguously,
+	 * and its pseudosequences stay in the order of the scan.
+	 * @param pairs the pairs found by the scan
+	 * @param pairsInPostfix the other pairs found by the scan (or null)
+	 * @param depth the depth
+	 */
+	private void storeProjectedDatabases(List<Pair> pairs, List<Pair> pairsInPostfix, int depth) {
+		// count the pseudosequences of the frequent items
+		int size = 0;
+		for(Pair pair : pairs){
+			if(pair.getCount() >= minsuppAbsolute){
+				size += pair.size();
+			}
+		}
+		if(pairsInPostfix != null){
+			for(Pair pair : pairsInPostfix){
+				if(pair.getCount() >= minsuppAbsolute){
+					size += pair.size();
+				}
+			}
+		}
+		
+		// reserve the space for the projected database of each frequent item
+		reserveArena(depth, size);
+		int start = reserveProjectedDatabases(pairs, depth, 0);
+		if(pairsInPostfix != null){
+			reserveProjectedDatabases(pairsInPostfix, depth, start);
+		}
+		
+		// copy the pseudosequences
+		for(int i = 0; i < scanCount; i++){
+			Pair pair = scanPairs[i];
+			if(pair.getCount() >= minsuppAbsolute){
+				pair.addPseudoSequence(scanSequenceIDs[i], scanPositions[i]);
+			}
+			scanPairs[i] = null;
+		}
+		scanCount = 0;
+	}
+	
+	/**
+	 * Reserve the space for the projected databases of the frequent items in the arena of a depth.
+	 * @param pairs the pairs of the items
+	 * @param depth the depth
+	 * @param start the first free position of the arena
+	 * @return the first free position of the arena after the projected databases
+	 */
+	private int reserveProjectedDatabases(List<Pair> pairs, int depth, int start) {
+		for(Pair pair : pairs){
+			if(pair.getCount() >= minsuppAbsolute){
+				int size = pair.size();
+				pair.setProjectedDatabase(arenaSequenceIDs[depth], arenaPositions[depth], start);
+				start += size;
+			}
+		}
+		return start;
+	}
+	
+	/**
+	 * Make sure that the arena of a depth of the recursion can contain a number of
+	 * pseudosequences. Its previous content is discarded.
+	 * @param depth the depth
+	 * @param size the number of pseudosequences
+	 */
+	private void reserveArena(int depth, int size) {
+		if(depth >= arenaSequenceIDs.length){
+			arenaSequenceIDs = Arrays.copyOf(arenaSequenceIDs, Math.max(depth + 1, arenaSequenceIDs.length * 2));
+			arenaPositions = Arrays.copyOf(arenaPositions, arenaSequenceIDs.length);
+		}
+		if(arenaSequenceIDs[depth] == null || arenaSequenceIDs[depth].length < size){
+			int length = Math.max(size, arenaSequenceIDs[depth] == null ? 16 : arenaSequenceIDs[depth].length * 3 / 2);
+			arenaSequenceIDs[depth] = new int[length];
+			arenaPositions[depth] = new int[length];
+		}
+	}
+	
+	
+	/**
+	 * This class contains two lists, which are used for counting the
+	 * frequencies of items, whether in a postfix itemset or a normal itemset.
+	 */
+	public class FrequentPairs{
+	    public final List<Pair>  pairs = new ArrayList<Pair>();
+	    public final List<Pair>  pairsInPostfix = new ArrayList<Pair>();
+	};
+
+	/**
+	 * Method to find all frequent items in a projected sequence database
+	 * @param database  the pair containing the projected database
+	 * @param k  the length of the prefixes of the items that are found, which is the depth
+	 *           of the arena where their projected databases are stored
+	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
+	 * @return A list of pairs, where a pair is an item with (1) a boolean indicating if it
+	 *         is in an itemset that is "cut" and (2) the sequence IDs where it occurs.
+	 */
+	protected FrequentPairs findAllFrequentPairs(Pair database, int k, int lastBufferPosition){
+		// We use an object containing two lists to store the pairs. The pair of each 
+		// item is found using its slot.
+		FrequentPairs frequentPairs = new FrequentPairs();
+		
+		if(countBeforeProjecting){
+			// count the support of each item, without creating any pair
+			scanProjectedDatabase(database, lastBufferPosition, COUNT_SUPPORTS, frequentPairs);
+			// create the pairs of the frequent items, and reserve the space for their projected databases
+			createFrequentPairs(frequentPairs.pairs, frequentPairs.pairsInPostfix, k);
+			// build the projected databases of the frequent items
+			scanProjectedDatabase(database, lastBufferPosition, PROJECT_FREQUENT_ITEMS, frequentPairs);
+		}else{
+			// count the support of each item and remember all its pseudosequences
+			scanProjectedDatabase(database, lastBufferPosition, COUNT_AND_PROJECT, frequentPairs);
+			// store the projected databases of the frequent items
+			storeProjectedDatabases(frequentPairs.pairs, frequentPairs.pairsInPostfix, k);
+		}
+		// clear the arrays of pairs for the next scan
+		clearPairs(frequentPairs.pairs, pairsOfSlot);
+		clearPairs(frequentPairs.pairsInPostfix, pairsInPostfixOfSlot);
+		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
+		// return the lists of pairs
+		return frequentPairs;
+	}
+	
+	/**
+	 * Scan a projected sequence database to find the items that can extend the current prefix
+	 * @param database  the pair containing the projected database
+	 * @param lastBufferPosition the last position used in the buffer for storing the current prefix
+	 * @param phase  what is done for each item (COUNT_AND_PROJECT, COUNT_SUPPORTS or PROJECT_FREQUENT_ITEMS)
+	 * @param frequentPairs  the lists where the pairs of the items are added
+	 */
+	private void scanProjectedDatabase(Pair database, int lastBufferPosition, int phase, FrequentPairs frequentPairs){
+		// find the position of the first item of the last itemset of the current sequential pattern that is grown
+		int firstPositionOfLastItemsetInBuffer = lastBufferPosition;
+		while(lastBufferPosition >0){
 			firstPositionOfLastItemsetInBuffer--;
 			if(firstPositionOfLastItemsetInBuffer < 0 || patternBuffer[firstPositionOfLastItemsetInBuffer] == -1){
 				firstPositionOfLastItemsetInBuffer++;
@@ -832,85 +2845,41 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		int positionToBeMatched = firstPositionOfLastItemsetInBuffer;
 		
 		// for each sequence
-		for(PseudoSequence pseudoSequence : sequences){
+		for(int s = 0; s < database.size(); s++){
 			
 			// for each sequence
-			int sequenceID = pseudoSequence.getOriginalSequenceID();
-			int[] sequence = sequenceDatabase.getSequences().get(sequenceID);
+			int sequenceID = database.getSequenceID(s);
+			// the weight of the sequence (its number of occurrences in the database)
+			int weight = sequenceWeights == null ? 1 : sequenceWeights[sequenceID];
 			
 			// check if the first itemset of that sequence is a postfix
 			// It is a postfix (the itemset is cut) if the previous item is a -1 indicating
 			// the end of an itemset
-			int previousItem = sequence[pseudoSequence.indexFirstItem - 1];
+			int firstPosition = database.getPosition(s);
+			int previousItem = tokens.get(firstPosition - 1);
 			boolean currentItemsetIsPostfix = (previousItem != - 1);
 			boolean isFirstItemset = true;
 			
 			// for each token in this sequence (item, separator between itemsets (-1) or end of sequence (-2)
-			for(int i = pseudoSequence.indexFirstItem;  sequence[i] != -2 ; i++){
-				int token = sequence[i];
+			for(int i = firstPosition;  tokens.get(i) != -2 ; i++){
+				int token = tokens.get(i);
 				
 				// if it is an item
 				if(token > 0){
+					int slot = slotOfToken(token);
 					
-					// create the pair corresponding to this item
-					Pair pair = new Pair(token);   
-					// get the pair object store in the map if there is one already
-					Pair oldPair;
+					// count the sequence for this item, and add it to the projected database of this item
 					if(currentItemsetIsPostfix){
-						oldPair = mapsPairs.mapPairsInPostfix.get(pair);
-					}else{
-						oldPair = mapsPairs.mapPairs.get(pair);
-					}
-					// if there is no pair object yet
-					if(oldPair == null){
-						// store the pair object that we created
-						if(currentItemsetIsPostfix){
-							mapsPairs.mapPairsInPostfix.put(pair, pair);
-						}else{
-							mapsPairs.mapPairs.put(pair, pair);
-						}
+						visitItem(token, slot, true, sequenceID, weight, i+1, phase, frequentPairs.pairsInPostfix);
 					}else{
-						// otherwise use the old one
-						pair = oldPair;
-					}
-					
-					// Check if that sequence as already been added to the projected database of this item
-					boolean ok = true;
-					if(pair.getPseudoSequences().size() > 0){
-						ok = pair.getPseudoSequences().get(pair.getPseudoSequences().size() - 1).sequenceID != sequenceID;
-					}
-					// if not we add it
-					if(ok){
-						pair.getPseudoSequences().add(new PseudoSequence(sequenceID, i+1));
+						visitItem(token, slot, false, sequenceID, weight, i+1, phase, frequentPairs.pairs);
 					}
 					
 					///////// ====== IMPORTANT =========
 					// if the current itemset is a postfix and it is not the first itemset
 					// we must also consider that it may not be a postfix for extending the current prefix
 					if(currentItemsetIsPostfix && isFirstItemset == false){
-						// create the pair corresponding to this item
-						 pair = new Pair(token);     // FALSE !!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-						// get the pair object store in the map if there is one already
-						 oldPair = mapsPairs.mapPairs.get(pair);
-						// if there is no pair object yet
-						if(oldPair == null){
-							// store the pair object that we created
-							mapsPairs.mapPairs.put(pair, pair);
-						}else{
-							// otherwise use the old one
-							pair = oldPair;
-						}
-						
-						// Check if that sequence as already been added to the projected database of this item
-						ok = true;
-						if(pair.getPseudoSequences().size() > 0){
-							ok = pair.getPseudoSequences().get(pair.getPseudoSequences().size() - 1).sequenceID != sequenceID;
-						}
-						// if not we add it
-						if(ok){
-							pair.getPseudoSequences().add(new PseudoSequence(sequenceID, i+1));
-						}
-						
+						visitItem(token, slot, false, sequenceID, weight, i+1, phase, frequentPairs.pairs);
 					}
 					//////////////////////////////////////////////////////////
 
@@ -930,9 +2899,20 @@ loopSeq:for(int sequenceID : sequenceIDs){
 				}
 			}
 		}
-		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
-		// return the map of pairs
-		return mapsPairs;
+	}
+
+	/**
+	 * Check if the ids of the sequences containing the patterns are needed: they are written
+	 * if the sequence identifiers are shown, they are passed to the consumer if it needs them, 
+	 * and they are always kept in the SequentialPattern 
+	 * objects and returned by the iterator.
+	 * @return true if they are needed
+	 */
+	private boolean sequenceIDsNeeded() {
+		if(writer == null && patternConsumer != null){
+			return patternConsumer.needsSequenceIDs();
+		}
+		return showSequenceIdentifiers || (writer == null && patternTrie == null);
 	}
 
 	/**
@@ -978,6 +2958,142 @@ loopSeq:for(int sequenceID : sequenceIDs){
 		this.maximumPatternLength = maximumPatternLength;
 	}
 	
+	/**
+	 * Set that the binary cache file of the input file should be used (true) or not (false)
+	 * to load the sequence database. The cache file is created if it does not exist or if
+	 * the input file has been modified.
+	 * @param useDatasetCache true or false
+	 */
+	public void setUseDatasetCache(boolean useDatasetCache) {
+		this.useDatasetCache = useDatasetCache;
+	}
+	
+	/**
+	 * Set that the tokens of the sequence database should be stored off the heap (true) 
+	 * or not (false), so that large datasets can be mined with a small heap.
+	 * @param useOffHeapStorage true or false
+	 * @see SequenceDatabase#setUseOffHeapStorage(boolean)
+	 */
+	public void setUseOffHeapStorage(boolean useOffHeapStorage) {
+		this.useOffHeapStorage = useOffHeapStorage;
+	}
+	
+	/**
+	 * Set that the tokens of the sequence database should be compressed (true) 
+	 * or not (false), so that larger datasets fit in memory.
+	 * @param useCompressedStorage true or false
+	 * @see SequenceDatabase#setUseCompressedStorage(boolean)
+	 */
+	public void setUseCompressedStorage(boolean useCompressedStorage) {
+		this.useCompressedStorage = useCompressedStorage;
+	}
+	
+	/**
+	 * Set that the identical sequences of the sequence database should be merged (true)
+	 * or not (false). Each distinct sequence is then scanned once, and counted as many 
+	 * times as it occurs in the input file, so the supports are not modified.
+	 * @param deduplicateSequences true or false
+	 * @see SequenceDatabase#deduplicate()
+	 */
+	public void setDeduplicateSequences(boolean deduplicateSequences) {
+		this.deduplicateSequences = deduplicateSequences;
+	}
+	
+	/**
+	 * Set that each projected database should be scanned twice (true), first to count the
+	 * support of the items and then to build the projected databases of the frequent items only,
+	 * or once (false), remembering the pseudosequences of all the items until their support is known.
+	 * Scanning twice uses less memory when most of the items of the projected databases are
+	 * infrequent, as in sparse datasets with a low minimum support.
+	 * @param countBeforeProjecting true or false
+	 */
+	public void setCountBeforeProjecting(boolean countBeforeProjecting) {
+		this.countBeforeProjecting = countBeforeProjecting;
+	}
+	
+	/**
+	 * Set the number of threads used to explore the projected databases. With more than one thread,
+	 * the patterns found are the same, but they are written in a different order.
+	 * @param threadCount the number of threads (1 to explore them sequentially)
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * Set that an index of the positions of the items should be built for the long sequences (true)
+	 * or not (false). It is used to find the frequent items in the long pseudosequences, and the
+	 * pseudosequences that cannot contain a larger pattern are then removed from the projected 
+	 * databases, unless the ids of the sequences are needed. It is used only if the itemsets 
+	 * of the database contain a single item, and the supports are counted before projecting 
+	 * (see setCountBeforeProjecting()).
+	 * @param useSequenceIndex true or false
+	 */
+	public void setUseSequenceIndex(boolean useSequenceIndex) {
+		this.useSequenceIndex = useSequenceIndex;
+	}
+	
+	/**
+	 * Set that the frequent items should be replaced by their slots (true) or not (false) 
+	 * in the sequence database. The slots are dense identifiers assigned by decreasing support, 
+	 * so that the most frequent items have the smallest identifiers. The patterns found
+	 * are written with the original items.
+	 * @param recodeItems true or false
+	 */
+	public void setRecodeItems(boolean recodeItems) {
+		this.recodeItems = recodeItems;
+	}
+	
+	/**
+	 * Set the number of most frequent patterns to be found (top-k mode). The minimum support 
+	 * given to runAlgorithm() is then only a lower bound: once k patterns are found, it is raised 
+	 * above the k-th largest support of the patterns found so far, so that the patterns that cannot
+	 * replace one of the k patterns are not explored. At most k patterns are kept in memory: 
+	 * if several patterns have the same support as the k-th one, the ones found first are kept 
+	 * and the others are discarded, so that exactly k patterns are found (or all the patterns 
+	 * whose support is at least the minimum support, if there are less than k). A run with the 
+	 * minimum support getMinimumSupport() finds these patterns and the discarded ones. The patterns 
+	 * are saved at the end of the execution, by decreasing support. The patterns are explored by 
+	 * decreasing support, with a single thread, and this mode is not used by iterator(). It only 
+	 * finds all the frequent patterns, and cannot be combined with setPatternType().
+	 * @param topK the number of patterns (0 to find the patterns whose support is at least the minimum support)
+	 * @throws IllegalArgumentException if topK is larger than 0 and the closed or maximal patterns are mined
+	 */
+	public void setTopK(int topK) {
+		if(topK > 0 && patternType != ALL_PATTERNS){
+			throw new IllegalArgumentException("The top-k mode cannot be used with the closed or maximal patterns");
+		}
+		this.topK = topK;
+	}
+	
+	/**
+	 * Set the patterns that are saved: all the frequent patterns (ALL_PATTERNS), the closed ones 
+	 * (CLOSED_PATTERNS), which have no larger pattern with the same support, or the maximal ones 
+	 * (MAXIMAL_PATTERNS), which have no larger frequent pattern. The closed patterns are checked
+	 * while they are explored, with the backward extension check of BIDE, and the larger patterns 
+	 * of a pattern are not explored if none of them can be closed. The patterns are saved in the 
+	 * same order as the frequent patterns, and this is not used by iterator(). The closed and 
+	 * maximal patterns cannot be mined in top-k mode (see setTopK()).
+	 * @param patternType ALL_PATTERNS, CLOSED_PATTERNS or MAXIMAL_PATTERNS
+	 * @throws IllegalArgumentException if the closed or maximal patterns are mined in top-k mode
+	 */
+	public void setPatternType(int patternType) {
+		if(patternType != ALL_PATTERNS && topK > 0){
+			throw new IllegalArgumentException("The closed or maximal patterns cannot be mined in top-k mode");
+		}
+		this.patternType = patternType;
+	}
+	
+	/**
+	 * Get the absolute minimum support used by the last execution. In top-k mode, it is the support
+	 * of the k-th most frequent pattern (or the minimum support given if there are less than k patterns),
+	 * so a run with this minimum support also finds the patterns with this support that were discarded.
+	 * @return the minimum support, as a number of sequences
+	 */
+	public int getMinimumSupport() {
+		return minsuppAbsolute;
+	}
+	
 	/**
 	 * Set that the sequence identifiers should be shown (true) or not (false) for each
 	 * pattern found
@@ -986,5 +3102,35 @@ loopSeq:for(int sequenceID : sequenceIDs){
 	public void setShowSequenceIdentifiers(boolean showSequenceIdentifiers) {
 		this.showSequenceIdentifiers = showSequenceIdentifiers;
 	}
+	
+	/**
+	 * Set if the patterns kept into memory (when no output file path is given) are stored in a 
+	 * PatternTrie instead of SequentialPatterns. A pattern then takes a few dozen bytes instead of
+	 * the objects of its itemsets, items and sequence ids. The sequence ids are kept only if
+	 * setShowSequenceIdentifiers(true) was called. runAlgorithm() returns null, and the patterns
+	 * are returned by getPatternTrie().
+	 * @param usePatternTrie true to store the patterns in a PatternTrie
+	 */
+	public void setUsePatternTrie(boolean usePatternTrie) {
+		this.usePatternTrie = usePatternTrie;
+	}
+	
+	/**
+	 * Get the patterns kept into memory by the last execution, if setUsePatternTrie(true) was called.
+	 * @return the patterns, or null
+	 */
+	public PatternTrie getPatternTrie() {
+		return patternTrie;
+	}
+	
+	/**
+	 * Set a consumer that receives the patterns found when no output file path is given, instead 
+	 * of keeping them into memory. runAlgorithm() then returns null. The consumer can count or 
+	 * aggregate the patterns without building them (see PatternConsumer).
+	 * @param patternConsumer the consumer, or null to keep the patterns into memory
+	 */
+	public void setPatternConsumer(PatternConsumer patternConsumer) {
+		this.patternConsumer = patternConsumer;
+	}
 
 }
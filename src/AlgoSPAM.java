@@ -0,0 +1,460 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This is an implementation of the SPAM algorithm (Ayres et al. 2002), which mines the 
+ * sequential patterns with vertical bitmaps instead of projected databases.
+ * The bitmap of a pattern contains a bit for each itemset of each sequence (see Bitmap),
+ * and the bitmap of a larger pattern is computed with bitwise operations from the bitmap 
+ * of its prefix and the bitmap of an item: the S-step adds a new itemset with the item, 
+ * and the I-step adds the item to the last itemset. The patterns are explored depth-first, 
+ * and the items that do not extend a pattern are not tried for its larger patterns.
+ * <br/><br/>
+ * The time of a bitmap operation depends on the number of sequences containing the pattern,
+ * and not on the length of their suffixes, so it is closest to PrefixSpan on datasets with
+ * few items and short sequences (e.g., SIGN, LEVIATHAN), where each projected database 
+ * contains most of the sequences. On sparse datasets with many items (e.g., KOSARAK, BMS2)
+ * it is much slower, because each frequent item is intersected with every pattern it may 
+ * extend (see TestEngines). The bitmaps of the items take memory proportional to the number 
+ * of itemsets of the database.
+ * <br/><br/>
+ * The patterns are written to a file in the same format as AlgoPrefixSpan, but in a 
+ * different order.
+ *
+ * @see AlgoPrefixSpan
+ * @see Bitmap
+ */
+public class AlgoSPAM {
+	
+	/** for statistics **/
+	long startTime;
+	long endTime;
+	
+	/** the number of pattern found */
+	int patternCount;
+	
+	/** absolute minimum support */
+	private int minsuppAbsolute;
+	
+	/** writer to write output file */
+	private PatternWriter writer = null;
+	
+	/** the pattern being written, and its line encoded in the text format */
+	private final PatternWriter.Line line = new PatternWriter.Line();
+	/** the builder of the compressed sets of sequence ids of the patterns */
+	private final SequenceIDSet.Builder sequenceIDBuilder = new SequenceIDSet.Builder();
+	
+	/** maximum pattern length in terms of item count */
+	private int maximumPatternLength = 1000;
+	
+	/** if true, sequence identifiers of each pattern will be shown*/
+	private boolean showSequenceIdentifiers = false;
+	
+	/** if true, the dataset is loaded from its binary cache file (created if needed) */
+	private boolean useDatasetCache = false;
+	
+	/** if true, the sequences of the dataset are stored off the heap */
+	private boolean useOffHeapStorage = false;
+	
+	/** if true, the identical sequences are merged before mining (see SequenceDatabase.deduplicate()) */
+	private boolean deduplicateSequences = false;
+	
+	/** buffer for storing the current pattern (the items, and -1 between the itemsets) */
+	private int[] patternBuffer = new int[2000];
+	
+	/** original sequence count **/
+	private int sequenceCount = 0;
+	
+	/** the sequence database **/
+	private SequenceDatabase sequenceDatabase;
+	
+	/** the frequent items, in increasing order */
+	private int[] frequentItems;
+	
+	/** the bitmap of each frequent item */
+	private Bitmap[] itemBitmaps;
+	
+	/** the maximum number of empty words for each word that is not empty in the bitmap of an item,
+	 * to store all its words (see Bitmap.makeDense()) */
+	private static final int MAX_EMPTY_WORDS_PER_WORD = 8;
+	
+	/** true if an itemset of the database contains more than one item. If not, the I-steps are not done. */
+	private boolean containsItemsetsWithMultipleItems = false;
+	
+	/**
+	 * Default constructor
+	 */
+	public AlgoSPAM(){
+	}
+	
+	/**
+	 * Run the algorithm
+	 * @param inputFile : a sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 * @throws IOException exception if error while writing the file or reading
+	 */
+	public void runAlgorithm(String inputFile, double minsupRelative, String outputFilePath) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		// Load the sequence database
+		sequenceDatabase = new SequenceDatabase(); 
+		sequenceDatabase.setUseOffHeapStorage(useOffHeapStorage);
+		sequenceDatabase.loadFile(inputFile, useDatasetCache);
+		
+		runAlgorithm(minsupRelative, outputFilePath);
+	}
+	
+	/**
+	 * Run the algorithm on a sequence database that is already loaded
+	 * @param database : a sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 * @throws IOException exception if error while writing the file
+	 */
+	public void runAlgorithm(SequenceDatabase database, double minsupRelative, String outputFilePath) throws IOException {
+		// record start time
+		startTime = System.currentTimeMillis();
+		
+		sequenceDatabase = database;
+		runAlgorithm(minsupRelative, outputFilePath);
+	}
+	
+	/**
+	 * Run the algorithm on the sequence database
+	 * @param minsupRelative  :  the minimum support as a percentage (e.g. 50%) as a value in [0,1]
+	 * @param outputFilePath : the path of the output file to save the result
+	 * @throws IOException exception if error while writing the file
+	 */
+	private void runAlgorithm(double minsupRelative, String outputFilePath) throws IOException {
+		if(deduplicateSequences){
+			sequenceDatabase.deduplicate();
+		}
+		sequenceCount = sequenceDatabase.getTotalWeight();
+		
+		// convert to a absolute minimum support
+		this.minsuppAbsolute = (int) Math.ceil(minsupRelative * sequenceCount);
+		if(this.minsuppAbsolute == 0){ // protection
+			this.minsuppAbsolute = 1;
+		}
+		
+		MemoryLogger.getInstance().reset();
+		patternCount = 0;
+		writer = new PatternWriter(outputFilePath, showSequenceIdentifiers);
+		try{
+			// create the bitmaps of the frequent items
+			buildItemBitmaps();
+			
+			// explore the patterns starting with each frequent item
+			int[] candidates = new int[frequentItems.length];
+			for(int i = 0; i < candidates.length; i++){
+				candidates[i] = i;
+			}
+			for(int i = 0; i < frequentItems.length; i++){
+				patternBuffer[0] = frequentItems[i];
+				savePattern(0, itemBitmaps[i]);
+				if(maximumPatternLength > 1){
+					explore(itemBitmaps[i], 0, 1, candidates, candidates.length, candidates, i + 1, candidates.length);
+				}
+			}
+		}finally{
+			writer.close();
+			writer = null;
+		}
+		
+		sequenceDatabase = null;
+		itemBitmaps = null;
+		
+		// record end time
+		endTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Create the bitmap of each frequent item. The bits of each sequence are assigned to its itemsets 
+	 * while the supports of the items are counted, and the bitmaps of the frequent items are then filled.
+	 */
+	private void buildItemBitmaps() {
+		TokenStore tokens = sequenceDatabase.getTokens();
+		int[] sequenceWeights = sequenceDatabase.getSequenceWeights();
+		int[] sequenceBitStarts = new int[sequenceDatabase.size() + 1];
+		containsItemsetsWithMultipleItems = false;
+		
+		// for each item found, its support, the last sequence containing it, and its first and last bit
+		IntIntHashMap indexOfItem = new IntIntHashMap();
+		int itemCount = 0;
+		int[] items = new int[16];
+		int[] supports = new int[16];
+		int[] lastSequenceIDs = new int[16];
+		int[] firstBits = new int[16];
+		int[] lastBits = new int[16];
+		
+		int bit = 0;
+		for(int s = 0; s < sequenceDatabase.size(); s++){
+			sequenceBitStarts[s] = bit;
+			int weight = sequenceWeights == null ? 1 : sequenceWeights[s];
+			// the number of items of the current itemset
+			int itemsetSize = 0;
+			for(int i = sequenceDatabase.getSequenceStart(s); i < sequenceDatabase.getSequenceEnd(s); i++){
+				int token = tokens.get(i);
+				if(token > 0){
+					int index = indexOfItem.get(token, -1);
+					if(index < 0){
+						if(itemCount == items.length){
+							int length = itemCount * 2;
+							items = Arrays.copyOf(items, length);
+							supports = Arrays.copyOf(supports, length);
+							lastSequenceIDs = Arrays.copyOf(lastSequenceIDs, length);
+							firstBits = Arrays.copyOf(firstBits, length);
+							lastBits = Arrays.copyOf(lastBits, length);
+						}
+						index = itemCount++;
+						indexOfItem.put(token, index);
+						items[index] = token;
+						lastSequenceIDs[index] = -1;
+						firstBits[index] = bit;
+					}
+					if(lastSequenceIDs[index] != s){
+						lastSequenceIDs[index] = s;
+						supports[index] += weight;
+					}
+					lastBits[index] = bit;
+					if(++itemsetSize == 2){
+						containsItemsetsWithMultipleItems = true;
+					}
+				}else if(itemsetSize > 0){
+					// the end of an itemset (-1) or of the sequence (-2)
+					bit++;
+					itemsetSize = 0;
+				}
+			}
+			if(itemsetSize > 0){
+				bit++;
+			}
+		}
+		sequenceBitStarts[sequenceDatabase.size()] = bit;
+		Bitmap.Layout layout = new Bitmap.Layout(sequenceBitStarts, sequenceDatabase.size(), sequenceWeights);
+		
+		// create the bitmaps of the frequent items, in increasing order of item
+		int frequentItemCount = 0;
+		long[] keys = new long[itemCount];
+		for(int index = 0; index < itemCount; index++){
+			if(supports[index] >= minsuppAbsolute){
+				keys[frequentItemCount++] = ((long) items[index] << 32) | index;
+			}
+		}
+		Arrays.sort(keys, 0, frequentItemCount);
+		frequentItems = new int[frequentItemCount];
+		itemBitmaps = new Bitmap[frequentItemCount];
+		// the bitmap of each item found (null if it is infrequent)
+		Bitmap[] bitmapOfIndex = new Bitmap[itemCount];
+		for(int i = 0; i < frequentItemCount; i++){
+			int index = (int) keys[i];
+			frequentItems[i] = items[index];
+			int wordSpan = (lastBits[index] >>> 6) - (firstBits[index] >>> 6) + 1;
+			itemBitmaps[i] = new Bitmap(layout, Math.min(wordSpan, supports[index]));
+			itemBitmaps[i].setSupport(supports[index]);
+			bitmapOfIndex[index] = itemBitmaps[i];
+		}
+		
+		// set the bits of the frequent items
+		bit = 0;
+		for(int s = 0; s < sequenceDatabase.size(); s++){
+			boolean itemsetStarted = false;
+			for(int i = sequenceDatabase.getSequenceStart(s); i < sequenceDatabase.getSequenceEnd(s); i++){
+				int token = tokens.get(i);
+				if(token > 0){
+					Bitmap bitmap = bitmapOfIndex[indexOfItem.get(token, -1)];
+					if(bitmap != null){
+						bitmap.set(bit);
+					}
+					itemsetStarted = true;
+				}else if(itemsetStarted){
+					bit++;
+					itemsetStarted = false;
+				}
+			}
+			if(itemsetStarted){
+				bit++;
+			}
+		}
+		for(Bitmap bitmap : itemBitmaps){
+			bitmap.makeDense(MAX_EMPTY_WORDS_PER_WORD);
+		}
+	}
+	
+	/**
+	 * Explore the larger patterns of a frequent pattern (depth-first search).
+	 * @param bitmap the bitmap of the pattern
+	 * @param lastBufferPosition the last position of the pattern in the buffer
+	 * @param length the number of items of the pattern
+	 * @param sCandidates the items (indexes in the array of frequent items) that can extend the pattern by an S-step
+	 * @param sCandidateCount the number of these items
+	 * @param iCandidates an array containing the items that can extend the pattern by an I-step
+	 * @param iFrom the position of the first of these items in the array
+	 * @param iTo the position after the last of these items in the array
+	 * @throws IOException if error when writing to file
+	 */
+	private void explore(Bitmap bitmap, int lastBufferPosition, int length, int[] sCandidates, int sCandidateCount,
+			int[] iCandidates, int iFrom, int iTo) throws IOException {
+		if(lastBufferPosition + 2 >= patternBuffer.length){
+			patternBuffer = Arrays.copyOf(patternBuffer, patternBuffer.length * 2);
+		}
+		
+		// S-steps: the items that extend the pattern with a new itemset
+		int[] sItems = new int[sCandidateCount];
+		Bitmap[] sBitmaps = new Bitmap[sCandidateCount];
+		int sItemCount = 0;
+		Bitmap sStepBitmap = sCandidateCount > 0 ? bitmap.sStepBitmap() : null;
+		for(int i = 0; i < sCandidateCount; i++){
+			Bitmap newBitmap = sStepBitmap.intersect(itemBitmaps[sCandidates[i]], minsuppAbsolute);
+			if(newBitmap != null){
+				sItems[sItemCount] = sCandidates[i];
+				sBitmaps[sItemCount++] = newBitmap;
+			}
+		}
+		
+		// I-steps: the items that extend the last itemset of the pattern 
+		// (there are none if all the itemsets contain a single item)
+		if(!containsItemsetsWithMultipleItems){
+			iTo = iFrom;
+		}
+		int[] iItems = new int[iTo - iFrom];
+		Bitmap[] iBitmaps = new Bitmap[iTo - iFrom];
+		int iItemCount = 0;
+		for(int i = iFrom; i < iTo; i++){
+			Bitmap newBitmap = bitmap.intersect(itemBitmaps[iCandidates[i]], minsuppAbsolute);
+			if(newBitmap != null){
+				iItems[iItemCount] = iCandidates[i];
+				iBitmaps[iItemCount++] = newBitmap;
+			}
+		}
+		MemoryLogger.getInstance().checkMemory();  // check the memory for statistics.
+		
+		// the larger patterns of a pattern obtained by an S-step can only be obtained with the 
+		// items of the S-steps of this pattern (and the larger items for the I-steps)
+		for(int i = 0; i < sItemCount; i++){
+			patternBuffer[lastBufferPosition + 1] = -1;
+			patternBuffer[lastBufferPosition + 2] = frequentItems[sItems[i]];
+			savePattern(lastBufferPosition + 2, sBitmaps[i]);
+			if(length + 1 < maximumPatternLength){
+				explore(sBitmaps[i], lastBufferPosition + 2, length + 1, sItems, sItemCount, sItems, i + 1, sItemCount);
+			}
+			sBitmaps[i] = null;
+		}
+		
+		// the larger patterns of a pattern obtained by an I-step can only be obtained with the 
+		// items of the S-steps of this pattern and the larger items of its I-steps
+		for(int i = 0; i < iItemCount; i++){
+			patternBuffer[lastBufferPosition + 1] = frequentItems[iItems[i]];
+			savePattern(lastBufferPosition + 1, iBitmaps[i]);
+			if(length + 1 < maximumPatternLength){
+				explore(iBitmaps[i], lastBufferPosition + 1, length + 1, sItems, sItemCount, iItems, i + 1, iItemCount);
+			}
+			iBitmaps[i] = null;
+		}
+	}
+	
+	/**
+	 * Save a pattern to the output file, in the same format as AlgoPrefixSpan
+	 * @param lastBufferPosition the last position in the buffer for this pattern
+	 * @param bitmap the bitmap of this pattern
+	 * @throws IOException if error when writing to file
+	 */
+	private void savePattern(int lastBufferPosition, Bitmap bitmap) throws IOException {
+		// increase the number of pattern found for statistics purposes
+		patternCount++;
+		
+		// the -1 after the last itemset is added by the line
+		line.set(patternBuffer, lastBufferPosition + 1, bitmap.getSupport(), 
+				showSequenceIdentifiers ? originalSequenceIDs(bitmap.getSequenceIDs()) : null);
+		// write the pattern to the file
+		writer.write(line);
+	}
+	
+	/**
+	 * Get the ids of the sequences of the input file corresponding to some sequences of
+	 * the database. They are different if the identical sequences have been merged.
+	 * @param sequenceIDs the ids of the sequences of the database, in increasing order
+	 * @return the compressed set of the ids of the sequences of the input file
+	 */
+	private SequenceIDSet originalSequenceIDs(int[] sequenceIDs) {
+		if(sequenceDatabase.isDeduplicated() == false){
+			return SequenceIDSet.of(sequenceIDs, sequenceIDs.length);
+		}
+		for(int sequenceID : sequenceIDs){
+			for(int originalID : sequenceDatabase.getOriginalSequenceIDs(sequenceID)){
+				sequenceIDBuilder.add(originalID);
+			}
+		}
+		return sequenceIDBuilder.build();
+	}
+	
+	/**
+	 * Print statistics about the algorithm execution to System.out.
+	 */
+	public void printStatistics() {
+		StringBuilder r = new StringBuilder(200);
+		r.append("=============  SPAM - STATISTICS =============\n Total time ~ ");
+		r.append(endTime - startTime);
+		r.append(" ms\n");
+		r.append(" Frequent sequences count : " + patternCount);
+		r.append('\n');
+		r.append(" Max memory (mb) : ");
+		r.append(MemoryLogger.getInstance().getMaxMemory());
+		r.append('\n');
+		r.append(" minsup = " + minsuppAbsolute + " sequences.");
+		r.append('\n');
+		r.append("===================================================\n");
+		System.out.println(r.toString());
+	}
+	
+	/**
+	 * Get the number of patterns found by the last execution
+	 * @return the number of patterns
+	 */
+	public int getPatternCount() {
+		return patternCount;
+	}
+	
+	/**
+	 * Set the maximum length of patterns to be found (in terms of item count)
+	 * @param maximumPatternLength the maximumPatternLength to set
+	 */
+	public void setMaximumPatternLength(int maximumPatternLength) {
+		this.maximumPatternLength = maximumPatternLength;
+	}
+	
+	/**
+	 * Set that the dataset should be loaded from its binary cache file (true) or not (false).
+	 * @param useDatasetCache true or false
+	 */
+	public void setUseDatasetCache(boolean useDatasetCache) {
+		this.useDatasetCache = useDatasetCache;
+	}
+	
+	/**
+	 * Set that the sequences of the dataset should be stored off the heap (true) or not (false).
+	 * @param useOffHeapStorage true or false
+	 */
+	public void setUseOffHeapStorage(boolean useOffHeapStorage) {
+		this.useOffHeapStorage = useOffHeapStorage;
+	}
+	
+	/**
+	 * Set that the identical sequences should be merged before mining (true) or not (false).
+	 * @param deduplicateSequences true or false
+	 */
+	public void setDeduplicateSequences(boolean deduplicateSequences) {
+		this.deduplicateSequences = deduplicateSequences;
+	}
+	
+	/**
+	 * Set that the sequence identifiers should be shown (true) or not (false) for each
+	 * pattern found
+	 * @param showSequenceIdentifiers true or false
+	 */
+	public void setShowSequenceIdentifiers(boolean showSequenceIdentifiers) {
+		this.showSequenceIdentifiers = showSequenceIdentifiers;
+	}
+}
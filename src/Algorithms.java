@@ -8,45 +8,36 @@ import java.util.*;
 public class Algorithms {
 
     /**
-     * Private class that represents a pair composed by a string that is a sequential pattern,
-     * and an integer that is the sequential pattern's item-length.
+     * Loads a dataset in SPMF format and computes its profile, reading the dataset only once
+     *
+     * @param dataset  the file of the dataset
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @return the dataset
      */
-    private static class PairSP implements Comparable<PairSP> {
-        private String sp;
-        private int length;
-
-        PairSP(String sp, int length) {
-            this.sp = sp;
-            this.length = length;
-        }
-
-        int getLength() {
-            return length;
-        }
-
-        String getSequence() {
-            return sp;
-        }
-
-        public int compareTo(PairSP p2) {
-            return length - p2.getLength();
+    public static SequenceDatabase loadDataset(String dataset, boolean useCache) {
+        SequenceDatabase database = new SequenceDatabase();
+        try {
+            database.loadFile(dataset, useCache);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        return database;
     }
 
     /**
-     * Computes the item-length of a sequential pattern
+     * Computes the profile of a dataset in SPMF format, reading the dataset once without loading its sequences
      *
-     * @param sp a string that represents the sequential pattern
-     * @return the item-length of sp
+     * @param dataset the file of the dataset
+     * @return the profile of the dataset
      */
-    private static int computeItemLength(String sp) {
-        int length = 0;
-        String[] splitLine = sp.split(" -1 ");
-        for (int i = 0; i < splitLine.length - 1; i++) {
-            String[] splitItemset = splitLine[i].split(" ");
-            length += splitItemset.length;
+    public static DatasetProfile loadProfile(String dataset) {
+        try {
+            return SequenceDatabase.loadProfile(dataset);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new DatasetProfile();
         }
-        return length;
     }
 
     /**
@@ -57,50 +48,21 @@ public class Algorithms {
      * @return an upper bound to the maximum deviation
      */
     public static double computeMaxDevVC(String dataset, double delta) {
-        // compute an upper bound to the SBound and the size of the dataset D
-        int sBound = 0;
-        ArrayList<PairSP> orderedSet;
-        HashSet<String> set;
-        BufferedReader br = null;
-        double maxDev = -1;
-        try {
-            FileInputStream fin = new FileInputStream(new File(dataset));
-            br = new BufferedReader(new InputStreamReader(fin));
-            orderedSet = new ArrayList<>();
-            set = new HashSet<>();
-            String line;
-            int datasetSize = 0;
-            while ((line = br.readLine()) != null) {
-                datasetSize++;
-                if (!set.contains(line)) {
-                    int length = computeItemLength(line);
-                    if (length > sBound) {
-                        set.add(line);
-                        int i = 0;
-                        while (i < orderedSet.size() && orderedSet.get(i).getLength() > length) i++;
-                        orderedSet.add(i, new PairSP(line, length));
-                        if (orderedSet.get(orderedSet.size() - 1).getLength() > sBound) sBound++;
-                        else {
-                            String removable = orderedSet.remove(orderedSet.size() - 1).getSequence();
-                            set.remove(removable);
-                        }
-                    }
-                }
-            }
-            // compute the upper bound to the maximum deviation using the SBound
-            maxDev = Math.sqrt(1 / (2. * datasetSize) * (sBound + Math.log(1 / delta)));
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return maxDev;
+        return computeMaxDevVC(loadProfile(dataset), delta);
+    }
+
+    /**
+     * Computes an upper bound to the maximum deviation for the true frequent sequential patterns algorithm using the VC-dimension
+     *
+     * @param profile the profile of the dataset, which contains its size and an upper bound (s-bound) to its VC-dimension
+     * @param delta   the confidence parameter
+     * @return an upper bound to the maximum deviation
+     */
+    public static double computeMaxDevVC(DatasetProfile profile, double delta) {
+        int datasetSize = profile.getSequenceCount();
+        int sBound = profile.getSBound();
+        // compute the upper bound to the maximum deviation using the SBound
+        return Math.sqrt(1 / (2. * datasetSize) * (sBound + Math.log(1 / delta)));
     }
 
     /**
@@ -112,57 +74,31 @@ public class Algorithms {
      * @return an array out[] of two inttegers, where out[0] is the dataset size and out[1] is the sample size
      */
     public static int[] computeSampleSize(String dataset, double eps, double delta) {
-        // compute an upper bound to the SBound
-        int sBound = 0;
-        int sampleSize = 0;
-        int datasetSize = 0;
-        ArrayList<PairSP> orderedSet;
-        HashSet<String> set;
-        BufferedReader br = null;
-        try {
-            FileInputStream fin = new FileInputStream(new File(dataset));
-            br = new BufferedReader(new InputStreamReader(fin));
-            orderedSet = new ArrayList<>();
-            set = new HashSet<>();
-            String line;
-            while ((line = br.readLine()) != null) {
-                datasetSize++;
-                if (!set.contains(line)) {
-                    int length = computeItemLength(line);
-                    if (length > sBound) {
-                        set.add(line);
-                        int i = 0;
-                        while (i < orderedSet.size() && orderedSet.get(i).getLength() > length) i++;
-                        orderedSet.add(i, new PairSP(line, length));
-                        if (orderedSet.get(orderedSet.size() - 1).getLength() > sBound) sBound++;
-                        else {
-                            String removable = orderedSet.remove(orderedSet.size() - 1).getSequence();
-                            set.remove(removable);
-                        }
-                    }
-                }
-            }
-            // compute the sample size
-            sampleSize = (int) Math.ceil(2. / Math.pow(eps, 2.) * (sBound + Math.log(1. / delta)));
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        return computeSampleSize(loadProfile(dataset), eps, delta);
+    }
+
+    /**
+     * Computes the sample size for the sampling algorithm using the VC-dimension and the size of the input dataset
+     *
+     * @param profile the profile of the dataset, which contains its size and an upper bound (s-bound) to its VC-dimension
+     * @param eps     the error parameter
+     * @param delta   the confidence parameter
+     * @return an array out[] of two inttegers, where out[0] is the dataset size and out[1] is the sample size
+     */
+    public static int[] computeSampleSize(DatasetProfile profile, double eps, double delta) {
+        int datasetSize = profile.getSequenceCount();
+        int sBound = profile.getSBound();
+        // compute the sample size
+        int sampleSize = (int) Math.ceil(2. / Math.pow(eps, 2.) * (sBound + Math.log(1. / delta)));
         return new int[]{datasetSize,sampleSize};
     }
 
     /**
-     * Create a random sample from the input dataset
+     * Create a random sample from the input dataset. The comments, the empty lines and the other metadata
+     * of the file are skipped, as when the dataset is loaded, so the sample is drawn among the sequences.
      *
      * @param datasetFile   the file of the dataset
-     * @param datasetSize   the size of the input dataset
+     * @param datasetSize   the number of sequences of the input dataset (see computeSampleSize())
      * @param sampleFile    the file to save the sample
      * @param sampleSize    the size of the sample
      * @param seed          the seed for the random generator
@@ -172,20 +108,20 @@ public class Algorithms {
         BufferedWriter bw = null;
         int[] sample;
         try {
-            FileInputStream fin = new FileInputStream(new File(datasetFile));
-            br = new BufferedReader(new InputStreamReader(fin));
+            br = new BufferedReader(new InputStreamReader(FileChunks.open(datasetFile)));
             FileOutputStream fout = new FileOutputStream(new File((sampleFile)));
             bw = new BufferedWriter(new OutputStreamWriter(fout));
             sample = new int[sampleSize];
             Random r = new Random(seed);
             for (int i = 0; i < sampleSize; i++) sample[i] = r.nextInt(datasetSize);
             Arrays.sort(sample);
-            String line = br.readLine();
-            int t = 0;
+            String line = null;
+            int t = -1;
             for (int i = 0; i < sampleSize; i++) {
                 while (t < sample[i]) {
                     line = br.readLine();
-                    t++;
+                    if (line == null) throw new IOException("The dataset contains less than " + datasetSize + " sequences");
+                    if (isSequence(line)) t++;
                 }
                 bw.write(line + "\n");
             }
@@ -203,6 +139,41 @@ public class Algorithms {
         }
     }
 
+    /**
+     * Checks if a line of a dataset in SPMF format is a sequence, and not a comment, an empty line or other metadata
+     *
+     * @param line the line
+     * @return true if the line is a sequence
+     */
+    private static boolean isSequence(String line) {
+        if (line.isEmpty()) return false;
+        char first = line.charAt(0);
+        return first != '#' && first != '%' && first != '@';
+    }
+
+    /**
+     * Create a random sample from a dataset that is already loaded, without reading its file again
+     *
+     * @param database      the dataset
+     * @param sampleFile    the file to save the sample
+     * @param sampleSize    the size of the sample
+     * @param seed          the seed for the random generator
+     * @return the sample, which can be mined without reading the sample file
+     */
+    public static SequenceDatabase createSample(SequenceDatabase database, String sampleFile, int sampleSize, long seed) {
+        int[] sample = new int[sampleSize];
+        Random r = new Random(seed);
+        for (int i = 0; i < sampleSize; i++) sample[i] = r.nextInt(database.size());
+        Arrays.sort(sample);
+        SequenceDatabase sampleDatabase = database.subset(sample);
+        try {
+            sampleDatabase.saveFile(sampleFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sampleDatabase;
+    }
+
     /**
      * Mines the FSP from a dataset using the PrefixSpan algorithm
      *
@@ -212,13 +183,407 @@ public class Algorithms {
      * @return the number of FSP extracted from the dataset
      */
     public static int mining(String dataset, String fileFSP, double theta) {
+        return mining(dataset, fileFSP, theta, false);
+    }
+
+    /**
+     * Mines the FSP from a dataset using the PrefixSpan algorithm
+     *
+     * @param dataset  the file of the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP
+     * @param theta    the minimum frequency threshold
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(String dataset, String fileFSP, double theta, boolean useCache) {
+        return mining(dataset, fileFSP, theta, useCache, false);
+    }
+
+    /**
+     * Mines the FSP from a dataset using the PrefixSpan algorithm
+     *
+     * @param dataset  the file of the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP
+     * @param theta    the minimum frequency threshold
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @param offHeap  true to store the sequences of the dataset off the heap
+     *                 (useful when the dataset is larger than the heap)
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(String dataset, String fileFSP, double theta, boolean useCache, boolean offHeap) {
+        return mining(dataset, fileFSP, theta, useCache, offHeap, 1);
+    }
+
+    /**
+     * Mines the FSP from a dataset using the PrefixSpan algorithm
+     *
+     * @param dataset     the file of the dataset
+     * @param fileFSP     the name of the output file that will contain the FSP
+     * @param theta       the minimum frequency threshold
+     * @param useCache    true to load the dataset from its binary cache file, that is created if needed
+     *                    (useful when the same dataset is mined several times)
+     * @param offHeap     true to store the sequences of the dataset off the heap
+     *                    (useful when the dataset is larger than the heap)
+     * @param threadCount the number of threads used to mine the dataset. With more than one thread,
+     *                    the FSP are the same but they are written in a different order
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(String dataset, String fileFSP, double theta, boolean useCache, boolean offHeap, int threadCount) {
         AlgoPrefixSpan alg = null;
         try {
             alg = new AlgoPrefixSpan();
+            alg.setUseDatasetCache(useCache);
+            alg.setUseOffHeapStorage(offHeap);
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setThreadCount(threadCount);
             alg.runAlgorithm(dataset, theta, fileFSP);
         } catch (IOException e) {
             e.printStackTrace();
         }
         return  alg.patternCount;
     }
+
+    /**
+     * Mines the FSP from a dataset that is already loaded using the PrefixSpan algorithm.
+     * The sequences of the dataset are modified while it is mined.
+     *
+     * @param database the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP
+     * @param theta    the minimum frequency threshold
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(SequenceDatabase database, String fileFSP, double theta) {
+        return mining(database, fileFSP, theta, 1);
+    }
+
+    /**
+     * Mines the FSP from a dataset that is already loaded using the PrefixSpan algorithm.
+     * The sequences of the dataset are modified while it is mined.
+     *
+     * @param database    the dataset
+     * @param fileFSP     the name of the output file that will contain the FSP
+     * @param theta       the minimum frequency threshold
+     * @param threadCount the number of threads used to mine the dataset. With more than one thread,
+     *                    the FSP are the same but they are written in a different order
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(SequenceDatabase database, String fileFSP, double theta, int threadCount) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setThreadCount(threadCount);
+            alg.runAlgorithm(database, theta, fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return  alg.patternCount;
+    }
+
+    /**
+     * Mines the FSP from a dataset using the SPAM algorithm, that uses vertical bitmaps instead of the
+     * projected databases of PrefixSpan. The FSP are the same as with mining(), but they are written in
+     * a different order. PrefixSpan is faster on all the datasets in the data folder, especially on the
+     * sparse ones (see the section Mining Engines of README.md, and TestEngines).
+     *
+     * @param dataset the file of the dataset
+     * @param fileFSP the name of the output file that will contain the FSP
+     * @param theta   the minimum frequency threshold
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int miningSPAM(String dataset, String fileFSP, double theta) {
+        return miningSPAM(dataset, fileFSP, theta, false);
+    }
+
+    /**
+     * Mines the FSP from a dataset using the SPAM algorithm (see miningSPAM(String, String, double))
+     *
+     * @param dataset  the file of the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP
+     * @param theta    the minimum frequency threshold
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int miningSPAM(String dataset, String fileFSP, double theta, boolean useCache) {
+        AlgoSPAM alg = new AlgoSPAM();
+        try {
+            alg.setUseDatasetCache(useCache);
+            alg.setDeduplicateSequences(true);
+            alg.runAlgorithm(dataset, theta, fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return alg.getPatternCount();
+    }
+
+    /**
+     * Mines the FSP from a dataset that is already loaded using the SPAM algorithm
+     * (see miningSPAM(String, String, double))
+     *
+     * @param database the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP
+     * @param theta    the minimum frequency threshold
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int miningSPAM(SequenceDatabase database, String fileFSP, double theta) {
+        AlgoSPAM alg = new AlgoSPAM();
+        try {
+            alg.setDeduplicateSequences(true);
+            alg.runAlgorithm(database, theta, fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return alg.getPatternCount();
+    }
+
+    /**
+     * Mines the FSP from a dataset for several minimum frequency thresholds with a single execution of
+     * the PrefixSpan algorithm: the FSP are mined with the smallest threshold, and each FSP is written to
+     * the output file of every threshold that it reaches. Each output file is the same as the output file
+     * of mining() with its threshold.
+     *
+     * @param dataset  the file of the dataset
+     * @param filesFSP the names of the output files that will contain the FSP, one for each threshold
+     * @param thetas   the minimum frequency thresholds
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @return the number of FSP extracted from the dataset for each threshold
+     */
+    public static int[] mining(String dataset, String[] filesFSP, double[] thetas, boolean useCache) {
+        return mining(dataset, filesFSP, thetas, useCache, false);
+    }
+
+    /**
+     * Mines the FSP from a dataset for several minimum frequency thresholds with a single execution of
+     * the PrefixSpan algorithm: the FSP are mined with the smallest threshold, and each FSP is written to
+     * the output file of every threshold that it reaches. Each output file is the same as the output file
+     * of mining() with its threshold.
+     *
+     * @param dataset  the file of the dataset
+     * @param filesFSP the names of the output files that will contain the FSP, one for each threshold
+     * @param thetas   the minimum frequency thresholds
+     * @param useCache true to load the dataset from its binary cache file, that is created if needed
+     *                 (useful when the same dataset is mined several times)
+     * @param offHeap  true to store the sequences of the dataset off the heap
+     *                 (useful when the dataset is larger than the heap)
+     * @return the number of FSP extracted from the dataset for each threshold
+     */
+    public static int[] mining(String dataset, String[] filesFSP, double[] thetas, boolean useCache, boolean offHeap) {
+        int[] counts = new int[thetas.length];
+        try {
+            AlgoPrefixSpan alg = new AlgoPrefixSpan();
+            alg.setUseDatasetCache(useCache);
+            alg.setUseOffHeapStorage(offHeap);
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            counts = alg.runAlgorithm(dataset, thetas, filesFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    /**
+     * Mines the FSP from a dataset that is already loaded for several minimum frequency thresholds with
+     * a single execution of the PrefixSpan algorithm. The sequences of the dataset are modified while it is mined.
+     *
+     * @param database the dataset
+     * @param filesFSP the names of the output files that will contain the FSP, one for each threshold
+     * @param thetas   the minimum frequency thresholds
+     * @return the number of FSP extracted from the dataset for each threshold
+     */
+    public static int[] mining(SequenceDatabase database, String[] filesFSP, double[] thetas) {
+        int[] counts = new int[thetas.length];
+        try {
+            AlgoPrefixSpan alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            counts = alg.runAlgorithm(database, thetas, filesFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    /**
+     * Mines the k most frequent FSP from a dataset using the PrefixSpan algorithm in top-k mode.
+     * If other FSP have the same support as the k-th one, only the ones found first are written, so
+     * mining() with the minimum frequency threshold that is returned finds these FSP and the other ones
+     * with this support. This threshold can be used instead of a threshold found with several executions
+     * of mining().
+     *
+     * @param dataset the file of the dataset
+     * @param fileFSP the name of the output file that will contain the FSP, by decreasing support
+     * @param k       the number of FSP
+     * @return the frequency of the k-th most frequent FSP (or of the less frequent FSP if there are less than k FSP)
+     */
+    public static double miningTopK(String dataset, String fileFSP, int k) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setTopK(k);
+            alg.runAlgorithm(dataset, 0., fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return topKThreshold(alg);
+    }
+
+    /**
+     * Mines the k most frequent FSP from a dataset that is already loaded using the PrefixSpan algorithm
+     * in top-k mode. The sequences of the dataset are modified while it is mined.
+     *
+     * @param database the dataset
+     * @param fileFSP  the name of the output file that will contain the FSP, by decreasing support
+     * @param k        the number of FSP
+     * @return the frequency of the k-th most frequent FSP (or of the less frequent FSP if there are less than k FSP)
+     */
+    public static double miningTopK(SequenceDatabase database, String fileFSP, int k) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setTopK(k);
+            alg.runAlgorithm(database, 0., fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return topKThreshold(alg);
+    }
+
+    /**
+     * Mines the closed FSP from a dataset using the PrefixSpan algorithm. A FSP is closed if no super-pattern
+     * has the same support, so the closed FSP and their supports determine all the FSP and their supports.
+     *
+     * @param dataset the file of the dataset
+     * @param fileFSP the name of the output file that will contain the closed FSP
+     * @param theta   the minimum frequency threshold
+     * @return the number of closed FSP extracted from the dataset
+     */
+    public static int miningClosed(String dataset, String fileFSP, double theta) {
+        return mining(dataset, fileFSP, theta, AlgoPrefixSpan.CLOSED_PATTERNS);
+    }
+
+    /**
+     * Mines the maximal FSP from a dataset using the PrefixSpan algorithm. A FSP is maximal if no super-pattern
+     * is frequent, so the maximal FSP determine all the FSP (but not their supports).
+     *
+     * @param dataset the file of the dataset
+     * @param fileFSP the name of the output file that will contain the maximal FSP
+     * @param theta   the minimum frequency threshold
+     * @return the number of maximal FSP extracted from the dataset
+     */
+    public static int miningMaximal(String dataset, String fileFSP, double theta) {
+        return mining(dataset, fileFSP, theta, AlgoPrefixSpan.MAXIMAL_PATTERNS);
+    }
+
+    /**
+     * Mines the closed or maximal FSP from a dataset using the PrefixSpan algorithm.
+     *
+     * @param dataset     the file of the dataset
+     * @param fileFSP     the name of the output file that will contain the FSP
+     * @param theta       the minimum frequency threshold
+     * @param patternType AlgoPrefixSpan.CLOSED_PATTERNS or AlgoPrefixSpan.MAXIMAL_PATTERNS
+     * @return the number of FSP extracted from the dataset
+     */
+    private static int mining(String dataset, String fileFSP, double theta, int patternType) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setPatternType(patternType);
+            alg.runAlgorithm(dataset, theta, fileFSP);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return alg.patternCount;
+    }
+
+    /**
+     * Mines the FSP from a dataset using the PrefixSpan algorithm, and passes them to a consumer instead of
+     * writing them to a file. For example, PatternConsumer.Counter counts the FSP without building them, and
+     * PatternConsumer.SupportHistogram gives the number of FSP for every larger threshold.
+     *
+     * @param dataset  the file of the dataset
+     * @param consumer the consumer of the FSP
+     * @param theta    the minimum frequency threshold
+     * @return the number of FSP extracted from the dataset
+     */
+    public static int mining(String dataset, PatternConsumer consumer, double theta) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setPatternConsumer(consumer);
+            alg.runAlgorithm(dataset, theta, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return alg.patternCount;
+    }
+
+    /**
+     * Mines the FSP from a dataset using the PrefixSpan algorithm, and keeps them in memory in a prefix tree
+     * instead of writing them to a file. The support of a pattern can then be looked up with
+     * PatternTrie.getSupport(), and the patterns can be visited level by level.
+     *
+     * @param dataset the file of the dataset
+     * @param theta   the minimum frequency threshold
+     * @return the FSP extracted from the dataset
+     */
+    public static PatternTrie miningInMemory(String dataset, double theta) {
+        AlgoPrefixSpan alg = null;
+        try {
+            alg = new AlgoPrefixSpan();
+            alg.setRecodeItems(true);
+            alg.setDeduplicateSequences(true);
+            alg.setCountBeforeProjecting(true);
+            alg.setUseSequenceIndex(true);
+            alg.setUsePatternTrie(true);
+            alg.runAlgorithm(dataset, theta, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return alg.getPatternTrie();
+    }
+
+    /**
+     * Converts the minimum support found in top-k mode to a minimum frequency threshold, such that
+     * mining() converts it back to the same minimum support.
+     *
+     * @param alg the algorithm executed in top-k mode
+     * @return the minimum frequency threshold
+     */
+    private static double topKThreshold(AlgoPrefixSpan alg) {
+        int support = alg.getMinimumSupport();
+        double theta = support / (double) alg.sequenceCount;
+        while (Math.ceil(theta * alg.sequenceCount) > support) theta = Math.nextDown(theta);
+        return theta;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,405 @@
+import java.util.Arrays;
+
+/**
+ * A vertical bitmap of a sequential pattern, as used by the SPAM algorithm (Ayres et al. 2002).
+ * It contains a bit for each itemset of each sequence of a sequence database, which is set if
+ * the pattern occurs in the sequence and its last itemset is matched by this itemset. The bits 
+ * of a sequence follow those of the previous sequence (see Bitmap.Layout).
+ * <br/><br/>
+ * Only the words of the bitmap that are not empty are stored, with their indexes, because the
+ * bitmaps of the patterns that occur in a few sequences are mostly empty. The bitmaps are 
+ * intersected by merging their lists of words, so the time depends on the number of sequences
+ * containing the patterns, and not on the size of the database. The bitmaps of the items, which
+ * are intersected with all the other bitmaps, can also store all the words between their first 
+ * and last word that is not empty, if most of them are not empty (see makeDense()), so that 
+ * the word with a given index is found directly.
+ *
+ * @see AlgoSPAM
+ */
+public class Bitmap {
+	
+	/** the layout of the bits of the sequences */
+	private final Layout layout;
+	
+	/** the indexes of the words that are not empty, in increasing order */
+	private int[] wordIndexes;
+	
+	/** the words that are not empty */
+	private long[] words;
+	
+	/** the number of words that are not empty */
+	private int wordCount = 0;
+	
+	/** all the words between the first and the last word that is not empty (or null) */
+	private long[] denseWords = null;
+	
+	/** the support of the pattern (the sum of the weights of the sequences having a bit set) */
+	private int support = 0;
+	
+	/**
+	 * The positions of the bits of the sequences of a sequence database, which are shared
+	 * by all the bitmaps of this database.
+	 */
+	public static final class Layout {
+		/** the first bit of each sequence, followed by the number of bits */
+		private final int[] sequenceBitStarts;
+		/** the sequence of each bit */
+		private final int[] sequenceOfBit;
+		/** the weight of each sequence (or null if all the weights are 1) */
+		private final int[] sequenceWeights;
+		
+		/**
+		 * Constructor
+		 * @param sequenceBitStarts the first bit of each sequence, followed by the number of bits
+		 * @param sequenceCount the number of sequences
+		 * @param sequenceWeights the weight of each sequence (or null if all the weights are 1)
+		 */
+		public Layout(int[] sequenceBitStarts, int sequenceCount, int[] sequenceWeights) {
+			this.sequenceBitStarts = sequenceBitStarts;
+			this.sequenceWeights = sequenceWeights;
+			sequenceOfBit = new int[sequenceBitStarts[sequenceCount]];
+			for(int s = 0; s < sequenceCount; s++){
+				for(int bit = sequenceBitStarts[s]; bit < sequenceBitStarts[s + 1]; bit++){
+					sequenceOfBit[bit] = s;
+				}
+			}
+		}
+		
+		/**
+		 * Get the total number of bits
+		 * @return the number of bits
+		 */
+		public int getBitCount() {
+			return sequenceOfBit.length;
+		}
+	}
+	
+	/**
+	 * Constructor of an empty bitmap
+	 * @param layout the layout of the bits of the sequences
+	 * @param capacity the number of words that can be stored before the arrays are enlarged
+	 */
+	public Bitmap(Layout layout, int capacity) {
+		this.layout = layout;
+		wordIndexes = new int[Math.max(1, capacity)];
+		words = new long[Math.max(1, capacity)];
+	}
+	
+	/**
+	 * Set the bits of a word. The words must be set in increasing order of index.
+	 * @param index the index of the word
+	 * @param word the bits
+	 */
+	private void or(int index, long word) {
+		if(wordCount > 0 && wordIndexes[wordCount - 1] == index){
+			words[wordCount - 1] |= word;
+			return;
+		}
+		if(wordCount == words.length){
+			int length = wordCount * 2;
+			wordIndexes = Arrays.copyOf(wordIndexes, length);
+			words = Arrays.copyOf(words, length);
+		}
+		wordIndexes[wordCount] = index;
+		words[wordCount++] = word;
+	}
+	
+	/**
+	 * Set a bit. The bits must be set in increasing order, and the support must be set after.
+	 * @param bit the bit
+	 */
+	public void set(int bit) {
+		or(bit >>> 6, 1L << bit);
+	}
+	
+	/**
+	 * Set the bits of a range. The ranges must be set in increasing order.
+	 * @param fromBit the first bit of the range
+	 * @param toBit the position after the last bit of the range
+	 */
+	private void setRange(int fromBit, int toBit) {
+		if(fromBit >= toBit){
+			return;
+		}
+		int firstWord = fromBit >>> 6;
+		int lastWord = (toBit - 1) >>> 6;
+		for(int w = firstWord; w <= lastWord; w++){
+			long word = -1L;
+			if(w == firstWord){
+				word &= -1L << fromBit;
+			}
+			if(w == lastWord){
+				word &= -1L >>> (63 - ((toBit - 1) & 63));
+			}
+			or(w, word);
+		}
+	}
+	
+	/**
+	 * Store all the words between the first and the last word that is not empty, if at most
+	 * a given fraction of them are empty. They are used when this bitmap is intersected with
+	 * another bitmap, instead of searching each word of the other bitmap.
+	 * @param maxEmptyWordsPerWord the maximum number of empty words for each word that is not empty
+	 */
+	public void makeDense(int maxEmptyWordsPerWord) {
+		if(wordCount == 0){
+			return;
+		}
+		long span = (long) wordIndexes[wordCount - 1] - wordIndexes[0] + 1;
+		if(span - wordCount > (long) wordCount * maxEmptyWordsPerWord){
+			return;
+		}
+		denseWords = new long[(int) span];
+		for(int i = 0; i < wordCount; i++){
+			denseWords[wordIndexes[i] - wordIndexes[0]] = words[i];
+		}
+	}
+	
+	/**
+	 * Set the support of the pattern of this bitmap
+	 * @param support the support
+	 */
+	public void setSupport(int support) {
+		this.support = support;
+	}
+	
+	/**
+	 * Get the support of the pattern of this bitmap (the sum of the weights of the sequences having a bit set)
+	 * @return the support
+	 */
+	public int getSupport() {
+		return support;
+	}
+	
+	/**
+	 * Create the bitmap used by the S-steps of the pattern of this bitmap. In each sequence, 
+	 * the bits after the first bit of this bitmap are set, so that the bitmap of the pattern 
+	 * obtained by adding an itemset containing an item at the end of the pattern (S-step) is 
+	 * the intersection of this bitmap and the bitmap of the item (see intersect()).
+	 * It is created once for all the items that are tried.
+	 * @return the bitmap
+	 */
+	public Bitmap sStepBitmap() {
+		Bitmap result = new Bitmap(layout, wordCount * 2);
+		// the sequence of the last bit that was found
+		int lastSequence = -1;
+		for(int i = 0; i < wordCount; i++){
+			long word = words[i];
+			int wordStart = wordIndexes[i] << 6;
+			while(word != 0){
+				int bit = wordStart + Long.numberOfTrailingZeros(word);
+				int sequence = layout.sequenceOfBit[bit];
+				int sequenceEnd = layout.sequenceBitStarts[sequence + 1];
+				if(sequence != lastSequence){
+					// the first bit of the sequence
+					result.setRange(bit + 1, sequenceEnd);
+					lastSequence = sequence;
+				}
+				// go to the next sequence in this word
+				if(sequenceEnd >= wordStart + 64){
+					break;
+				}
+				word &= -1L << sequenceEnd;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Find the first position of an array of word indexes that contains an index 
+	 * not smaller than a given index (exponential search)
+	 * @param wordIndexes the array
+	 * @param from the first position where the index is searched
+	 * @param to the position after the last position where the index is searched
+	 * @param index the index
+	 * @return the position, or the position after the last position if there is none
+	 */
+	private static int advance(int[] wordIndexes, int from, int to, int index) {
+		int step = 1;
+		int low = from;
+		int high = from;
+		while(high < to && wordIndexes[high] < index){
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		if(high > to){
+			high = to;
+		}
+		// the position is in [low, high]
+		while(low < high){
+			int middle = (low + high) >>> 1;
+			if(wordIndexes[middle] < index){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Create the intersection of this bitmap and the bitmap of an item, if its support is large enough.
+	 * If this bitmap is the bitmap of a pattern, it is the bitmap of the pattern obtained by adding 
+	 * the item to the last itemset (I-step). If it is the bitmap created by sStepBitmap(), it is 
+	 * the bitmap of the pattern obtained by adding an itemset containing the item (S-step).
+	 * The support is counted before the intersection is created, so that no bitmap is created
+	 * for the patterns that are not frequent.
+	 * @param item the bitmap of the item
+	 * @param minSupport the minimum support
+	 * @return the intersection, or null if its support is smaller than the minimum support
+	 */
+	public Bitmap intersect(Bitmap item, int minSupport) {
+		if(item.denseWords != null){
+			return intersectDense(item, minSupport);
+		}
+		// count the sequences having a common bit
+		int support = 0;
+		int commonWordCount = 0;
+		int lastSequence = -1;
+		int i = 0;
+		int j = 0;
+		while(i < wordCount && j < item.wordCount){
+			int index = wordIndexes[i];
+			int itemIndex = item.wordIndexes[j];
+			if(index < itemIndex){
+				i = advance(wordIndexes, i + 1, wordCount, itemIndex);
+			}else if(index > itemIndex){
+				j = advance(item.wordIndexes, j + 1, item.wordCount, index);
+			}else{
+				long word = words[i] & item.words[j];
+				if(word != 0){
+					commonWordCount++;
+					support += countNewSequences(index, word, lastSequence);
+					lastSequence = layout.sequenceOfBit[(index << 6) + 63 - Long.numberOfLeadingZeros(word)];
+				}
+				i++;
+				j++;
+			}
+		}
+		if(support < minSupport){
+			return null;
+		}
+		
+		// create the intersection
+		Bitmap result = new Bitmap(layout, commonWordCount);
+		i = 0;
+		j = 0;
+		while(i < wordCount && j < item.wordCount){
+			int index = wordIndexes[i];
+			int itemIndex = item.wordIndexes[j];
+			if(index < itemIndex){
+				i = advance(wordIndexes, i + 1, wordCount, itemIndex);
+			}else if(index > itemIndex){
+				j = advance(item.wordIndexes, j + 1, item.wordCount, index);
+			}else{
+				long word = words[i] & item.words[j];
+				if(word != 0){
+					result.or(index, word);
+				}
+				i++;
+				j++;
+			}
+		}
+		result.support = support;
+		return result;
+	}
+	
+	/**
+	 * Create the intersection of this bitmap and the bitmap of an item that stores all its words
+	 * (see intersect()). Each word of this bitmap is intersected with the word of the item having
+	 * the same index.
+	 * @param item the bitmap of the item
+	 * @param minSupport the minimum support
+	 * @return the intersection, or null if its support is smaller than the minimum support
+	 */
+	private Bitmap intersectDense(Bitmap item, int minSupport) {
+		int firstIndex = item.wordIndexes[0];
+		int lastIndex = item.wordIndexes[item.wordCount - 1];
+		int from = advance(wordIndexes, 0, wordCount, firstIndex);
+		// count the sequences having a common bit
+		int support = 0;
+		int commonWordCount = 0;
+		int lastSequence = -1;
+		int to = from;
+		for(; to < wordCount && wordIndexes[to] <= lastIndex; to++){
+			int index = wordIndexes[to];
+			long word = words[to] & item.denseWords[index - firstIndex];
+			if(word != 0){
+				commonWordCount++;
+				support += countNewSequences(index, word, lastSequence);
+				lastSequence = layout.sequenceOfBit[(index << 6) + 63 - Long.numberOfLeadingZeros(word)];
+			}
+		}
+		if(support < minSupport){
+			return null;
+		}
+		
+		// create the intersection
+		Bitmap result = new Bitmap(layout, commonWordCount);
+		for(int i = from; i < to; i++){
+			long word = words[i] & item.denseWords[wordIndexes[i] - firstIndex];
+			if(word != 0){
+				result.or(wordIndexes[i], word);
+			}
+		}
+		result.support = support;
+		return result;
+	}
+	
+	/**
+	 * Count the weights of the sequences having a bit set in a word, except the sequence
+	 * of the last bit of the previous words.
+	 * @param index the index of the word
+	 * @param word the bits
+	 * @param lastSequence the sequence of the last bit of the previous words (or -1)
+	 * @return the sum of the weights of the sequences
+	 */
+	private int countNewSequences(int index, long word, int lastSequence) {
+		int count = 0;
+		int wordStart = index << 6;
+		while(word != 0){
+			int bit = wordStart + Long.numberOfTrailingZeros(word);
+			int sequence = layout.sequenceOfBit[bit];
+			if(sequence != lastSequence){
+				count += layout.sequenceWeights == null ? 1 : layout.sequenceWeights[sequence];
+			}
+			// go to the next sequence in this word
+			int sequenceEnd = layout.sequenceBitStarts[sequence + 1];
+			if(sequenceEnd >= wordStart + 64){
+				break;
+			}
+			word &= -1L << sequenceEnd;
+		}
+		return count;
+	}
+	
+	/**
+	 * Get the ids of the sequences having a bit set
+	 * @return the ids, in increasing order
+	 */
+	public int[] getSequenceIDs() {
+		int count = 0;
+		int[] sequenceIDs = new int[16];
+		for(int i = 0; i < wordCount; i++){
+			long word = words[i];
+			int wordStart = wordIndexes[i] << 6;
+			while(word != 0){
+				int bit = wordStart + Long.numberOfTrailingZeros(word);
+				int sequence = layout.sequenceOfBit[bit];
+				if(count == 0 || sequenceIDs[count - 1] != sequence){
+					if(count == sequenceIDs.length){
+						sequenceIDs = Arrays.copyOf(sequenceIDs, count * 2);
+					}
+					sequenceIDs[count++] = sequence;
+				}
+				int sequenceEnd = layout.sequenceBitStarts[sequence + 1];
+				if(sequenceEnd >= wordStart + 64){
+					break;
+				}
+				word &= -1L << sequenceEnd;
+			}
+		}
+		return Arrays.copyOf(sequenceIDs, count);
+	}
+}
@@ -0,0 +1,460 @@
+import java.util.Arrays;
+
+/**
+ * This class stores the tokens of the sequences of a sequence database in a compressed 
+ * form, in an array of bytes. Each item is encoded as a variable-length integer (7 bits
+ * per byte), together with a bit indicating that it is followed by the end of an itemset,
+ * so that most itemset separators (-1) do not take any space. In an itemset, an item that 
+ * is larger than the previous item is encoded as the difference with it, which is
+ * usually small because the items of an itemset are sorted. The codes are:
+ * <ul>
+ * <li>0: the end of a sequence (-2)</li>
+ * <li>1: the end of an itemset (-1) that does not follow a token</li>
+ * <li>2 or 3: a token that cannot be encoded otherwise, followed by its value (zigzag encoded)</li>
+ * <li>2 * (item + 2) + bit: the first item of an itemset</li>
+ * <li>2 * (item - previous item + 1) + bit: an item that is larger than the previous item</li>
+ * </ul>
+ * where bit is 1 if the token is followed by -1 (0 otherwise).
+ * <br/><br/>
+ * The tokens of each sequence form a block that is decoded independently of the 
+ * others. A token is read by decoding its whole block in a buffer, and the next 
+ * tokens of the same block are then read from the buffer, so that the tokens of a 
+ * sequence are decoded once when they are read in order. The store is not a
+ * MutableTokenStore: the tokens cannot be replaced one by one, but they can be 
+ * encoded again by a writer (see rewrite()).
+ * An instance must not be read by several threads at the same time.
+ *
+ * @see TokenStore
+ */
+public class CompressedTokenStore extends TokenStore {
+	
+	/** the encoded tokens */
+	private byte[] data;
+	
+	/** the number of bytes used in the array of encoded tokens */
+	private int length;
+	
+	/** the position of the first token of each block, followed by the number of tokens */
+	private int[] blockPositions;
+	
+	/** the offset of each block in the array of encoded tokens, followed by the length */
+	private int[] blockOffsets;
+	
+	/** the number of blocks */
+	private int blockCount;
+	
+	/** the tokens of the last block that was decoded */
+	private int[] decodedBlock = new int[64];
+	
+	/** the position of the first token of the last block that was decoded */
+	private int decodedStart = 0;
+	
+	/** the position after the last token of the last block that was decoded */
+	private int decodedEnd = 0;
+	
+	/**
+	 * Constructor
+	 * @param encoder the encoder that contains the encoded tokens
+	 */
+	private CompressedTokenStore(Encoder encoder) {
+		super(0);
+		replace(encoder);
+	}
+	
+	/**
+	 * Constructor of a store that shares the encoded tokens of another store,
+	 * with its own buffer of decoded tokens.
+	 * @param store the other store
+	 */
+	private CompressedTokenStore(CompressedTokenStore store) {
+		super(store.size);
+		data = store.data;
+		length = store.length;
+		blockPositions = store.blockPositions;
+		blockOffsets = store.blockOffsets;
+		blockCount = store.blockCount;
+	}
+	
+	/**
+	 * Replace the tokens of this store by the tokens of an encoder.
+	 * @param encoder the encoder
+	 */
+	private void replace(Encoder encoder) {
+		size = encoder.tokenCount;
+		data = encoder.data;
+		length = encoder.length;
+		blockPositions = encoder.blockPositions;
+		blockOffsets = encoder.blockOffsets;
+		blockCount = encoder.blockCount;
+		decodedStart = 0;
+		decodedEnd = 0;
+	}
+	
+	/**
+	 * Compress the tokens of sequences stored in an array.
+	 * @param tokens the array of tokens
+	 * @param tokenCount the number of tokens in the array
+	 * @param sequenceStarts the position of the first token of each sequence
+	 * @param sequenceCount the number of sequences
+	 * @return the store containing the compressed tokens
+	 */
+	public static CompressedTokenStore encode(int[] tokens, int tokenCount, int[] sequenceStarts, int sequenceCount) {
+		Encoder encoder = new Encoder(null, tokenCount / 2 + 16);
+		for (int i = 0; i < sequenceCount; i++) {
+			encoder.startSequence();
+			int end = i + 1 < sequenceCount ? sequenceStarts[i + 1] : tokenCount;
+			for (int j = sequenceStarts[i]; j < end; j++) {
+				encoder.write(tokens[j]);
+			}
+		}
+		return encoder.build();
+	}
+	
+	/**
+	 * Concatenate the tokens of several stores in a new store.
+	 * @param stores the stores
+	 * @param count the number of stores to concatenate
+	 * @return the new store
+	 */
+	public static CompressedTokenStore concatenate(CompressedTokenStore[] stores, int count) {
+		long totalLength = 0;
+		for (int i = 0; i < count; i++) {
+			totalLength += stores[i].length;
+		}
+		Encoder encoder = new Encoder(null, (int) Math.min(Integer.MAX_VALUE - 8, totalLength));
+		for (int i = 0; i < count; i++) {
+			encoder.append(stores[i]);
+		}
+		return encoder.build();
+	}
+	
+	public int get(int position) {
+		if (position < decodedStart || position >= decodedEnd) {
+			decodeBlockContaining(position);
+		}
+		return decodedBlock[position - decodedStart];
+	}
+	
+	/**
+	 * Get a store that shares the encoded tokens of this store, because the last 
+	 * decoded block cannot be shared by several threads.
+	 */
+	public TokenStore duplicate() {
+		return new CompressedTokenStore(this);
+	}
+	
+	public void get(int position, int[] array, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			array[offset + i] = get(position + i);
+		}
+	}
+	
+	/**
+	 * Get a writer that replaces the tokens of this store. The new tokens are encoded in
+	 * a new array, which replaces the current one when the writer is finished, so that the
+	 * current tokens can be read until then.
+	 * @return the writer
+	 */
+	public Writer rewrite() {
+		return new Encoder(this, length);
+	}
+	
+	/**
+	 * Get the number of bytes used by the compressed tokens, including the positions of the blocks.
+	 * @return the number of bytes
+	 */
+	public long getCompressedSize() {
+		return length + 8L * (blockCount + 1);
+	}
+	
+	/**
+	 * Get the compression ratio of this store, which is the size of the tokens stored
+	 * as integers divided by the size of the compressed tokens.
+	 * @return the compression ratio
+	 */
+	public double getCompressionRatio() {
+		return 4.0 * size / Math.max(1, getCompressedSize());
+	}
+	
+	/**
+	 * Measure the speed of the decoder, by decoding all the blocks of this store.
+	 * @return the number of tokens decoded per second
+	 */
+	public double measureDecodeThroughput() {
+		long start = System.nanoTime();
+		for (int block = 0; block < blockCount; block++) {
+			decodeBlock(block);
+		}
+		long time = Math.max(1, System.nanoTime() - start);
+		return size * 1e9 / time;
+	}
+	
+	/**
+	 * Decode the block containing a token.
+	 * @param position the position of the token
+	 */
+	private void decodeBlockContaining(int position) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position " + position + " of a store of " + size + " tokens");
+		}
+		// find the last block starting at or before this position
+		int low = 0;
+		int high = blockCount - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (blockPositions[middle] <= position) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		decodeBlock(low);
+	}
+	
+	/**
+	 * Decode a block in the buffer of decoded tokens.
+	 * @param block the block
+	 */
+	private void decodeBlock(int block) {
+		int start = blockPositions[block];
+		int count = blockPositions[block + 1] - start;
+		if (decodedBlock.length < count) {
+			decodedBlock = new int[Math.max(count, decodedBlock.length * 2)];
+		}
+		int[] tokens = decodedBlock;
+		byte[] data = this.data;
+		int offset = blockOffsets[block];
+		boolean hasPrevious = false;
+		int previous = 0;
+		int i = 0;
+		while (i < count) {
+			// read the code
+			int b = data[offset++];
+			long code = b & 0x7f;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = data[offset++];
+				code |= (long) (b & 0x7f) << shift;
+			}
+			
+			if (code == 0) {
+				tokens[i++] = -2;
+				hasPrevious = false;
+				continue;
+			} else if (code == 1) {
+				tokens[i++] = -1;
+				hasPrevious = false;
+				continue;
+			}
+			int token;
+			if (code < 4) {
+				// a token followed by its value
+				int value = 0;
+				int shift = 0;
+				do {
+					b = data[offset++];
+					value |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				token = (value >>> 1) ^ -(value & 1);
+			} else if (hasPrevious) {
+				token = previous + (int) (code >>> 1) - 1;
+			} else {
+				token = (int) (code >>> 1) - 2;
+			}
+			tokens[i++] = token;
+			if ((code & 1) != 0) {
+				tokens[i++] = -1;
+				hasPrevious = false;
+			} else {
+				hasPrevious = true;
+				previous = token;
+			}
+		}
+		decodedStart = start;
+		decodedEnd = start + count;
+	}
+	
+	/**
+	 * This class encodes tokens one after the other, to create a compressed store 
+	 * or to replace the tokens of a compressed store.
+	 */
+	private static final class Encoder extends Writer {
+		/** the store whose tokens are replaced when the encoder is finished (or null) */
+		private final CompressedTokenStore target;
+		/** the encoded tokens */
+		byte[] data;
+		/** the number of bytes used in the array of encoded tokens */
+		int length = 0;
+		/** the position of the first token of each block */
+		int[] blockPositions = new int[16];
+		/** the offset of each block in the array of encoded tokens */
+		int[] blockOffsets = new int[16];
+		/** the number of blocks */
+		int blockCount = 0;
+		/** the number of tokens written */
+		int tokenCount = 0;
+		/** true if the next token starts a new block */
+		private boolean startsBlock = true;
+		/** true if a token is waiting to know whether it is followed by -1 */
+		private boolean hasPending = false;
+		/** the token that is waiting */
+		private int pending;
+		/** true if the last token encoded is an item whose itemset is not finished */
+		private boolean hasPrevious = false;
+		/** the last token encoded */
+		private int previous;
+		
+		/**
+		 * Constructor
+		 * @param target the store whose tokens are replaced when the encoder is finished (or null)
+		 * @param capacity the initial capacity of the array of encoded tokens
+		 */
+		Encoder(CompressedTokenStore target, int capacity) {
+			this.target = target;
+			this.data = new byte[Math.max(16, capacity)];
+		}
+		
+		public void startSequence() {
+			flushPending(false);
+			startsBlock = true;
+		}
+		
+		public void write(int token) {
+			// the end of an itemset is encoded with the token before it, if possible
+			if (token == -1 && hasPending) {
+				flushPending(true);
+				tokenCount++;
+				return;
+			}
+			flushPending(false);
+			if (startsBlock) {
+				addBlock();
+				startsBlock = false;
+				hasPrevious = false;
+			}
+			if (token == -2) {
+				writeVarint(0);
+				hasPrevious = false;
+			} else if (token == -1) {
+				writeVarint(1);
+				hasPrevious = false;
+			} else {
+				pending = token;
+				hasPending = true;
+			}
+			tokenCount++;
+		}
+		
+		public void finish() {
+			flushPending(false);
+			addBlock();
+			blockCount--;
+			target.replace(this);
+		}
+		
+		/**
+		 * Finish the encoding and create a new store with the encoded tokens.
+		 * @return the store
+		 */
+		CompressedTokenStore build() {
+			flushPending(false);
+			addBlock();
+			blockCount--;
+			return new CompressedTokenStore(this);
+		}
+		
+		/**
+		 * Append the encoded tokens of a store.
+		 * @param store the store
+		 */
+		void append(CompressedTokenStore store) {
+			flushPending(false);
+			ensureCapacity(store.length);
+			System.arraycopy(store.data, 0, data, length, store.length);
+			for (int block = 0; block < store.blockCount; block++) {
+				if (blockCount == blockPositions.length) {
+					blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+					blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+				}
+				blockPositions[blockCount] = tokenCount + store.blockPositions[block];
+				blockOffsets[blockCount] = length + store.blockOffsets[block];
+				blockCount++;
+			}
+			length += store.length;
+			tokenCount += store.size;
+			startsBlock = true;
+		}
+		
+		/**
+		 * Start a new block at the current position. 
+		 */
+		private void addBlock() {
+			if (blockCount == blockPositions.length) {
+				blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+				blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+			}
+			blockPositions[blockCount] = tokenCount;
+			blockOffsets[blockCount] = length;
+			blockCount++;
+		}
+		
+		/**
+		 * Encode the token that is waiting, if any.
+		 * @param isEndOfItemset true if the token is followed by -1.
+		 */
+		private void flushPending(boolean isEndOfItemset) {
+			if (!hasPending) {
+				return;
+			}
+			hasPending = false;
+			int token = pending;
+			long code;
+			boolean isEscaped = false;
+			if (token >= 0 && !hasPrevious) {
+				code = ((long) token + 2) << 1;
+			} else if (token >= 0 && previous >= 0 && token > previous) {
+				code = ((long) token - previous + 1) << 1;
+			} else {
+				code = 2;
+				isEscaped = true;
+			}
+			writeVarint(isEndOfItemset ? code | 1 : code);
+			if (isEscaped) {
+				writeVarint(((token << 1) ^ (token >> 31)) & 0xffffffffL);
+			}
+			hasPrevious = !isEndOfItemset;
+			previous = token;
+		}
+		
+		/**
+		 * Write a positive integer with 7 bits per byte, starting with the lowest bits.
+		 * The highest bit of each byte indicates that there is a next byte.
+		 * @param value the integer
+		 */
+		private void writeVarint(long value) {
+			ensureCapacity(10);
+			while (value >= 0x80) {
+				data[length++] = (byte) (value | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte) value;
+		}
+		
+		/**
+		 * Make sure that some bytes can be added to the array of encoded tokens.
+		 * @param count the number of bytes
+		 */
+		private void ensureCapacity(int count) {
+			if (length + count > data.length) {
+				long capacity = Math.max((long) length + count, data.length * 3L / 2 + 16);
+				if (capacity > Integer.MAX_VALUE - 8) {
+					if ((long) length + count > Integer.MAX_VALUE - 8) {
+						throw new OutOfMemoryError("Too many bytes in a compressed store");
+					}
+					capacity = Integer.MAX_VALUE - 8;
+				}
+				data = Arrays.copyOf(data, (int) capacity);
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class contains the statistics of a dataset that are used by the algorithms: the number of sequences,
+ * the upper bound (s-bound) to the VC-dimension, the number of item occurrences, the number of distinct items,
+ * the maximum item-length of a sequence and the number of itemsets of each size. It is built while the dataset
+ * is loaded, so that the dataset is read only once.
+ * A profile can be built for each range of lines of a dataset, and the profiles of the ranges merged.
+ * A profile can also be written with the dataset (see SequenceDatabaseCache) and read back without its sequences.
+ */
+public class DatasetProfile {
+
+    /**
+     * The items smaller than this value are kept in a bitset, the others in a set
+     */
+    private static final int MAX_BITSET_ITEM = 1 << 24;
+
+    private int sequenceCount = 0;
+    private int sBound = 0;
+    private long itemOccurrenceCount = 0;
+    private int maxItemLength = 0;
+    private long[] itemsetSizeCounts = new long[8];
+    private final BitSet smallItems = new BitSet();
+    private final HashSet<Integer> largeItems = new HashSet<>();
+
+    /**
+     * The distinct sequences with the largest item-lengths, by decreasing item-length, and their set
+     */
+    private final ArrayList<Candidate> orderedSet = new ArrayList<>();
+    private final HashSet<Candidate> set = new HashSet<>();
+
+    /**
+     * Private class that represents a sequence with its item-length, used to compute the s-bound
+     */
+    private static class Candidate {
+        private final int[] tokens;
+        private final int length;
+        private final int hash;
+
+        Candidate(int[] tokens, int length) {
+            this.tokens = tokens;
+            this.length = length;
+            this.hash = Arrays.hashCode(tokens);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Candidate && Arrays.equals(tokens, ((Candidate) o).tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Builds the profile of the sequences of a database
+     *
+     * @param database the database
+     * @return the profile
+     */
+    public static DatasetProfile of(SequenceDatabase database) {
+        DatasetProfile profile = new DatasetProfile();
+        for (int i = 0; i < database.size(); i++) {
+            int[] sequence = database.getSequence(i);
+            profile.addSequence(sequence, 0, sequence.length);
+        }
+        return profile;
+    }
+
+    /**
+     * Updates the profile with a new sequence of the dataset
+     *
+     * @param tokens the array containing the tokens of the sequence in SPMF format
+     * @param start  the position of the first token of the sequence
+     * @param end    the position after the last token of the sequence
+     */
+    public void addSequence(int[] tokens, int start, int end) {
+        sequenceCount++;
+        int length = 0;
+        int itemsetSize = 0;
+        for (int j = start; j < end; j++) {
+            int token = tokens[j];
+            if (token >= 0) {
+                length++;
+                itemsetSize++;
+                if (token < MAX_BITSET_ITEM) smallItems.set(token);
+                else largeItems.add(token);
+            } else if (token == -1) {
+                countItemset(itemsetSize);
+                itemsetSize = 0;
+            }
+        }
+        if (itemsetSize > 0) countItemset(itemsetSize);
+        itemOccurrenceCount += length;
+        if (length > maxItemLength) maxItemLength = length;
+        if (length > sBound) addCandidate(new Candidate(Arrays.copyOfRange(tokens, start, end), length));
+    }
+
+    /**
+     * Counts an itemset
+     *
+     * @param size the number of items of the itemset
+     */
+    private void countItemset(int size) {
+        if (size >= itemsetSizeCounts.length) itemsetSizeCounts = Arrays.copyOf(itemsetSizeCounts, size * 2);
+        itemsetSizeCounts[size]++;
+    }
+
+    /**
+     * Updates the s-bound with a sequence whose item-length is larger than the current s-bound
+     *
+     * @param candidate the sequence
+     */
+    private void addCandidate(Candidate candidate) {
+        if (set.contains(candidate)) return;
+        set.add(candidate);
+        int i = 0;
+        while (i < orderedSet.size() && orderedSet.get(i).length > candidate.length) i++;
+        orderedSet.add(i, candidate);
+        if (orderedSet.get(orderedSet.size() - 1).length > sBound) sBound++;
+        else set.remove(orderedSet.remove(orderedSet.size() - 1));
+    }
+
+    /**
+     * Merges the profile of another range of lines of the same dataset. Every sequence with item-length
+     * larger than the s-bound of its range is kept by its profile, so the s-bound of the merged sequences
+     * is the s-bound of the whole dataset.
+     *
+     * @param other the profile of the other range of lines
+     */
+    public void merge(DatasetProfile other) {
+        sequenceCount += other.sequenceCount;
+        itemOccurrenceCount += other.itemOccurrenceCount;
+        maxItemLength = Math.max(maxItemLength, other.maxItemLength);
+        if (other.itemsetSizeCounts.length > itemsetSizeCounts.length) {
+            itemsetSizeCounts = Arrays.copyOf(itemsetSizeCounts, other.itemsetSizeCounts.length);
+        }
+        for (int i = 0; i < other.itemsetSizeCounts.length; i++) itemsetSizeCounts[i] += other.itemsetSizeCounts[i];
+        smallItems.or(other.smallItems);
+        largeItems.addAll(other.largeItems);
+        for (Candidate candidate : other.orderedSet) {
+            if (candidate.length > sBound) addCandidate(candidate);
+        }
+    }
+
+    /**
+     * Writes this profile, so that it can be read back by read() without scanning the sequences again
+     *
+     * @param output the output
+     * @throws IOException if error while writing the profile
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(sequenceCount);
+        output.writeInt(sBound);
+        output.writeLong(itemOccurrenceCount);
+        output.writeInt(maxItemLength);
+        output.writeInt(itemsetSizeCounts.length);
+        for (long count : itemsetSizeCounts) output.writeLong(count);
+        long[] words = smallItems.toLongArray();
+        output.writeInt(words.length);
+        for (long word : words) output.writeLong(word);
+        output.writeInt(largeItems.size());
+        for (int item : largeItems) output.writeInt(item);
+        // the sequences used to compute the s-bound are kept, so that the profile can still be merged
+        output.writeInt(orderedSet.size());
+        for (Candidate candidate : orderedSet) {
+            output.writeInt(candidate.length);
+            output.writeInt(candidate.tokens.length);
+            for (int token : candidate.tokens) output.writeInt(token);
+        }
+    }
+
+    /**
+     * Reads a profile written by write()
+     *
+     * @param input the input
+     * @return the profile
+     * @throws IOException if error while reading the profile
+     */
+    public static DatasetProfile read(DataInput input) throws IOException {
+        DatasetProfile profile = new DatasetProfile();
+        profile.sequenceCount = input.readInt();
+        profile.sBound = input.readInt();
+        profile.itemOccurrenceCount = input.readLong();
+        profile.maxItemLength = input.readInt();
+        profile.itemsetSizeCounts = new long[input.readInt()];
+        for (int i = 0; i < profile.itemsetSizeCounts.length; i++) profile.itemsetSizeCounts[i] = input.readLong();
+        long[] words = new long[input.readInt()];
+        for (int i = 0; i < words.length; i++) words[i] = input.readLong();
+        profile.smallItems.or(BitSet.valueOf(words));
+        int largeItemCount = input.readInt();
+        for (int i = 0; i < largeItemCount; i++) profile.largeItems.add(input.readInt());
+        int candidateCount = input.readInt();
+        for (int i = 0; i < candidateCount; i++) {
+            int length = input.readInt();
+            int[] tokens = new int[input.readInt()];
+            for (int j = 0; j < tokens.length; j++) tokens[j] = input.readInt();
+            Candidate candidate = new Candidate(tokens, length);
+            profile.orderedSet.add(candidate);
+            profile.set.add(candidate);
+        }
+        return profile;
+    }
+
+    /**
+     * @return the number of sequences of the dataset
+     */
+    public int getSequenceCount() {
+        return sequenceCount;
+    }
+
+    /**
+     * @return the upper bound (s-bound) to the VC-dimension of the dataset
+     */
+    public int getSBound() {
+        return sBound;
+    }
+
+    /**
+     * @return the total number of item occurrences in the dataset
+     */
+    public long getItemOccurrenceCount() {
+        return itemOccurrenceCount;
+    }
+
+    /**
+     * @return the number of distinct items in the dataset
+     */
+    public int getDistinctItemCount() {
+        return smallItems.cardinality() + largeItems.size();
+    }
+
+    /**
+     * @return the maximum item-length of a sequence of the dataset
+     */
+    public int getMaxItemLength() {
+        return maxItemLength;
+    }
+
+    /**
+     * Gets the number of itemsets of a given size
+     *
+     * @param size the number of items
+     * @return the number of itemsets with size items in the dataset
+     */
+    public long getItemsetCount(int size) {
+        return size < itemsetSizeCounts.length ? itemsetSizeCounts[size] : 0;
+    }
+
+    /**
+     * @return the size of the largest itemset of the dataset
+     */
+    public int getMaxItemsetSize() {
+        int size = itemsetSizeCounts.length - 1;
+        while (size > 0 && itemsetSizeCounts[size] == 0) size--;
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder r = new StringBuilder();
+        r.append("Sequences: ").append(sequenceCount).append("\n");
+        r.append("S-bound: ").append(sBound).append("\n");
+        r.append("Item occurrences: ").append(itemOccurrenceCount).append("\n");
+        r.append("Distinct items: ").append(getDistinctItemCount()).append("\n");
+        r.append("Max item-length: ").append(maxItemLength).append("\n");
+        r.append("Itemset sizes:");
+        for (int size = 1; size <= getMaxItemsetSize(); size++) {
+            if (itemsetSizeCounts[size] > 0) r.append(" ").append(size).append(":").append(itemsetSizeCounts[size]);
+        }
+        return r.toString();
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class contains some utility methods to process a text file in parallel, by splitting it
+ * in ranges of bytes that start at the beginning of a line, so that each line belongs to exactly one range.
+ * Gzip-compressed files (with the extension .gz) cannot be split, and they are read as a single range.
+ */
+public class FileChunks {
+
+    /**
+     * The minimum size in bytes of a file to be processed in parallel by default
+     */
+    private static final long MIN_PARALLEL_FILE_SIZE = 1L << 24;
+
+    /**
+     * Computes the default number of threads used to process a file
+     *
+     * @param fileSize the size of the file in bytes
+     * @return 1 for small files, the number of available processors otherwise
+     */
+    public static int defaultThreadCount(long fileSize) {
+        if (fileSize < MIN_PARALLEL_FILE_SIZE) return 1;
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Splits a file in ranges of bytes of similar size, each one starting at the beginning of a line
+     *
+     * @param channel    the channel of the file
+     * @param rangeCount the number of ranges
+     * @return an array bounds[] of rangeCount + 1 positions, where the range i is [bounds[i], bounds[i+1]).
+     * Some ranges may be empty if the file contains long lines
+     * @throws IOException if error while reading the file
+     */
+    public static long[] split(FileChannel channel, int rangeCount) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[rangeCount + 1];
+        bounds[rangeCount] = size;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        for (int i = 1; i < rangeCount; i++) {
+            long position = Math.max(size / rangeCount * i, bounds[i - 1]);
+            bounds[i] = nextLineStart(channel, position, buffer);
+        }
+        return bounds;
+    }
+
+    /**
+     * Finds the first position, not smaller than a given one, that is the beginning of a line
+     *
+     * @param channel  the channel of the file
+     * @param position the position
+     * @param buffer   a buffer used to read the file
+     * @return the beginning of the line, or the size of the file if there is none
+     * @throws IOException if error while reading the file
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        if (position == 0) return 0;
+        // a position is the beginning of a line if the previous byte is an end of line
+        long current = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return current + i + 1;
+            }
+            current += read;
+        }
+    }
+
+    /**
+     * Checks if a file is compressed with gzip, according to its extension
+     *
+     * @param path the path of the file
+     * @return true if the file name ends with .gz
+     */
+    public static boolean isCompressed(String path) {
+        return path.endsWith(".gz");
+    }
+
+    /**
+     * Opens an input stream that reads the content of a file, decompressing it in a separate thread
+     * if it is compressed with gzip
+     *
+     * @param path the path of the file
+     * @return the input stream
+     * @throws IOException if error while opening the file
+     */
+    public static InputStream open(String path) throws IOException {
+        if (isCompressed(path)) return new PipelinedGzipInputStream(new File(path));
+        return new FileInputStream(new File(path));
+    }
+}
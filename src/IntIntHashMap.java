@@ -0,0 +1,128 @@
+/**
+ * A map from int keys to int values, implemented as a hash table with open 
+ * addressing and linear probing, so that no object is created to store or to 
+ * look up an entry. It is used instead of a HashMap<Integer, Integer> in the 
+ * scans of the sequence database, where a key is looked up for each token.
+ *
+ * @see SequenceDatabase
+ * @see AlgoPrefixSpan
+ */
+public class IntIntHashMap {
+	
+	/** the maximum number of entries per position of the table, before it is enlarged */
+	private static final float LOAD_FACTOR = 0.5f;
+	
+	/** the keys of the entries */
+	private int[] keys;
+	
+	/** the values of the entries */
+	private int[] values;
+	
+	/** true for each position of the table that contains an entry */
+	private boolean[] used;
+	
+	/** the number of entries */
+	private int size = 0;
+	
+	/** the number of entries that can be stored before the table is enlarged */
+	private int threshold;
+	
+	/**
+	 * Default constructor
+	 */
+	public IntIntHashMap() {
+		this(16);
+	}
+	
+	/**
+	 * Constructor
+	 * @param expectedSize the number of entries that can be stored before the table is enlarged
+	 */
+	public IntIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+	
+	/**
+	 * Allocate an empty table.
+	 * @param capacity the number of positions of the table (a power of 2)
+	 */
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+	
+	/**
+	 * Get the position of a key in the table, or of the free position where it would be stored.
+	 * @param key the key
+	 * @return the position
+	 */
+	private int positionOf(int key) {
+		int mask = keys.length - 1;
+		// the bits of the key are mixed, because consecutive keys are frequent
+		int hash = key * 0x9E3779B9;
+		int position = (hash ^ (hash >>> 16)) & mask;
+		while (used[position] && keys[position] != key) {
+			position = (position + 1) & mask;
+		}
+		return position;
+	}
+	
+	/**
+	 * Get the value of a key.
+	 * @param key the key
+	 * @param defaultValue the value returned if the map does not contain the key
+	 * @return the value of the key, or defaultValue
+	 */
+	public int get(int key, int defaultValue) {
+		int position = positionOf(key);
+		return used[position] ? values[position] : defaultValue;
+	}
+	
+	/**
+	 * Set the value of a key.
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(int key, int value) {
+		int position = positionOf(key);
+		if (used[position] == false) {
+			if (size == threshold) {
+				rehash();
+				position = positionOf(key);
+			}
+			used[position] = true;
+			keys[position] = key;
+			size++;
+		}
+		values[position] = value;
+	}
+	
+	/**
+	 * Double the size of the table and store the entries again.
+	 */
+	private void rehash() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int position = positionOf(oldKeys[i]);
+				used[position] = true;
+				keys[position] = oldKeys[i];
+				values[position] = oldValues[i];
+			}
+		}
+	}
+	
+	/**
+	 * Get the number of entries.
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+}
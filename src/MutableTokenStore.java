@@ -0,0 +1,65 @@
+/**
+ * A store of tokens whose tokens can be replaced one by one, or copied from an array or
+ * another store. The stores on the heap, off the heap and in files mapped in memory are
+ * mutable (see TokenStore.allocate(), allocateDirect() and map()); the compressed stores 
+ * are not, and their tokens are only replaced by a writer.
+ *
+ * @see TokenStore
+ */
+public abstract class MutableTokenStore extends TokenStore {
+	
+	/** the number of tokens copied at once between two stores */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+	
+	/**
+	 * Constructor
+	 * @param size the number of tokens
+	 */
+	protected MutableTokenStore(int size) {
+		super(size);
+	}
+	
+	/**
+	 * Replace a token.
+	 * @param position the position of the token
+	 * @param token the new token
+	 */
+	public abstract void set(int position, int token);
+	
+	/**
+	 * Copy consecutive tokens from an array.
+	 * @param position the position of the first token in this store
+	 * @param array the array
+	 * @param offset the position of the first token in the array
+	 * @param length the number of tokens
+	 */
+	public abstract void put(int position, int[] array, int offset, int length);
+	
+	/**
+	 * Copy all the tokens of another store.
+	 * @param position the position of the first token in this store
+	 * @param source the other store
+	 */
+	public void put(int position, TokenStore source) {
+		int[] buffer = new int[Math.min(source.size, COPY_BUFFER_SIZE)];
+		for (int copied = 0; copied < source.size; copied += buffer.length) {
+			int length = Math.min(buffer.length, source.size - copied);
+			source.get(copied, buffer, 0, length);
+			put(position + copied, buffer, 0, length);
+		}
+	}
+	
+	/**
+	 * Get a writer that replaces the tokens of this store one by one, from the first position.
+	 */
+	public Writer rewrite() {
+		return new Writer() {
+			/** the position of the next token */
+			private int position = 0;
+			
+			public void write(int token) {
+				set(position++, token);
+			}
+		};
+	}
+}
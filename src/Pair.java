@@ -1,6 +1,5 @@
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * This class represents
@@ -8,6 +7,11 @@ import java.util.List;
  * (2)  if it is contained in an itemset that was cut or not (a postfix). 
  * and (3) its projected database
  * 
+ * The projected database is stored in two arrays shared by all the pairs found by
+ * the same scan: the ids of the sequences and the positions where the pseudosequences
+ * start in the array of tokens of the sequence database. The pseudosequences of this
+ * pair are the entries from start (included) to start + size (excluded).
+ * 
  * This class is used by PrefixSpan.
  * 
  * It is used for calculating the support of an item in a database.
@@ -34,16 +38,23 @@ public class Pair{
 	// the item
 	protected final int item;
 	
-	// List of the pseudosequences of the projection with this item .
-	private List<PseudoSequence> pseudoSequences = new ArrayList<PseudoSequence>();
+	// the arrays containing the projected database with this item
+	private int[] sequenceIDs;
+	private int[] positions;
+	// the position of the first pseudosequence of this pair in the arrays
+	private int start = 0;
+	// the number of pseudosequences of this pair
+	private int size = 0;
+	// the id of the sequence of the last pseudosequence that was counted
+	private int lastSequenceID = -1;
+	// the sum of the weights of the sequences of the pseudosequences
+	private int count = 0;
 
 	/**
 	 * Constructor
-	 * @param postfix indicate if this is the case of an item appearing
-	 *  in an itemset that is cut at the left because of a projection
 	 * @param item the item
 	 */
-	public Pair(Integer item){
+	public Pair(int item){
 		this.item = item;
 	}
 	
@@ -77,18 +88,118 @@ public class Pair{
 
 	/**
 	 * Get the support of this item (the number of sequences 
-	 * containing it).
+	 * containing it, where each sequence is counted as many times as its weight).
+	 * If all the weights are 1, it is the number of pseudosequences.
 	 * @return the support (an integer)
 	 */
 	public int getCount() {
-		return pseudoSequences.size();
-	}		
+		return count;
+	}
+	
+	/**
+	 * Count a sequence containing this item, if it was not already counted. The
+	 * sequences must be counted in increasing order of id.
+	 * @param sequenceID the id of the sequence
+	 * @param weight the weight of the sequence (its number of occurrences in the database)
+	 * @return true if the sequence was not already counted
+	 */
+	public boolean countSequence(int sequenceID, int weight) {
+		if(sequenceID == lastSequenceID){
+			return false;
+		}
+		lastSequenceID = sequenceID;
+		size++;
+		count += weight;
+		return true;
+	}
+	
+	/**
+	 * Reserve the space for the pseudosequences of the counted sequences in two arrays.
+	 * They are then added by calling addPseudoSequence() for each counted sequence.
+	 * @param sequenceIDs the array of sequence ids
+	 * @param positions the array of positions
+	 * @param start the position of the first pseudosequence in the arrays
+	 */
+	public void setProjectedDatabase(int[] sequenceIDs, int[] positions, int start) {
+		this.sequenceIDs = sequenceIDs;
+		this.positions = positions;
+		this.start = start;
+		this.size = 0;
+	}
+	
+	/**
+	 * Add a pseudosequence to the projection with this item.
+	 * @param sequenceID the id of the sequence
+	 * @param position the position where the pseudosequence starts in the array of tokens
+	 */
+	public void addPseudoSequence(int sequenceID, int position) {
+		sequenceIDs[start + size] = sequenceID;
+		positions[start + size] = position;
+		size++;
+	}
+
+	/**
+	 * Set the support of this item, when it has been counted before its projected database is built.
+	 * @param count the support
+	 */
+	public void setCount(int count) {
+		this.count = count;
+	}
+	
+	/**
+	 * Add the pseudosequence of a sequence to the projection with this item, if the
+	 * sequence was not already added. The space for the pseudosequences must have been
+	 * reserved by setProjectedDatabase(), and the sequences must be added in increasing order of id.
+	 * The support is not changed (see setCount()).
+	 * @param sequenceID the id of the sequence
+	 * @param position the position where the pseudosequence starts in the array of tokens
+	 */
+	public void addSequence(int sequenceID, int position) {
+		if(sequenceID != lastSequenceID){
+			lastSequenceID = sequenceID;
+			addPseudoSequence(sequenceID, position);
+		}
+	}
+
+	/**
+	 * Create a copy of this pair, with its own arrays for its projected database, so that
+	 * it can be used after the arrays shared with the other pairs have been overwritten.
+	 * @return the copy
+	 */
+	public Pair copy() {
+		Pair pair = new Pair(item);
+		pair.sequenceIDs = Arrays.copyOfRange(sequenceIDs, start, start + size);
+		pair.positions = Arrays.copyOfRange(positions, start, start + size);
+		pair.size = size;
+		pair.lastSequenceID = lastSequenceID;
+		pair.count = count;
+		return pair;
+	}
 
 	/**
-	 * Get the list of sequence IDs associated with this item.
-	 * @return  the list of sequence IDs.
+	 * Get the number of pseudosequences of the projection with this item.
+	 * @return the number of pseudosequences.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get the id of the sequence of a pseudosequence of the projection with this item.
+	 * @param index the index of the pseudosequence (from 0 to size() - 1)
+	 * @return the sequence id.
+	 */
+	public int getSequenceID(int index) {
+		return sequenceIDs[start + index];
+	}
+	
+	/**
+	 * Get the position where a pseudosequence of the projection with this item starts
+	 * in the array of tokens of the sequence database.
+	 * @param index the index of the pseudosequence (from 0 to size() - 1)
+	 * @return the position.
 	 */
-	public List<PseudoSequence> getPseudoSequences() {
-		return pseudoSequences;
+	public int getPosition(int index) {
+		return positions[start + index];
 	}
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This interface receives the frequent sequential patterns found by AlgoPrefixSpan, one at a time, when
+ * it is set with AlgoPrefixSpan.setPatternConsumer() and no output file is given. The patterns are neither
+ * written to a file nor kept in memory, so a caller that needs only some aggregates of the patterns
+ * (e.g., their number or their supports) can compute them while the patterns are found.
+ * <br/><br/>
+ * The pattern is passed as the buffer of the algorithm, which is reused for the next pattern. If the algorithm
+ * uses several threads, consume() is called by several threads at the same time.
+ * <br/><br/>
+ * Built-in consumers: Counter (only the number of patterns), SupportHistogram (the number of patterns of each
+ * support) and OutputFile (the patterns written to a file, as with an output file path).
+ */
+public interface PatternConsumer {
+
+    /**
+     * @return true if consume() needs the items of the patterns. Otherwise, the pattern passed to consume()
+     * is null, and the items are not translated back from their slots
+     */
+    boolean needsPatterns();
+
+    /**
+     * @return true if consume() needs the ids of the sequences containing the patterns. Otherwise, the ids
+     * passed to consume() are null, and they are not collected from the projected databases
+     */
+    boolean needsSequenceIDs();
+
+    /**
+     * Receives a pattern found by the algorithm
+     *
+     * @param pattern     the items of the pattern, with -1 between the itemsets (but not after the last one),
+     *                    in the first length positions of a buffer that is reused for the next pattern,
+     *                    or null if needsPatterns() is false
+     * @param length      the number of tokens of the pattern (items and -1)
+     * @param support     the support of the pattern
+     * @param sequenceIDs the ids of the sequences of the input file containing the pattern,
+     *                    or null if needsSequenceIDs() is false
+     * @throws IOException if error while writing the pattern
+     */
+    void consume(int[] pattern, int length, int support, SequenceIDSet sequenceIDs) throws IOException;
+
+    /**
+     * Counts the patterns, without building them
+     */
+    final class Counter implements PatternConsumer {
+
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public boolean needsPatterns() {
+            return false;
+        }
+
+        @Override
+        public boolean needsSequenceIDs() {
+            return false;
+        }
+
+        @Override
+        public void consume(int[] pattern, int length, int support, SequenceIDSet sequenceIDs) {
+            count.incrementAndGet();
+        }
+
+        /**
+         * @return the number of patterns received
+         */
+        public long getCount() {
+            return count.get();
+        }
+    }
+
+    /**
+     * Counts the patterns of each support, without building them. The number of patterns whose frequency is
+     * at least a threshold can then be found for every threshold larger than the one used to mine them.
+     */
+    final class SupportHistogram implements PatternConsumer {
+
+        /**
+         * The number of patterns of each support
+         */
+        private long[] counts = new long[16];
+
+        @Override
+        public boolean needsPatterns() {
+            return false;
+        }
+
+        @Override
+        public boolean needsSequenceIDs() {
+            return false;
+        }
+
+        @Override
+        public synchronized void consume(int[] pattern, int length, int support, SequenceIDSet sequenceIDs) {
+            if (support >= counts.length) counts = Arrays.copyOf(counts, Math.max(support + 1, 2 * counts.length));
+            counts[support]++;
+        }
+
+        /**
+         * @param support a support
+         * @return the number of patterns with this support
+         */
+        public synchronized long getCount(int support) {
+            return support < counts.length ? counts[support] : 0;
+        }
+
+        /**
+         * @param support a minimum support
+         * @return the number of patterns with a support at least equal to it
+         */
+        public synchronized long getCountAtLeast(int support) {
+            long count = 0;
+            for (int i = Math.max(support, 0); i < counts.length; i++) count += counts[i];
+            return count;
+        }
+
+        /**
+         * @return the largest support of the patterns received (0 if there are none)
+         */
+        public synchronized int getMaxSupport() {
+            for (int i = counts.length - 1; i > 0; i--) {
+                if (counts[i] > 0) return i;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the patterns to a file, in the text format or in the binary format (see PatternWriter).
+     * The file must be closed with close() after the execution of the algorithm.
+     */
+    final class OutputFile implements PatternConsumer {
+
+        private final PatternWriter writer;
+        private final PatternWriter.Line line = new PatternWriter.Line();
+        private final boolean sequenceIDs;
+
+        /**
+         * @param path        the path of the file
+         * @param sequenceIDs true to write the ids of the sequences containing each pattern
+         * @throws IOException if error while opening the file
+         */
+        public OutputFile(String path, boolean sequenceIDs) throws IOException {
+            this.writer = new PatternWriter(path, sequenceIDs);
+            this.sequenceIDs = sequenceIDs;
+        }
+
+        @Override
+        public boolean needsPatterns() {
+            return true;
+        }
+
+        @Override
+        public boolean needsSequenceIDs() {
+            return sequenceIDs;
+        }
+
+        @Override
+        public synchronized void consume(int[] pattern, int length, int support, SequenceIDSet sequenceIDs) throws IOException {
+            line.set(pattern, length, support, sequenceIDs);
+            writer.write(line);
+        }
+
+        /**
+         * Writes the patterns that are buffered and closes the file
+         *
+         * @throws IOException if error while writing the file
+         */
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This class reads the frequent sequential patterns from a file written by PatternWriter, in the text format or
+ * in the binary format (if the file has the extension .bin). The patterns are read one at a time, without creating
+ * a String for each of them: the tokens and the ids of the sequences of the current pattern are kept in arrays
+ * that are reused for the next pattern. A pattern that must be kept after the next one is read is copied with key().
+ * <br/><br/>
+ * Usage:
+ * <pre>
+ * PatternReader reader = new PatternReader(file);
+ * while (reader.next()) {
+ *     ... reader.tokens(), reader.length(), reader.support() ...
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * @see PatternWriter
+ */
+public class PatternReader implements Closeable {
+
+    /**
+     * The number of bytes read from the file at once
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * True if the file is in the binary format
+     */
+    private final boolean binary;
+
+    /**
+     * True if the ids of the sequences are in the binary file
+     */
+    private boolean binarySequenceIDs = false;
+
+    /**
+     * The bytes of the set of ids of the sequences of the current pattern
+     */
+    private byte[] setBytes = new byte[256];
+
+    /**
+     * The tokens of the current pattern: its items, with -1 after each itemset
+     */
+    private int[] tokens = new int[16];
+    private int tokenCount = 0;
+    private int support = 0;
+
+    /**
+     * The ids of the sequences containing the current pattern, if they are in the file
+     */
+    private int[] sequenceIDs = new int[16];
+    private int sequenceIDCount = 0;
+
+    /**
+     * The last byte read by readNumber() after the number
+     */
+    private int lastByte;
+
+    /**
+     * Opens a file of patterns
+     *
+     * @param path the path of the file
+     * @throws IOException if error while opening the file, or if the binary file has not a valid header
+     */
+    public PatternReader(String path) throws IOException {
+        input = FileChunks.open(path);
+        binary = PatternWriter.isBinary(path);
+        if (binary) {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) magic = (magic << 8) | readByte();
+            int version = readByte();
+            int flags = readByte();
+            readByte();
+            readByte();
+            if (magic != PatternWriter.MAGIC || version != PatternWriter.VERSION) {
+                input.close();
+                throw new IOException("Not a binary pattern file: " + path);
+            }
+            binarySequenceIDs = (flags & PatternWriter.FLAG_SEQUENCE_IDS) != 0;
+        }
+    }
+
+    /**
+     * Reads the next pattern
+     *
+     * @return false if there are no more patterns in the file
+     * @throws IOException if error while reading the file
+     */
+    public boolean next() throws IOException {
+        return binary ? nextRecord() : nextLine();
+    }
+
+    /**
+     * Reads the next pattern of a binary file
+     *
+     * @return false if there are no more patterns
+     * @throws IOException if error while reading the file
+     */
+    private boolean nextRecord() throws IOException {
+        if (position == limit && !fill()) return false;
+        int shared = readVarint();
+        if (shared > tokenCount) throw new IOException("Invalid pattern record");
+        tokenCount = shared + readVarint();
+        if (tokens.length < tokenCount) tokens = Arrays.copyOf(tokens, Math.max(tokenCount, 2 * tokens.length));
+        for (int i = shared; i < tokenCount; i++) tokens[i] = readVarint() - 1;
+        support = readVarint();
+        sequenceIDCount = 0;
+        if (binarySequenceIDs) {
+            int length = readVarint();
+            if (setBytes.length < length) setBytes = new byte[Math.max(length, 2 * setBytes.length)];
+            readBytes(setBytes, length);
+            SequenceIDSet set;
+            try {
+                set = SequenceIDSet.decode(setBytes, 0, length);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid pattern record", e);
+            }
+            ensureSequenceIDCapacity(set.getCardinality());
+            sequenceIDCount = set.copyTo(sequenceIDs);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next pattern of a text file, in the format: items separated by spaces, with -1 after each
+     * itemset, then "#SUP: " and the support, and possibly " #SID: " and the ids of the sequences
+     *
+     * @return false if there are no more patterns
+     * @throws IOException if error while reading the file
+     */
+    private boolean nextLine() throws IOException {
+        tokenCount = 0;
+        sequenceIDCount = 0;
+        int c = read();
+        // skip the empty lines
+        while (c == '\n' || c == '\r') c = read();
+        if (c < 0) return false;
+        // the tokens, until #SUP:
+        while (c != '#') {
+            if (c < 0 || c == '\n') throw new IOException("Missing support in a pattern line");
+            if (c == ' ') {
+                c = read();
+                continue;
+            }
+            if (tokenCount == tokens.length) tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            tokens[tokenCount++] = readNumber(c);
+            c = lastByte;
+        }
+        skipLabel();
+        support = readNumber(read());
+        c = lastByte;
+        while (c == ' ') c = read();
+        if (c == '#') {
+            // the ids of the sequences, until the end of the line
+            skipLabel();
+            c = read();
+            while (c >= 0 && c != '\n' && c != '\r') {
+                if (c == ' ') {
+                    c = read();
+                    continue;
+                }
+                ensureSequenceIDCapacity(sequenceIDCount + 1);
+                sequenceIDs[sequenceIDCount++] = readNumber(c);
+                c = lastByte;
+            }
+        }
+        while (c >= 0 && c != '\n') c = read();
+        if (tokenCount > 0 && tokens[tokenCount - 1] != -1) {
+            if (tokenCount == tokens.length) tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            tokens[tokenCount++] = -1;
+        }
+        return true;
+    }
+
+    /**
+     * Skips a label as "SUP:" or "SID:" after its #
+     *
+     * @throws IOException if error while reading the file
+     */
+    private void skipLabel() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c >= 0 && c != ':');
+    }
+
+    /**
+     * Reads a decimal number, and keeps the byte after it in lastByte
+     *
+     * @param c the first byte of the number (or a space before it)
+     * @return the number
+     * @throws IOException if error while reading the file, or if there is not a number
+     */
+    private int readNumber(int c) throws IOException {
+        while (c == ' ') c = read();
+        boolean negative = c == '-';
+        if (negative) c = read();
+        if (c < '0' || c > '9') throw new IOException("Invalid number in a pattern line");
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = 10 * value + (c - '0');
+            c = read();
+        }
+        lastByte = c;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads an unsigned varint
+     *
+     * @return the value
+     * @throws IOException if error while reading the file, or if the file ends
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80) return value;
+        }
+    }
+
+    /**
+     * Reads a byte that must be in the file
+     *
+     * @return the byte
+     * @throws IOException if error while reading the file, or if the file ends
+     */
+    private int readByte() throws IOException {
+        int b = read();
+        if (b < 0) throw new IOException("Unexpected end of the pattern file");
+        return b;
+    }
+
+    /**
+     * Reads a byte
+     *
+     * @return the byte, or -1 at the end of the file
+     * @throws IOException if error while reading the file
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Reads bytes that must be in the file
+     *
+     * @param bytes  the array receiving the bytes
+     * @param length the number of bytes
+     * @throws IOException if error while reading the file, or if the file ends
+     */
+    private void readBytes(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (position == limit && !fill()) throw new IOException("Unexpected end of the pattern file");
+            int count = Math.min(length - offset, limit - position);
+            System.arraycopy(buffer, position, bytes, offset, count);
+            position += count;
+            offset += count;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = input.read(buffer, 0, BUFFER_SIZE);
+        if (read <= 0) return false;
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void ensureSequenceIDCapacity(int count) {
+        if (sequenceIDs.length < count) sequenceIDs = Arrays.copyOf(sequenceIDs, Math.max(count, 2 * sequenceIDs.length));
+    }
+
+    /**
+     * @return the tokens of the current pattern (its items, with -1 after each itemset), in the first length()
+     * positions of an array that is reused for the next pattern
+     */
+    public int[] tokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the number of tokens of the current pattern
+     */
+    public int length() {
+        return tokenCount;
+    }
+
+    /**
+     * @return the support of the current pattern
+     */
+    public int support() {
+        return support;
+    }
+
+    /**
+     * @return the ids of the sequences containing the current pattern, in the first sequenceIDCount() positions
+     * of an array that is reused for the next pattern
+     */
+    public int[] sequenceIDs() {
+        return sequenceIDs;
+    }
+
+    /**
+     * @return the number of ids of sequences of the current pattern (0 if they are not in the file)
+     */
+    public int sequenceIDCount() {
+        return sequenceIDCount;
+    }
+
+    /**
+     * @return the ids of the sequences containing the current pattern, as a compressed set that can be intersected
+     * with the sets of other patterns
+     */
+    public SequenceIDSet sequenceIDSet() {
+        return SequenceIDSet.of(sequenceIDs, sequenceIDCount);
+    }
+
+    /**
+     * @return a copy of the tokens of the current pattern, that can be used as a key of a HashMap
+     */
+    public Key key() {
+        return new Key(Arrays.copyOf(tokens, tokenCount));
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * The tokens of a pattern, compared by value
+     */
+    public static final class Key {
+
+        private final int[] tokens;
+        private final int hash;
+
+        Key(int[] tokens) {
+            this.tokens = tokens;
+            this.hash = Arrays.hashCode(tokens);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && Arrays.equals(tokens, ((Key) o).tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * @return the pattern in the text format, without the support
+         */
+        @Override
+        public String toString() {
+            StringBuilder r = new StringBuilder();
+            for (int i = 0; i < tokens.length; i++) {
+                if (i > 0) r.append(' ');
+                r.append(tokens[i]);
+            }
+            return r.toString();
+        }
+    }
+}
@@ -0,0 +1,477 @@
+import java.util.Arrays;
+
+/**
+ * A set of sequential patterns kept in memory as a prefix tree. Each node of the tree is
+ * an item, that is added to the pattern of its parent either in a new itemset (s-extension) 
+ * or in its last itemset (i-extension), so a node represents the pattern made of the items 
+ * on the path from the root to it. A node is marked if its pattern is in the set: the nodes
+ * that are only prefixes of patterns of the set (for example, with the closed patterns)
+ * are not marked.
+ * <br/><br/>
+ * The nodes are stored in arrays of primitive values instead of objects. While the patterns 
+ * are added, the children of a node are found with a hash table. When all the patterns have
+ * been added, finish() renumbers the nodes in breadth-first order, with the children of each
+ * node sorted by extension and item: the nodes of the patterns with the same number of items
+ * (a level) are consecutive, and the children of a node are consecutive, so a pattern is
+ * found with a binary search at each level. A node then takes 17 bytes, plus the compressed
+ * set of its sequence ids if they are kept.
+ * <br/><br/>
+ * The items must be positive, as in the SPMF format.
+ *
+ * @see AlgoPrefixSpan
+ */
+public class PatternTrie {
+	
+	/** the flag of a node that is added to its parent in a new itemset */
+	private static final byte S_EXTENSION = 1;
+	
+	/** the flag of a node whose pattern is in the set */
+	private static final byte PATTERN = 2;
+	
+	/** the maximum number of nodes per position of the hash table, before it is enlarged */
+	private static final float LOAD_FACTOR = 0.5f;
+	
+	/** the item of each node (the root, node 0, has no item) */
+	private int[] items = new int[64];
+	
+	/** the flags of each node */
+	private byte[] flags = new byte[64];
+	
+	/** the support of each node whose pattern is in the set */
+	private int[] supports = new int[64];
+	
+	/** the parent of each node */
+	private int[] parents = new int[64];
+	
+	/** the number of nodes, including the root */
+	private int nodeCount = 1;
+	
+	/** the number of patterns in the set */
+	private int patternCount = 0;
+	
+	/** while the patterns are added, the hash table of the nodes by parent, extension 
+	 * and item: each position contains a node, or 0 if it is empty */
+	private int[] table = new int[128];
+	
+	/** when all the patterns have been added, the first child of each node, followed by
+	 * the number of nodes (the children of node n are childStarts[n] to childStarts[n+1]-1) */
+	private int[] childStarts = null;
+	
+	/** when all the patterns have been added, the first node of each level, followed by
+	 * the number of nodes */
+	private int[] levelStarts = null;
+	
+	/** true if the ids of the sequences containing the patterns are kept */
+	private final boolean keepSequenceIDs;
+	
+	/** if the sequence ids are kept, the ids of the sequences containing the pattern of each node 
+	 * (null if the pattern is not in the set) */
+	private SequenceIDSet[] sequenceIDs = null;
+	
+	/**
+	 * Constructor
+	 * @param keepSequenceIDs true if the ids of the sequences containing the patterns are kept
+	 */
+	public PatternTrie(boolean keepSequenceIDs) {
+		this.keepSequenceIDs = keepSequenceIDs;
+		if(keepSequenceIDs){
+			sequenceIDs = new SequenceIDSet[64];
+		}
+	}
+	
+	/**
+	 * Add a pattern to the set. The patterns can be added in any order, and by several threads.
+	 * @param pattern the items of the pattern, with -1 after each itemset (except possibly the last one)
+	 * @param count the number of values of the pattern
+	 * @param support the support of the pattern
+	 * @param ids the ids of the sequences containing the pattern (ignored if they are not kept)
+	 */
+	public synchronized void add(int[] pattern, int count, int support, SequenceIDSet ids) {
+		if(childStarts != null){
+			throw new IllegalStateException("No pattern can be added after finish()");
+		}
+		int node = 0;
+		boolean sExtension = true;
+		for(int i = 0; i < count; i++){
+			int token = pattern[i];
+			if(token == -1){
+				sExtension = true;
+				continue;
+			}
+			node = child(node, token, sExtension, true);
+			sExtension = false;
+		}
+		if((flags[node] & PATTERN) == 0){
+			patternCount++;
+		}
+		flags[node] |= PATTERN;
+		supports[node] = support;
+		if(keepSequenceIDs){
+			sequenceIDs[node] = ids == null ? SequenceIDSet.EMPTY : ids;
+		}
+	}
+	
+	/**
+	 * Add a pattern containing a single item to the set.
+	 * @param item the item
+	 * @param support the support of the pattern
+	 * @param ids the ids of the sequences containing the pattern (ignored if they are not kept)
+	 */
+	public void add(int item, int support, SequenceIDSet ids) {
+		add(new int[]{item}, 1, support, ids);
+	}
+	
+	/**
+	 * Find the child of a node with the hash table, while the patterns are added
+	 * @param parent the node
+	 * @param item the item of the child
+	 * @param sExtension true if the item is added in a new itemset
+	 * @param create true if the child is created if it does not exist
+	 * @return the child, or -1 if it does not exist and it is not created
+	 */
+	private int child(int parent, int item, boolean sExtension, boolean create) {
+		int mask = table.length - 1;
+		int position = hash(parent, item, sExtension) & mask;
+		while(table[position] != 0){
+			int node = table[position];
+			if(parents[node] == parent && items[node] == item 
+					&& ((flags[node] & S_EXTENSION) != 0) == sExtension){
+				return node;
+			}
+			position = (position + 1) & mask;
+		}
+		if(create == false){
+			return -1;
+		}
+		if(nodeCount == items.length){
+			int capacity = 2 * nodeCount;
+			items = Arrays.copyOf(items, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+			supports = Arrays.copyOf(supports, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			if(keepSequenceIDs){
+				sequenceIDs = Arrays.copyOf(sequenceIDs, capacity);
+			}
+		}
+		int node = nodeCount++;
+		items[node] = item;
+		flags[node] = sExtension ? S_EXTENSION : 0;
+		parents[node] = parent;
+		table[position] = node;
+		if(nodeCount > table.length * LOAD_FACTOR){
+			rehash(2 * table.length);
+		}
+		return node;
+	}
+	
+	private static int hash(int parent, int item, boolean sExtension) {
+		int h = parent * 0x9E3779B9 + item * 0x85EBCA6B + (sExtension ? 0x165667B1 : 0);
+		return h ^ (h >>> 16);
+	}
+	
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for(int node = 1; node < nodeCount; node++){
+			int position = hash(parents[node], items[node], (flags[node] & S_EXTENSION) != 0) & mask;
+			while(table[position] != 0){
+				position = (position + 1) & mask;
+			}
+			table[position] = node;
+		}
+	}
+	
+	/**
+	 * Renumber the nodes in breadth-first order, with the children of each node sorted by extension
+	 * (i-extensions first) and item, after all the patterns have been added. The hash table is 
+	 * released. The patterns can be looked up and iterated only after this method is called.
+	 */
+	public synchronized void finish() {
+		if(childStarts != null){
+			return;
+		}
+		// sort the nodes by depth (a parent is created before its children)
+		int[] depths = new int[nodeCount];
+		int levelCount = 1;
+		for(int node = 1; node < nodeCount; node++){
+			depths[node] = depths[parents[node]] + 1;
+			levelCount = Math.max(levelCount, depths[node] + 1);
+		}
+		levelStarts = new int[levelCount + 1];
+		for(int node = 1; node < nodeCount; node++){
+			levelStarts[depths[node] + 1]++;
+		}
+		levelStarts[1] = 1;
+		for(int level = 1; level < levelCount; level++){
+			levelStarts[level + 1] += levelStarts[level];
+		}
+		int[] nodesByDepth = new int[nodeCount];
+		int[] positions = Arrays.copyOf(levelStarts, levelCount);
+		for(int node = 1; node < nodeCount; node++){
+			nodesByDepth[positions[depths[node]]++] = node;
+		}
+		depths = null;
+		positions = null;
+		
+		// the nodes of each level are sorted by (new number of the parent, extension, item)
+		int[] oldNodes = new int[nodeCount];
+		int[] newNodes = new int[nodeCount];
+		long[] keys = new long[0];
+		for(int level = 1; level < levelCount; level++){
+			int start = levelStarts[level];
+			int end = levelStarts[level + 1];
+			if(keys.length < end - start){
+				keys = new long[end - start];
+			}
+			for(int i = start; i < end; i++){
+				int node = nodesByDepth[i];
+				keys[i - start] = ((long) newNodes[parents[node]] << 32) | key(node);
+			}
+			Arrays.sort(keys, 0, end - start);
+			for(int i = start; i < end; i++){
+				long key = keys[i - start];
+				int node = child(oldNodes[(int) (key >>> 32)], (int) key & 0x7fffffff, (key & (1L << 31)) != 0, false);
+				oldNodes[i] = node;
+				newNodes[node] = i;
+			}
+		}
+		nodesByDepth = null;
+		keys = null;
+		table = null;
+		
+		// move the values of the nodes to their new positions
+		int[] newItems = new int[nodeCount];
+		byte[] newFlags = new byte[nodeCount];
+		int[] newSupports = new int[nodeCount];
+		int[] newParents = new int[nodeCount];
+		for(int i = 1; i < nodeCount; i++){
+			int node = oldNodes[i];
+			newItems[i] = items[node];
+			newFlags[i] = flags[node];
+			newSupports[i] = supports[node];
+			newParents[i] = newNodes[parents[node]];
+		}
+		items = newItems;
+		flags = newFlags;
+		supports = newSupports;
+		parents = newParents;
+		if(keepSequenceIDs){
+			SequenceIDSet[] newSequenceIDs = new SequenceIDSet[nodeCount];
+			for(int i = 1; i < nodeCount; i++){
+				newSequenceIDs[i] = sequenceIDs[oldNodes[i]];
+			}
+			sequenceIDs = newSequenceIDs;
+		}
+		
+		// the children of the nodes are consecutive, in the order of the nodes
+		childStarts = new int[nodeCount + 1];
+		for(int i = 1; i < nodeCount; i++){
+			childStarts[parents[i] + 1]++;
+		}
+		childStarts[0] = 1;
+		for(int node = 0; node < nodeCount; node++){
+			childStarts[node + 1] += childStarts[node];
+		}
+	}
+	
+	/**
+	 * Get the key of a node among the children of its parent: the items of the i-extensions
+	 * are before the items of the s-extensions.
+	 * @param node the node
+	 * @return the key
+	 */
+	private long key(int node) {
+		return ((flags[node] & S_EXTENSION) != 0 ? 1L << 31 : 0) | items[node];
+	}
+	
+	/**
+	 * Find the node of a pattern.
+	 * @param pattern the items of the pattern, with -1 after each itemset (except possibly the last one)
+	 * @param count the number of values of the pattern
+	 * @return the node, or -1 if there is no node for this pattern (its pattern may not be in the set,
+	 *         see isPattern())
+	 */
+	public int find(int[] pattern, int count) {
+		checkFinished();
+		int node = 0;
+		long sExtension = 1L << 31;
+		for(int i = 0; i < count; i++){
+			int token = pattern[i];
+			if(token == -1){
+				sExtension = 1L << 31;
+				continue;
+			}
+			long key = sExtension | token;
+			// binary search among the children
+			int low = childStarts[node];
+			int high = childStarts[node + 1] - 1;
+			node = -1;
+			while(low <= high){
+				int middle = (low + high) >>> 1;
+				long middleKey = key(middle);
+				if(middleKey < key){
+					low = middle + 1;
+				}else if(middleKey > key){
+					high = middle - 1;
+				}else{
+					node = middle;
+					break;
+				}
+			}
+			if(node == -1){
+				return -1;
+			}
+			sExtension = 0;
+		}
+		return node;
+	}
+	
+	/**
+	 * Get the support of a pattern.
+	 * @param pattern the items of the pattern, with -1 after each itemset (except possibly the last one)
+	 * @param count the number of values of the pattern
+	 * @return the support, or 0 if the pattern is not in the set
+	 */
+	public int getSupport(int[] pattern, int count) {
+		int node = find(pattern, count);
+		return node > 0 && isPattern(node) ? supports[node] : 0;
+	}
+	
+	/**
+	 * Get the number of levels: the nodes of level k are the patterns with k items 
+	 * (level 0 only contains the root).
+	 * @return the number of levels
+	 */
+	public int getLevelCount() {
+		checkFinished();
+		return levelStarts.length - 1;
+	}
+	
+	/**
+	 * Get the first node of a level. The nodes of the level are getLevelStart(level) to 
+	 * getLevelStart(level + 1) - 1.
+	 * @param level the level, from 0 to getLevelCount()
+	 * @return the first node
+	 */
+	public int getLevelStart(int level) {
+		checkFinished();
+		return levelStarts[level];
+	}
+	
+	/**
+	 * Get the first child of a node. The children of the node are getChildStart(node) to 
+	 * getChildStart(node + 1) - 1.
+	 * @param node the node
+	 * @return the first child
+	 */
+	public int getChildStart(int node) {
+		checkFinished();
+		return childStarts[node];
+	}
+	
+	/**
+	 * Check if the pattern of a node is in the set.
+	 * @param node the node
+	 * @return true if it is in the set, false if it is only a prefix of patterns in the set
+	 */
+	public boolean isPattern(int node) {
+		return (flags[node] & PATTERN) != 0;
+	}
+	
+	/**
+	 * Check if the item of a node is in a new itemset of the pattern of its parent.
+	 * @param node the node
+	 * @return true for an s-extension, false for an i-extension
+	 */
+	public boolean isSExtension(int node) {
+		return (flags[node] & S_EXTENSION) != 0;
+	}
+	
+	/**
+	 * Get the item of a node.
+	 * @param node the node
+	 * @return the item
+	 */
+	public int getItem(int node) {
+		return items[node];
+	}
+	
+	/**
+	 * Get the parent of a node.
+	 * @param node the node
+	 * @return the parent
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+	
+	/**
+	 * Get the support of the pattern of a node.
+	 * @param node the node
+	 * @return the support, or 0 if the pattern is not in the set
+	 */
+	public int getSupport(int node) {
+		return isPattern(node) ? supports[node] : 0;
+	}
+	
+	/**
+	 * Get the pattern of a node.
+	 * @param node the node
+	 * @return the items of the pattern, with -1 after each itemset (empty for the root)
+	 */
+	public int[] getPattern(int node) {
+		if(node == 0){
+			return new int[0];
+		}
+		// the values of the pattern, from the last one: each item, and a -1 after 
+		// each itemset (that ends before an s-extension, and at the end)
+		int count = 1;
+		for(int n = node; n != 0; n = parents[n]){
+			count += isSExtension(n) && parents[n] != 0 ? 2 : 1;
+		}
+		int[] pattern = new int[count];
+		int position = count;
+		pattern[--position] = -1;
+		for(int n = node; n != 0; n = parents[n]){
+			pattern[--position] = items[n];
+			if(isSExtension(n) && parents[n] != 0){
+				pattern[--position] = -1;
+			}
+		}
+		return pattern;
+	}
+	
+	/**
+	 * Get the ids of the sequences containing the pattern of a node, if they are kept.
+	 * @param node the node
+	 * @return the ids, or null if they are not kept or the pattern is not in the set
+	 */
+	public SequenceIDSet getSequenceIDs(int node) {
+		if(keepSequenceIDs == false || isPattern(node) == false){
+			return null;
+		}
+		return sequenceIDs[node];
+	}
+	
+	/**
+	 * Get the number of patterns in the set.
+	 * @return the number of patterns
+	 */
+	public int getPatternCount() {
+		return patternCount;
+	}
+	
+	/**
+	 * Get the number of nodes, including the root and the nodes that are only prefixes of patterns.
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+	
+	private void checkFinished() {
+		if(childStarts == null){
+			throw new IllegalStateException("The patterns can be read only after finish()");
+		}
+	}
+}
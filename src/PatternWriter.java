@@ -0,0 +1,445 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class writes the frequent sequential patterns to a file. The lines are encoded to ASCII bytes
+ * in a reusable Line by the mining thread and copied to a block; the full blocks are written to the file by a
+ * separate thread, so that the writing is overlapped with the mining. The blocks are recycled through a bounded
+ * ring: when all of them are waiting to be written, the mining thread waits for the writing thread.
+ * <br/><br/>
+ * If the name of the file has the extension .bin, the patterns are written in a binary format instead of text.
+ * The file starts with a header of 8 bytes: the magic number 0x53504642, the version (1 byte), the flags
+ * (1 byte, 1 if the ids of the sequences are written) and 2 unused bytes. Then, for each pattern, as unsigned
+ * varints (7 bits per byte, least significant first):
+ * <ul>
+ * <li>the number of tokens of the pattern that are the same as in the previous pattern (front coding),</li>
+ * <li>the number of the other tokens, followed by each of them plus 1 (-1 between the itemsets becomes 0),</li>
+ * <li>the support,</li>
+ * <li>if the ids of the sequences are written: the number of bytes of their set, followed by the set
+ * encoded by SequenceIDSet.encode(), where each group of 2^16 ids is written as the differences between
+ * consecutive ids or as a bitmap, whichever is smaller.</li>
+ * </ul>
+ * The tokens of a pattern always end with -1, as in the text format. Since the patterns are found in depth-first
+ * order, consecutive patterns share most of their tokens. The file is read by PatternReader.
+ *
+ * @see PatternReader
+ */
+public class PatternWriter {
+
+    /**
+     * The first bytes of a binary file
+     */
+    static final int MAGIC = 0x53504642;
+
+    /**
+     * The version of the binary format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The flag of the header of a binary file that indicates that the ids of the sequences are written
+     */
+    static final int FLAG_SEQUENCE_IDS = 1;
+
+    /**
+     * The number of bytes in a block
+     */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The number of blocks of the ring
+     */
+    private static final int BLOCK_COUNT = 8;
+
+    /**
+     * The block that indicates the end of the file
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * The line separator written at the end of each line, as BufferedWriter.newLine()
+     */
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final BlockingQueue<ByteBuffer> fullBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT + 1);
+    private final BlockingQueue<ByteBuffer> freeBlocks = new ArrayBlockingQueue<>(BLOCK_COUNT);
+    private final FileChannel channel;
+    private final Thread writerThread;
+    private volatile IOException error = null;
+    private ByteBuffer block;
+    private boolean closed = false;
+
+    /**
+     * True if the patterns are written in the binary format
+     */
+    private final boolean binary;
+
+    /**
+     * True if the ids of the sequences are written in the binary format
+     */
+    private final boolean sequenceIDs;
+
+    /**
+     * The tokens of the previous pattern written in the binary format
+     */
+    private int[] previousTokens = new int[16];
+    private int previousTokenCount = 0;
+
+    /**
+     * The bytes of the record of a pattern in the binary format
+     */
+    private byte[] record = new byte[256];
+    private int recordLength = 0;
+
+    /**
+     * The bytes of the set of ids of the sequences of a pattern in the binary format
+     */
+    private byte[] setBytes = new byte[256];
+
+    /**
+     * Creates (or truncates) a file and starts the thread that writes it
+     *
+     * @param file        the name of the file (with the extension .bin for the binary format)
+     * @param sequenceIDs true if the ids of the sequences are written in the binary format (in the text format,
+     *                    they are written if the lines contain them)
+     * @throws IOException if error while opening the file
+     */
+    public PatternWriter(String file, boolean sequenceIDs) throws IOException {
+        this.binary = isBinary(file);
+        this.sequenceIDs = sequenceIDs;
+        channel = new FileOutputStream(file).getChannel();
+        for (int i = 1; i < BLOCK_COUNT; i++) freeBlocks.add(ByteBuffer.allocate(BLOCK_SIZE));
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+        if (binary) {
+            block.putInt(MAGIC);
+            block.put((byte) VERSION);
+            block.put((byte) (sequenceIDs ? FLAG_SEQUENCE_IDS : 0));
+            block.putShort((short) 0);
+        }
+        writerThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        ByteBuffer buffer = fullBlocks.take();
+                        if (buffer == END) break;
+                        buffer.flip();
+                        try {
+                            // after an error, the blocks are only recycled, so that the mining thread does not wait
+                            while (error == null && buffer.hasRemaining()) channel.write(buffer);
+                        } catch (IOException e) {
+                            error = e;
+                        }
+                        buffer.clear();
+                        freeBlocks.put(buffer);
+                    }
+                } catch (InterruptedException e) {
+                    // the file is not written after an interruption
+                }
+            }
+        }, "writer-" + file);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Checks if the patterns are written to a file in the binary format, according to its extension
+     *
+     * @param path the path of the file
+     * @return true if the file name ends with .bin
+     */
+    public static boolean isBinary(String path) {
+        return path.endsWith(".bin");
+    }
+
+    /**
+     * Appends a pattern to the file
+     *
+     * @param line the pattern
+     * @throws IOException if error while writing the file
+     */
+    public void write(Line line) throws IOException {
+        if (!binary) {
+            // the line is encoded once, even if it is written to several files, and by each thread in parallel
+            line.encode();
+            synchronized (this) {
+                write(line.bytes, line.length);
+            }
+            return;
+        }
+        synchronized (this) {
+            encodeRecord(line);
+            write(record, recordLength);
+        }
+    }
+
+    /**
+     * Copies bytes to the blocks
+     *
+     * @param bytes  the bytes
+     * @param length the number of bytes
+     * @throws IOException if error while writing the file
+     */
+    private void write(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, block.remaining());
+            block.put(bytes, offset, count);
+            offset += count;
+            if (!block.hasRemaining()) nextBlock();
+        }
+    }
+
+    /**
+     * Encodes a pattern in the binary format, against the previous pattern
+     *
+     * @param line the pattern
+     */
+    private void encodeRecord(Line line) {
+        int[] tokens = line.tokens;
+        int count = line.tokenCount;
+        int shared = 0;
+        int limit = Math.min(count, previousTokenCount);
+        while (shared < limit && tokens[shared] == previousTokens[shared]) shared++;
+        recordLength = 0;
+        putVarint(shared);
+        putVarint(count - shared);
+        for (int i = shared; i < count; i++) putVarint(tokens[i] + 1);
+        putVarint(line.support);
+        if (sequenceIDs) {
+            SequenceIDSet ids = line.sequenceIDs == null ? SequenceIDSet.EMPTY : line.sequenceIDs;
+            int maxLength = ids.getMaxEncodedLength();
+            if (setBytes.length < maxLength) setBytes = new byte[Math.max(maxLength, 2 * setBytes.length)];
+            int length = ids.encode(setBytes, 0);
+            putVarint(length);
+            putBytes(setBytes, length);
+        }
+        if (previousTokens.length < count) previousTokens = new int[Math.max(count, 2 * previousTokens.length)];
+        System.arraycopy(tokens, 0, previousTokens, 0, count);
+        previousTokenCount = count;
+    }
+
+    /**
+     * Appends an unsigned varint to the record
+     *
+     * @param value the value, read as an unsigned integer
+     */
+    private void putVarint(int value) {
+        if (recordLength + 5 > record.length) {
+            byte[] larger = new byte[2 * record.length];
+            System.arraycopy(record, 0, larger, 0, recordLength);
+            record = larger;
+        }
+        while ((value & ~0x7f) != 0) {
+            record[recordLength++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        record[recordLength++] = (byte) value;
+    }
+
+    /**
+     * Appends bytes to the record
+     *
+     * @param bytes  the bytes
+     * @param length the number of bytes
+     */
+    private void putBytes(byte[] bytes, int length) {
+        if (recordLength + length > record.length) {
+            byte[] larger = new byte[Math.max(2 * record.length, recordLength + length)];
+            System.arraycopy(record, 0, larger, 0, recordLength);
+            record = larger;
+        }
+        System.arraycopy(bytes, 0, record, recordLength, length);
+        recordLength += length;
+    }
+
+    /**
+     * Sends the current block to the writing thread, and takes a free block
+     *
+     * @throws IOException if error while writing the file
+     */
+    private void nextBlock() throws IOException {
+        if (error != null) throw error;
+        try {
+            fullBlocks.put(block);
+            block = freeBlocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing", e);
+        }
+    }
+
+    /**
+     * Writes the remaining patterns, waits for the end of the writing and closes the file
+     *
+     * @throws IOException if error while writing the file
+     */
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (block.position() > 0) fullBlocks.put(block);
+            fullBlocks.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            throw new IOException("Interrupted while writing", e);
+        } finally {
+            channel.close();
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * A pattern to be written, with its support and the ids of the sequences containing it. Its line in
+     * the text format is encoded to ASCII bytes when it is first written. A Line is reused for all the
+     * patterns written by a thread.
+     */
+    public static final class Line {
+
+        private static final byte[] SUPPORT = {'#', 'S', 'U', 'P', ':', ' '};
+        private static final byte[] SEQUENCE_IDS = {' ', '#', 'S', 'I', 'D', ':', ' '};
+
+        /**
+         * The items of the pattern, with -1 after each itemset
+         */
+        private int[] tokens = new int[16];
+        private int tokenCount = 0;
+        private int support;
+        private SequenceIDSet sequenceIDs;
+
+        /**
+         * The ids of the sequences, copied from their set when the line is encoded
+         */
+        private int[] ids = new int[16];
+
+        /**
+         * The bytes of the line in the text format, if encoded is true
+         */
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private boolean encoded = false;
+
+        /**
+         * Sets the pattern. A -1 is added after the last itemset if it is missing.
+         *
+         * @param pattern     the items of the pattern, with -1 after each itemset (except possibly the last one)
+         * @param count       the number of tokens
+         * @param support     the support of the pattern
+         * @param sequenceIDs the ids of the sequences containing the pattern (or null if they are not written)
+         * @return this line
+         */
+        public Line set(int[] pattern, int count, int support, SequenceIDSet sequenceIDs) {
+            if (tokens.length < count + 1) tokens = new int[Math.max(count + 1, 2 * tokens.length)];
+            System.arraycopy(pattern, 0, tokens, 0, count);
+            tokenCount = count;
+            if (tokens[count - 1] != -1) tokens[tokenCount++] = -1;
+            return set(support, sequenceIDs);
+        }
+
+        /**
+         * Sets a pattern containing a single item
+         *
+         * @param item        the item
+         * @param support     the support of the pattern
+         * @param sequenceIDs the ids of the sequences containing the pattern (or null if they are not written)
+         * @return this line
+         */
+        public Line set(int item, int support, SequenceIDSet sequenceIDs) {
+            tokens[0] = item;
+            tokens[1] = -1;
+            tokenCount = 2;
+            return set(support, sequenceIDs);
+        }
+
+        private Line set(int support, SequenceIDSet sequenceIDs) {
+            this.support = support;
+            this.sequenceIDs = sequenceIDs;
+            encoded = false;
+            return this;
+        }
+
+        /**
+         * Encodes the line in the text format, if it is not encoded yet
+         */
+        private void encode() {
+            if (encoded) return;
+            length = 0;
+            for (int i = 0; i < tokenCount; i++) appendWithSpace(tokens[i]);
+            append(SUPPORT);
+            append(support);
+            if (sequenceIDs != null) {
+                append(SEQUENCE_IDS);
+                if (ids.length < sequenceIDs.getCardinality()) ids = new int[Math.max(sequenceIDs.getCardinality(), 2 * ids.length)];
+                int count = sequenceIDs.copyTo(ids);
+                for (int i = 0; i < count; i++) appendWithSpace(ids[i]);
+            }
+            append(LINE_SEPARATOR);
+            encoded = true;
+        }
+
+        /**
+         * Appends the decimal representation of an integer
+         *
+         * @param value the integer
+         */
+        private void append(int value) {
+            ensureCapacity(12);
+            if (value < 0) {
+                if (value == Integer.MIN_VALUE) {
+                    append(Integer.toString(value).getBytes());
+                    return;
+                }
+                bytes[length++] = '-';
+                value = -value;
+            }
+            int end = length + digitCount(value);
+            length = end;
+            do {
+                int quotient = value / 10;
+                bytes[--end] = (byte) ('0' + value - 10 * quotient);
+                value = quotient;
+            } while (value > 0);
+        }
+
+        private void appendWithSpace(int value) {
+            append(value);
+            bytes[length++] = ' ';
+        }
+
+        /**
+         * Appends ASCII characters
+         *
+         * @param ascii the characters
+         */
+        private void append(byte[] ascii) {
+            ensureCapacity(ascii.length);
+            System.arraycopy(ascii, 0, bytes, length, ascii.length);
+            length += ascii.length;
+        }
+
+        @Override
+        public String toString() {
+            encode();
+            return new String(bytes, 0, length);
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > bytes.length) {
+                byte[] larger = new byte[Math.max(2 * bytes.length, length + count)];
+                System.arraycopy(bytes, 0, larger, 0, length);
+                bytes = larger;
+            }
+        }
+
+        private static int digitCount(int value) {
+            int count = 1;
+            for (int limit = 10; value >= limit && count < 10; limit *= 10) count++;
+            return count;
+        }
+    }
+}
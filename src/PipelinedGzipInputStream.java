@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class reads a gzip-compressed file. The file is decompressed by a separate thread, that puts blocks of
+ * decompressed bytes in a bounded queue, so that the decompression of the next blocks is overlapped with the
+ * processing of the current one by the thread that reads this stream.
+ */
+public class PipelinedGzipInputStream extends InputStream {
+
+    /**
+     * The number of decompressed bytes in a block
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The maximum number of decompressed blocks waiting to be read
+     */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * The block that indicates the end of the file
+     */
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread decompressor;
+    private volatile IOException error = null;
+    private byte[] block = new byte[0];
+    private int position = 0;
+    private boolean finished = false;
+
+    /**
+     * Opens a gzip-compressed file and starts its decompression
+     *
+     * @param file the file
+     * @throws IOException if error while opening the file, or if it is not in gzip format
+     */
+    public PipelinedGzipInputStream(File file) throws IOException {
+        final InputStream input = new GZIPInputStream(new FileInputStream(file), 1 << 16);
+        decompressor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    try {
+                        while (true) {
+                            byte[] buffer = new byte[BLOCK_SIZE];
+                            int length = 0;
+                            int read;
+                            while (length < BLOCK_SIZE && (read = input.read(buffer, length, BLOCK_SIZE - length)) >= 0) {
+                                length += read;
+                            }
+                            if (length > 0) queue.put(length == BLOCK_SIZE ? buffer : Arrays.copyOf(buffer, length));
+                            if (length < BLOCK_SIZE) break;
+                        }
+                    } catch (IOException e) {
+                        // the error is thrown to the reader after the blocks decompressed before it
+                        error = e;
+                    }
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    // the stream was closed before the end of the file
+                } finally {
+                    try {
+                        input.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "gzip-" + file.getName());
+        decompressor.setDaemon(true);
+        decompressor.start();
+    }
+
+    /**
+     * Takes the next decompressed block from the queue
+     *
+     * @return false if the end of the file has been reached
+     * @throws IOException if error while decompressing the file
+     */
+    private boolean nextBlock() throws IOException {
+        if (finished) return false;
+        try {
+            block = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing", e);
+        }
+        position = 0;
+        if (block == END) {
+            finished = true;
+            if (error != null) throw error;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.length && !nextBlock()) return -1;
+        return block[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == block.length && !nextBlock()) return -1;
+        int count = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        decompressor.interrupt();
+    }
+}
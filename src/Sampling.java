@@ -16,7 +16,9 @@ public class Sampling {
         long timeSampleCreation;
         long timeMiningSample;
         long start = System.currentTimeMillis();
-        int[] sizes = Algorithms.computeSampleSize(dataset, epsilon, delta);
+        // the dataset is read only once, and its profile is computed while it is loaded
+        SequenceDatabase database = Algorithms.loadDataset(dataset, false);
+        int[] sizes = Algorithms.computeSampleSize(database.getProfile(), epsilon, delta);
         timeSampleSize = System.currentTimeMillis() - start;
         int datasetSize = sizes[0];
         int sampleSize = sizes[1];
@@ -48,10 +50,11 @@ public class Sampling {
         System.out.println("Sample File: " + sampleFile);
         System.out.println("Output File: " + outputFile);
         start = System.currentTimeMillis();
-        Algorithms.createSample(dataset, datasetSize, sampleFile, sampleSize, System.currentTimeMillis());
+        SequenceDatabase sample = Algorithms.createSample(database, sampleFile, sampleSize, System.currentTimeMillis());
+        database = null;
         timeSampleCreation = System.currentTimeMillis() - start;
         start = System.currentTimeMillis();
-        int numFSP = Algorithms.mining(sampleFile, outputFile, newTheta);
+        int numFSP = Algorithms.mining(sample, outputFile, newTheta);
         timeMiningSample = System.currentTimeMillis() - start;
         System.out.println("FSP Founds: " + numFSP);
         System.out.println("Time Sample Size Computation: " + timeSampleSize + "ms");
@@ -16,78 +16,623 @@
 * You should have received a copy of the GNU General Public License along with
 * SPMF. If not, see <http://www.gnu.org/licenses/>.
 */
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
 /**
  * Implementation of a sequence database, where each sequence is implemented
  * as a list of integers and should have a unique id.
+ * The sequences are stored in a compressed sparse row layout: the tokens of all
+ * the sequences are stored one after the other in a single array, and the
+ * sequence with id i occupies the positions from getSequenceStart(i) (included) to
+ * getSequenceEnd(i) (excluded) of this array. The array is accessed through a 
+ * TokenStore, which can keep it off the heap.
 *
 * @see Sequence
  * @author Philipe-Fournier-Viger
  */
 public class SequenceDatabase {
 
-	/** a matrix to store the sequences in this database */
-	protected List<int[]> sequences = new ArrayList<int[]>();
+	/** the tokens of all the sequences in this database (items, -1 and -2) */
+	protected TokenStore tokens = TokenStore.allocate(0);
+	
+	/** the number of positions used in the array of tokens while loading the file */
+	protected int tokenCount = 0;
+	
+	/** the position of the first token of each sequence in the array of tokens.
+	 * The position at index sequenceCount is the end of the last sequence. */
+	protected int[] sequenceStarts = new int[1];
+	
+	/** the number of sequences in this database */
+	protected int sequenceCount = 0;
 
 	/** the total number of item occurrences in this database
 	 * (variable to be used for statistics) */
 	protected long itemOccurrenceCount = 0;
 	
+	/** the statistics of the sequences of the input file, computed while it is loaded */
+	protected DatasetProfile profile = new DatasetProfile();
+	
+	/** the items of this database, in the order of their first occurrence
+	 * (null if the item index has not been built) */
+	protected int[] indexedItems = null;
+	
+	/** the position of the first sequence id of each indexed item in the array of
+	 * sequence ids, followed by the position after the last sequence id */
+	protected int[] indexedItemStarts = null;
+	
+	/** for each indexed item, the ids of the sequences containing the item in increasing order */
+	protected int[] indexedSequenceIDs = null;
+	
+	/** the weight of each sequence, which is its number of occurrences in the input file
+	 * (null if the identical sequences have not been merged) */
+	protected int[] sequenceWeights = null;
+	
+	/** the position of the first id of each sequence in the array of ids of the
+	 * sequences of the input file, followed by the position after the last id */
+	protected int[] originalIDStarts = null;
+	
+	/** for each sequence, the ids of the identical sequences of the input file in increasing order */
+	protected int[] originalIDs = null;
+	
+	/** boolean indicating whether this database contains itemsets with multiple items or not */
+	protected boolean containsItemsetsWithMultipleItems = false;
+	
+	/** the number of threads used to parse the input file (0 to choose it
+	 * depending on the size of the file) */
+	protected int loadingThreadCount = 0;
+	
+	/** if true, the tokens are stored off the heap */
+	protected boolean useOffHeapStorage = false;
+	
+	/** if true, the tokens are compressed */
+	protected boolean useCompressedStorage = false;
+	
+	/** the number of ranges of the input file parsed by each thread, to balance the work */
+	private static final int RANGES_PER_THREAD = 4;
+	
+	/** the maximum number of bytes of the input file that are mapped in memory at once */
+	private static final int MAPPING_WINDOW_SIZE = 1 << 28;
+	
+	/** the size of the buffer used to parse a file that cannot be mapped in memory */
+	private static final int STREAM_BUFFER_SIZE = 1 << 20;
+
 	/**
 	 * Method to load a sequence database from a text file in SPMF format.
+	 * The file is memory-mapped and the integers are parsed directly from
+	 * the bytes of each line into the array of tokens, so that no String 
+	 * is created while reading. Large files are split in ranges of lines that are
+	 * parsed in parallel, and then concatenated in their original order, so that
+	 * the sequence ids are the line numbers as with a sequential parsing.
+	 * A gzip-compressed file (with the extension .gz) is decompressed by a separate
+	 * thread and parsed as it is decompressed. The profile of the dataset is computed
+	 * while its lines are parsed.
 	 * @param path  the input file path.
 	 * @throws IOException exception if error while reading the file.
 	 */
 	public void loadFile(String path) throws IOException {
+		parseFile(path);
+	}
+	
+	/**
+	 * Parse a text file in SPMF format (see loadFile(String)). If the file cannot be read
+	 * or a line cannot be parsed, the error is printed and the sequences parsed before it are kept.
+	 * @param path  the input file path.
+	 * @return true if the whole file was parsed, false if an error occurred.
+	 * @throws IOException exception if error while closing the file.
+	 */
+	private boolean parseFile(String path) throws IOException {
 		// initialize the variable to calculate the total number of item occurrence
 		itemOccurrenceCount = 0;
-		// initalize the list of arrays for storing sequences
-		sequences = new ArrayList<int[]>();
+		// the item index and the weights of a previous file are not valid anymore
+		sequenceWeights = null;
+		originalIDStarts = null;
+		originalIDs = null;
+		indexedItems = null;
+		indexedItemStarts = null;
+		indexedSequenceIDs = null;
+		containsItemsetsWithMultipleItems = false;
+		
+		// a compressed file is decompressed by another thread while it is parsed
+		if (FileChunks.isCompressed(path)) {
+			ParsedRange range = new ParsedRange(0, 0);
+			InputStream input = null;
+			try {
+				input = FileChunks.open(path);
+				range.parse(input);
+				range.store(useOffHeapStorage, useCompressedStorage);
+				if (range.error != null) {
+					throw range.error;
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				return false;
+			} finally {
+				concatenate(new ParsedRange[]{range});
+				if (input != null) {
+					input.close();
+				}
+			}
+			return true;
+		}
 		
-		String thisLine; // variable to read each line.
-		BufferedReader myInput = null;
+		FileInputStream fin = null;
+		ParsedRange[] ranges = new ParsedRange[0];
 		try {
-			FileInputStream fin = new FileInputStream(new File(path));
-			myInput = new BufferedReader(new InputStreamReader(fin));
-			while ((thisLine = myInput.readLine()) != null) {
-				// if the line is not a comment, is not empty or is not other
-				// kind of metadata
-				if (thisLine.isEmpty() == false &&
-						thisLine.charAt(0) != '#' && thisLine.charAt(0) != '%'
-						&& thisLine.charAt(0) != '@') {
-					
-					// split this line according to spaces and process the line
-					String[] tokens = thisLine.split(" ");
-					
-					// we will store the sequence as a list of integers in memory
-					int[] sequence = new int[tokens.length];
-					// we convert each token from the line to an integer and add it
-					// to the array representing the current sequence.
-					for(int j=0; j < tokens.length; j++){
-						sequence[j] = Integer.parseInt(tokens[j]);
+			fin = new FileInputStream(new File(path));
+			final FileChannel channel = fin.getChannel();
+			int threadCount = loadingThreadCount > 0 ? loadingThreadCount 
+					: FileChunks.defaultThreadCount(channel.size());
+			
+			// split the file in ranges of lines
+			final long[] bounds = FileChunks.split(channel, threadCount == 1 ? 1 : threadCount * RANGES_PER_THREAD);
+			ranges = new ParsedRange[bounds.length - 1];
+			for (int i = 0; i < ranges.length; i++) {
+				ranges[i] = new ParsedRange(bounds[i], bounds[i + 1]);
+			}
+			
+			// parse each range
+			final boolean offHeap = useOffHeapStorage;
+			final boolean compressed = useCompressedStorage;
+			if (threadCount == 1) {
+				ranges[0].parse(channel, path);
+				ranges[0].store(offHeap, compressed);
+			} else {
+				ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+				try {
+					List<Future<?>> futures = new ArrayList<Future<?>>();
+					for (final ParsedRange range : ranges) {
+						final String file = path;
+						futures.add(executor.submit(new Runnable() {
+							public void run() {
+								range.parse(channel, file);
+								range.store(offHeap, compressed);
+							}
+						}));
 					}
-					
-					// add the sequence to the list of sequences
-					sequences.add(sequence);
+					for (Future<?> future : futures) {
+						future.get();
+					}
+				} finally {
+					executor.shutdown();
+				}
+			}
+			
+			// if a line could not be parsed, the sequences after it are ignored
+			for (ParsedRange range : ranges) {
+				if (range.error != null) {
+					throw range.error;
 				}
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
+			return false;
 		} finally {
-			if (myInput != null) {
-				myInput.close();
+			concatenate(ranges);
+			if (fin != null) {
+				fin.close();
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Method to compute the profile of a text file in SPMF format without loading it.
+	 * The lines are parsed one at a time, as by loadFile(), but only the statistics of
+	 * the sequences are kept, so that the size and the s-bound of a dataset can be 
+	 * computed with a small heap.
+	 * @param path  the input file path.
+	 * @return the profile of the sequences before the first line that cannot be parsed, if any
+	 * @throws IOException exception if error while reading the file.
+	 * @see DatasetProfile
+	 */
+	public static DatasetProfile loadProfile(String path) throws IOException {
+		ParsedRange range = new ParsedRange(0, 0, false);
+		InputStream input = null;
+		try {
+			input = FileChunks.open(path);
+			range.parse(input);
+			if (range.error != null) {
+				throw range.error;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (input != null) {
+				input.close();
+			}
+		}
+		return range.profile;
+	}
+	
+	/**
+	 * Concatenate the sequences parsed from the ranges of the input file, until
+	 * the first range where an error occurred.
+	 * @param ranges the ranges of the input file, in their order in the file
+	 */
+	private void concatenate(ParsedRange[] ranges) {
+		// count the sequences and the tokens
+		int rangeCount = 0;
+		long totalTokenCount = 0;
+		int totalSequenceCount = 0;
+		while (rangeCount < ranges.length && ranges[rangeCount] != null) {
+			totalTokenCount += ranges[rangeCount].tokenCount;
+			totalSequenceCount += ranges[rangeCount].sequenceCount;
+			rangeCount++;
+			if (ranges[rangeCount - 1].error != null) {
+				break;
+			}
+		}
+		if (totalTokenCount > Integer.MAX_VALUE - 8) {
+			throw new OutOfMemoryError("Too many tokens in the sequence database: " + totalTokenCount);
+		}
+		
+		// merge the profiles of the ranges
+		profile = new DatasetProfile();
+		for (int i = 0; i < rangeCount; i++) {
+			profile.merge(ranges[i].profile);
+		}
+		itemOccurrenceCount = profile.getItemOccurrenceCount();
+		
+		// if there is a single range, its arrays are used directly
+		if (rangeCount > 0 && ranges[0].compressedTokens != null) {
+			// the compressed tokens of the ranges are concatenated
+			CompressedTokenStore[] stores = new CompressedTokenStore[rangeCount];
+			for (int i = 0; i < rangeCount; i++) {
+				stores[i] = ranges[i].compressedTokens;
+			}
+			tokens = rangeCount == 1 ? stores[0] : CompressedTokenStore.concatenate(stores, rangeCount);
+			sequenceStarts = new int[totalSequenceCount + 1];
+			int tokenPosition = 0;
+			int sequencePosition = 0;
+			for (int i = 0; i < rangeCount; i++) {
+				for (int j = 0; j < ranges[i].sequenceCount; j++) {
+					sequenceStarts[sequencePosition++] = ranges[i].sequenceStarts[j] + tokenPosition;
+				}
+				tokenPosition += ranges[i].tokenCount;
+				ranges[i] = null;
+			}
+		} else if (rangeCount == 1) {
+			ParsedRange range = ranges[0];
+			tokens = range.offHeapTokens != null ? range.offHeapTokens 
+					: TokenStore.wrap(Arrays.copyOf(range.tokens, range.tokenCount));
+			sequenceStarts = Arrays.copyOf(range.sequenceStarts, range.sequenceCount + 1);
+		} else {
+			MutableTokenStore allTokens = useOffHeapStorage ? TokenStore.allocateDirect((int) totalTokenCount)
+					: TokenStore.allocate((int) totalTokenCount);
+			tokens = allTokens;
+			sequenceStarts = new int[totalSequenceCount + 1];
+			int tokenPosition = 0;
+			int sequencePosition = 0;
+			for (int i = 0; i < rangeCount; i++) {
+				ParsedRange range = ranges[i];
+				if (range.offHeapTokens != null) {
+					allTokens.put(tokenPosition, range.offHeapTokens);
+				} else {
+					allTokens.put(tokenPosition, range.tokens, 0, range.tokenCount);
+				}
+				for (int j = 0; j < range.sequenceCount; j++) {
+					sequenceStarts[sequencePosition++] = range.sequenceStarts[j] + tokenPosition;
+				}
+				tokenPosition += range.tokenCount;
+				// release the memory of this range
+				ranges[i] = null;
+			}
+		}
+		tokenCount = (int) totalTokenCount;
+		sequenceCount = totalSequenceCount;
+		sequenceStarts[sequenceCount] = tokenCount;
+	}
+	
+	/**
+	 * Method to load a sequence database from a text file in SPMF format, using 
+	 * the binary cache file of the dataset if it is up to date. Otherwise, the text 
+	 * file is parsed, the item index is built, and they are saved in a new cache file
+	 * so that the next runs on the same dataset do not need to parse it again. The cache 
+	 * file is not saved if the text file could not be parsed entirely, and an error while 
+	 * saving it is printed, as the database is loaded anyway.
+	 * @param path  the input file path.
+	 * @param useCache true if the cache file of the dataset should be used.
+	 * @throws IOException exception if error while reading the file.
+	 * @see SequenceDatabaseCache
+	 */
+	public void loadFile(String path, boolean useCache) throws IOException {
+		if (useCache && SequenceDatabaseCache.load(path, this)) {
+			sequenceWeights = null;
+			originalIDStarts = null;
+			originalIDs = null;
+			return;
+		}
+		if (parseFile(path) && useCache) {
+			buildItemIndex();
+			try {
+				SequenceDatabaseCache.save(path, this);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
 		}
 	}
+	
+	/**
+	 * Set the number of threads used to parse the input file.
+	 * @param loadingThreadCount the number of threads, or 0 to use a single thread
+	 *                           for small files and all the available processors otherwise.
+	 */
+	public void setLoadingThreadCount(int loadingThreadCount) {
+		this.loadingThreadCount = loadingThreadCount;
+	}
+	
+	/**
+	 * Set that the tokens of the sequences should be compressed (true) or not (false)
+	 * when the next file is loaded. The compressed tokens are stored on the heap, even
+	 * if the off-heap storage is used.
+	 * @param useCompressedStorage true or false
+	 * @see CompressedTokenStore
+	 */
+	public void setUseCompressedStorage(boolean useCompressedStorage) {
+		this.useCompressedStorage = useCompressedStorage;
+	}
+	
+	/**
+	 * Set that the tokens of the sequences should be stored off the heap (true) or
+	 * on the heap (false) when the next file is loaded. Off the heap, the tokens are 
+	 * stored in direct buffers, or in the cache file mapped in memory if it is used.
+	 * @param useOffHeapStorage true or false
+	 * @see TokenStore
+	 */
+	public void setUseOffHeapStorage(boolean useOffHeapStorage) {
+		this.useOffHeapStorage = useOffHeapStorage;
+	}
+	
+	/**
+	 * This class represents a range of lines of the input file, and the sequences
+	 * that are parsed from it.
+	 */
+	private static class ParsedRange {
+		/** the position of the first byte of the range in the file */
+		final long start;
+		/** the position after the last byte of the range in the file */
+		final long end;
+		/** the tokens of the sequences of this range */
+		int[] tokens;
+		/** the tokens of the sequences of this range, once they are moved off the heap */
+		MutableTokenStore offHeapTokens = null;
+		/** the tokens of the sequences of this range, once they are compressed */
+		CompressedTokenStore compressedTokens = null;
+		/** the number of positions used in the array of tokens */
+		int tokenCount = 0;
+		/** the position of the first token of each sequence in the array of tokens */
+		int[] sequenceStarts = new int[1024];
+		/** the number of sequences in this range */
+		int sequenceCount = 0;
+		/** the statistics of the sequences of this range */
+		final DatasetProfile profile = new DatasetProfile();
+		/** false if only the statistics of the sequences are kept, and not their tokens */
+		final boolean keepSequences;
+		/** the error that stopped the parsing of this range, if any */
+		Exception error = null;
+		
+		/**
+		 * Constructor
+		 * @param start the position of the first byte of the range in the file
+		 * @param end the position after the last byte of the range in the file
+		 */
+		ParsedRange(long start, long end) {
+			this(start, end, true);
+		}
+		
+		/**
+		 * Constructor
+		 * @param start the position of the first byte of the range in the file
+		 * @param end the position after the last byte of the range in the file
+		 * @param keepSequences false if only the statistics of the sequences should be kept.
+		 *        Then the array of tokens only holds the sequence being parsed.
+		 */
+		ParsedRange(long start, long end, boolean keepSequences) {
+			this.start = start;
+			this.end = end;
+			this.keepSequences = keepSequences;
+			// A token takes at least two bytes in the file, and usually more.
+			tokens = new int[keepSequences ? (int) Math.min(Integer.MAX_VALUE - 8, (end - start) / 4 + 16) : 1024];
+		}
+		
+		/**
+		 * Compress the tokens of this range or move them off the heap, to release the
+		 * memory of the array of tokens before the other ranges are parsed.
+		 * @param offHeap true if the tokens should be moved off the heap
+		 * @param compressed true if the tokens should be compressed
+		 */
+		void store(boolean offHeap, boolean compressed) {
+			if (compressed) {
+				compressedTokens = CompressedTokenStore.encode(tokens, tokenCount, sequenceStarts, sequenceCount);
+				tokens = null;
+			} else if (offHeap) {
+				offHeapTokens = TokenStore.allocateDirect(tokenCount);
+				offHeapTokens.put(0, tokens, 0, tokenCount);
+				tokens = null;
+			}
+		}
+		
+		/**
+		 * Parse the lines of this range. If an error occurs, it is saved and
+		 * the sequences parsed before it are kept.
+		 * @param channel the channel of the input file
+		 * @param path the input file path
+		 */
+		void parse(FileChannel channel, String path) {
+			try {
+				// the range is mapped by windows that always start at the beginning of a line
+				long windowStart = start;
+				while (windowStart < end) {
+					long windowSize = Math.min(MAPPING_WINDOW_SIZE, end - windowStart);
+					MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+					boolean isLastWindow = windowStart + windowSize == end;
+					
+					// find the end of the last complete line of this window
+					int limit = (int) windowSize;
+					if (!isLastWindow) {
+						while (limit > 0 && window.get(limit - 1) != '\n') {
+							limit--;
+						}
+						if (limit == 0) {
+							throw new IOException("Line longer than " + MAPPING_WINDOW_SIZE
+									+ " bytes at offset " + windowStart + " of " + path);
+						}
+					}
+					parseLines(window, limit);
+					windowStart += limit;
+				}
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+		
+		/**
+		 * Parse the lines read from an input stream. If an error occurs, it is saved and
+		 * the sequences parsed before it are kept.
+		 * @param input the input stream
+		 */
+		void parse(InputStream input) {
+			try {
+				byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+				int length = 0;
+				int read;
+				while ((read = input.read(buffer, length, buffer.length - length)) >= 0) {
+					length += read;
+					// find the end of the last complete line in the buffer
+					int limit = length;
+					while (limit > 0 && buffer[limit - 1] != '\n') {
+						limit--;
+					}
+					if (limit == 0) {
+						// the buffer contains a part of a line, which may be longer than the buffer
+						if (length == buffer.length) {
+							buffer = Arrays.copyOf(buffer, buffer.length * 2);
+						}
+						continue;
+					}
+					parseLines(ByteBuffer.wrap(buffer), limit);
+					// keep the beginning of the next line
+					System.arraycopy(buffer, limit, buffer, 0, length - limit);
+					length -= limit;
+				}
+				// the last line of the file may not end with a line separator
+				parseLines(ByteBuffer.wrap(buffer), length);
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+		
+		/**
+		 * Parse the lines stored in the bytes [0, limit) of a buffer and add a sequence
+		 * to this range for each line that is not a comment, is not empty or is not other
+		 * kind of metadata.
+		 * @param buffer the buffer containing the text
+		 * @param limit the position after the last byte to be parsed
+		 */
+		private void parseLines(ByteBuffer buffer, int limit) {
+			int position = 0;
+			while (position < limit) {
+				byte first = buffer.get(position);
+				// if the line is a comment, is empty or is other kind of metadata, we skip it
+				if (first == '\n' || first == '\r' || first == '#' || first == '%' || first == '@') {
+					while (position < limit && buffer.get(position) != '\n') {
+						position++;
+					}
+					position++;
+					continue;
+				}
+				
+				// remember where the current sequence starts
+				int sequenceStart = tokenCount;
+				
+				// we convert each token from the line to an integer and add it
+				// to the array of tokens.
+				int value = 0;
+				boolean negative = false;
+				boolean inToken = false;
+				try {
+					while (position < limit) {
+						byte b = buffer.get(position++);
+						if (b >= '0' && b <= '9') {
+							int digit = b - '0';
+							// a token that does not fit in an int is rejected, as by Integer.parseInt
+							if (value > (Integer.MAX_VALUE - digit) / 10) {
+								throw new NumberFormatException("Token out of the range of int in a sequence");
+							}
+							value = value * 10 + digit;
+							inToken = true;
+						} else if (b == '-' && !inToken && !negative) {
+							negative = true;
+						} else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+							// end of a token
+							if (inToken) {
+								addToken(negative ? -value : value);
+							} else if (negative) {
+								throw new NumberFormatException("For input string: \"-\"");
+							}
+							value = 0;
+							negative = false;
+							inToken = false;
+							if (b == '\n') {
+								break;
+							}
+						} else {
+							throw new NumberFormatException("Unexpected character '" + (char) b
+									+ "' in a sequence");
+						}
+					}
+				} catch (NumberFormatException e) {
+					// the line that cannot be parsed is not added
+					tokenCount = sequenceStart;
+					throw e;
+				}
+				// the last line of the file may not end with a line separator
+				if (inToken) {
+					addToken(negative ? -value : value);
+				}
+				
+				// add the sequence to this range
+				profile.addSequence(tokens, sequenceStart, tokenCount);
+				if (!keepSequences) {
+					tokenCount = sequenceStart;
+					continue;
+				}
+				if (sequenceCount + 1 == sequenceStarts.length) {
+					sequenceStarts = Arrays.copyOf(sequenceStarts, sequenceStarts.length * 2);
+				}
+				sequenceStarts[sequenceCount++] = sequenceStart;
+			}
+		}
+		
+		/**
+		 * Append a token to the array of tokens, enlarging it if it is full.
+		 * @param token the token
+		 */
+		private void addToken(int token) {
+			if (tokenCount == tokens.length) {
+				tokens = Arrays.copyOf(tokens, (int) Math.min(Integer.MAX_VALUE - 8, tokens.length * 3L / 2 + 16));
+			}
+			tokens[tokenCount++] = token;
+		}
+	}
 		
 	/**
 	 * Print this sequence database to System.out.
@@ -102,11 +647,21 @@ public class SequenceDatabase {
 	 */
 	public void printDatabaseStats() {
 		System.out.println("============  STATS ==========");
-		System.out.println("Number of sequences : " + sequences.size());
+		System.out.println("Number of sequences : " + sequenceCount);
 		
 		// Calculate the average size of sequences in this database
-		double meansize = ((float)itemOccurrenceCount) / ((float)sequences.size());
+		double meansize = ((float)itemOccurrenceCount) / ((float)sequenceCount);
 		System.out.println("mean size" + meansize);
+		System.out.println(profile);
+		
+		// if the tokens are compressed, print the compression ratio and the speed of the decoder
+		if (tokens instanceof CompressedTokenStore) {
+			CompressedTokenStore store = (CompressedTokenStore) tokens;
+			System.out.println("Compressed size (bytes) : " + store.getCompressedSize()
+					+ " for " + store.size() + " tokens");
+			System.out.println("Compression ratio : " + store.getCompressionRatio());
+			System.out.println("Decoding speed (tokens/s) : " + store.measureDecodeThroughput());
+		}
 	}
 
 	/**
@@ -116,17 +671,15 @@ public class SequenceDatabase {
 		StringBuilder buffer = new StringBuilder();
 
 		// for each sequence
-		for (int i=0; i < sequences.size(); i++) { 
+		for (int i=0; i < sequenceCount; i++) { 
 			buffer.append(i + ":  ");
 			
-			// get that sequence
-			int[] sequence = sequences.get(i);
-			
 			// for each token in that sequence (items, or separators between items)
 			// we will print it in a human-readable way
 			
 			boolean startingANewItemset = true;
-			for(int token : sequence){
+			for(int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++){
+				int token = tokens.get(j);
 				// if it is an item
 				if(token >=0){
 					// if this is a new itemset, we start with a parenthesis
@@ -139,9 +692,6 @@ public class SequenceDatabase {
 					}
 					// then we print the item
 					buffer.append(token);
-					
-					// increase the number of item occurrences for statistics
-					itemOccurrenceCount++;
 				}else if(token == -1){
 					// if it is an itemset separator
 					buffer.append(")");
@@ -165,15 +715,407 @@ public class SequenceDatabase {
 	 * @return the sequence count.
 	 */
 	public int size() {
-		return sequences.size();
+		return sequenceCount;
+	}
+	
+	/**
+	 * Get the statistics of the sequences of the input file. They do not change
+	 * when the identical sequences are merged.
+	 * @return the profile of the dataset.
+	 */
+	public DatasetProfile getProfile() {
+		return profile;
+	}
+	
+	/**
+	 * Create a new database that contains some sequences of this database, for example
+	 * a random sample of it. The tokens of the new database are stored on the heap.
+	 * @param sequenceIDs the ids of the sequences, in the order of the new database.
+	 *                    An id can be repeated to add the same sequence several times.
+	 * @return the new database.
+	 */
+	public SequenceDatabase subset(int[] sequenceIDs) {
+		long totalTokenCount = 0;
+		for (int sequenceID : sequenceIDs) {
+			totalTokenCount += sequenceStarts[sequenceID + 1] - sequenceStarts[sequenceID];
+		}
+		if (totalTokenCount > Integer.MAX_VALUE - 8) {
+			throw new OutOfMemoryError("Too many tokens in the sequence database: " + totalTokenCount);
+		}
+		int[] newTokens = new int[(int) totalTokenCount];
+		SequenceDatabase database = new SequenceDatabase();
+		database.sequenceStarts = new int[sequenceIDs.length + 1];
+		int position = 0;
+		for (int i = 0; i < sequenceIDs.length; i++) {
+			int start = sequenceStarts[sequenceIDs[i]];
+			int length = sequenceStarts[sequenceIDs[i] + 1] - start;
+			tokens.get(start, newTokens, position, length);
+			database.sequenceStarts[i] = position;
+			database.profile.addSequence(newTokens, position, position + length);
+			position += length;
+		}
+		database.tokens = TokenStore.wrap(newTokens);
+		database.tokenCount = position;
+		database.sequenceCount = sequenceIDs.length;
+		database.sequenceStarts[sequenceIDs.length] = position;
+		database.itemOccurrenceCount = database.profile.getItemOccurrenceCount();
+		return database;
+	}
+	
+	/**
+	 * Save the sequences of this database to a text file in SPMF format, one
+	 * sequence per line.
+	 * @param path the output file path.
+	 * @throws IOException exception if error while writing the file.
+	 */
+	public void saveFile(String path) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+		try {
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < sequenceCount; i++) {
+				line.setLength(0);
+				for (int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++) {
+					if (j > sequenceStarts[i]) {
+						line.append(' ');
+					}
+					line.append(tokens.get(j));
+				}
+				line.append('\n');
+				writer.write(line.toString());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Get the store containing the tokens of all the sequences of this database.
+	 * @return the store of tokens in SPMF format.
+	 */
+	public TokenStore getTokens() {
+		return tokens;
+	}
+	
+	/**
+	 * Get the position of the first token of a sequence in the array of tokens.
+	 * @param sequenceID the sequence id
+	 * @return the position
+	 */
+	public int getSequenceStart(int sequenceID) {
+		return sequenceStarts[sequenceID];
+	}
+	
+	/**
+	 * Get the position after the last token of a sequence in the array of tokens.
+	 * @param sequenceID the sequence id
+	 * @return the position
+	 */
+	public int getSequenceEnd(int sequenceID) {
+		return sequenceStarts[sequenceID + 1];
+	}
+	
+	/**
+	 * Get a copy of a sequence of this database.
+	 * @param sequenceID the sequence id
+	 * @return the sequence (int[]) in SPMF format.
+	 */
+	public int[] getSequence(int sequenceID) {
+		int[] sequence = new int[sequenceStarts[sequenceID + 1] - sequenceStarts[sequenceID]];
+		tokens.get(sequenceStarts[sequenceID], sequence, 0, sequence.length);
+		return sequence;
+	}
+	
+	/**
+	 * For each item, calculate the ids of the sequences containing that item, and
+	 * check whether this database contains itemsets with multiple items. 
+	 * This is the first scan of the database that is done by PrefixSpan.
+	 */
+	public void buildItemIndex() {
+		// We use a map to store the position of each item in the arrays of the index
+		// Key : item   Value :  the position of the item
+		IntIntHashMap mapItemPosition = new IntIntHashMap();
+		int[] items = new int[16];
+		// the number of sequences containing each item and the last one that was counted
+		int[] supports = new int[16];
+		int[] lastSequenceIDs = new int[16];
+		containsItemsetsWithMultipleItems = false;
+		
+		// first, we count the sequences containing each item
+		for (int i = 0; i < sequenceCount; i++) {
+			// number of items in the current itemset 
+			int itemCountInCurrentItemset = 0;
+			for (int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++) {
+				int token = tokens.get(j);
+				// if it is an item
+				if (token > 0) {
+					int position = mapItemPosition.get(token, -1);
+					if (position == -1) {
+						position = mapItemPosition.size();
+						mapItemPosition.put(token, position);
+						if (position == items.length) {
+							items = Arrays.copyOf(items, items.length * 2);
+							supports = Arrays.copyOf(supports, supports.length * 2);
+							lastSequenceIDs = Arrays.copyOf(lastSequenceIDs, lastSequenceIDs.length * 2);
+						}
+						items[position] = token;
+						lastSequenceIDs[position] = -1;
+					}
+					// count the sequence if it was not already counted for this item
+					if (lastSequenceIDs[position] != i) {
+						lastSequenceIDs[position] = i;
+						supports[position]++;
+					}
+					itemCountInCurrentItemset++;
+					// if this itemset contains more than 1 item, we will remember that this database
+					// contains sequence with multiple items for optimization purpose.
+					if (itemCountInCurrentItemset > 1) {
+						containsItemsetsWithMultipleItems = true;
+					}
+				} else if (token == -1) {
+					itemCountInCurrentItemset = 0;
+				}
+			}
+		}
+		
+		// then, we reserve the space for the sequence ids of each item
+		int itemCount = mapItemPosition.size();
+		indexedItems = Arrays.copyOf(items, itemCount);
+		indexedItemStarts = new int[itemCount + 1];
+		for (int k = 0; k < itemCount; k++) {
+			indexedItemStarts[k + 1] = indexedItemStarts[k] + supports[k];
+		}
+		
+		// finally, we store the sequence ids of each item
+		indexedSequenceIDs = new int[indexedItemStarts[itemCount]];
+		// the next free position for each item
+		int[] nextPositions = Arrays.copyOf(indexedItemStarts, itemCount);
+		Arrays.fill(lastSequenceIDs, -1);
+		for (int i = 0; i < sequenceCount; i++) {
+			for (int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++) {
+				int token = tokens.get(j);
+				if (token > 0) {
+					int position = mapItemPosition.get(token, -1);
+					if (lastSequenceIDs[position] != i) {
+						lastSequenceIDs[position] = i;
+						indexedSequenceIDs[nextPositions[position]++] = i;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Check if the item index of this database has been built or loaded.
+	 * @return true if the item index is available.
+	 */
+	public boolean hasItemIndex() {
+		return indexedItems != null;
+	}
+	
+	/**
+	 * Get the number of distinct items in the item index.
+	 * @return the number of items.
+	 */
+	public int getIndexedItemCount() {
+		return indexedItems.length;
+	}
+	
+	/**
+	 * Get an item of the item index.
+	 * @param position the position of the item in the index
+	 * @return the item.
+	 */
+	public int getIndexedItem(int position) {
+		return indexedItems[position];
+	}
+	
+	/**
+	 * Get the ids of the sequences containing an item of the item index.
+	 * @param position the position of the item in the index
+	 * @return a read-only list of sequence ids in increasing order.
+	 */
+	public List<Integer> getSequenceIDsOfIndexedItem(final int position) {
+		final int start = indexedItemStarts[position];
+		final int size = indexedItemStarts[position + 1] - start;
+		return new AbstractList<Integer>() {
+			public Integer get(int index) {
+				return indexedSequenceIDs[start + index];
+			}
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	/**
+	 * Check whether this database contains itemsets with multiple items.
+	 * The item index must have been built.
+	 * @return true if an itemset contains more than one item.
+	 */
+	public boolean containsItemsetsWithMultipleItems() {
+		return containsItemsetsWithMultipleItems;
+	}
+	
+	/**
+	 * Merge the identical sequences of this database, so that each distinct sequence
+	 * is stored once, with a weight that is its number of occurrences. The distinct 
+	 * sequences keep the order of their first occurrence, and the ids of the identical
+	 * sequences of the input file are kept. If the item index has been built, 
+	 * it is built again.
+	 */
+	public void deduplicate() {
+		if (sequenceWeights != null) {
+			return;
+		}
+		// the hash table of the distinct sequences, with linear probing. 
+		// It contains the id of the first occurrence of each distinct sequence (or -1).
+		int capacity = Integer.highestOneBit(Math.max(1, sequenceCount)) * 4;
+		int[] table = new int[capacity];
+		Arrays.fill(table, -1);
+		int[] hashes = new int[sequenceCount];
+		// for each sequence, the id of the distinct sequence in the new database
+		int[] distinctIDs = new int[sequenceCount];
+		int distinctCount = 0;
+		for (int i = 0; i < sequenceCount; i++) {
+			int hash = 1;
+			for (int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++) {
+				hash = 31 * hash + tokens.get(j);
+			}
+			hashes[i] = hash;
+			int slot = (hash ^ (hash >>> 16)) * 0x9E3779B9 & (capacity - 1);
+			while (table[slot] != -1 && (hashes[table[slot]] != hash || !isSameSequence(table[slot], i))) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			if (table[slot] == -1) {
+				table[slot] = i;
+				distinctIDs[i] = distinctCount++;
+			} else {
+				distinctIDs[i] = distinctIDs[table[slot]];
+			}
+		}
+		table = null;
+		hashes = null;
+		if (distinctCount == sequenceCount) {
+			return;
+		}
+		
+		// count the occurrences of each distinct sequence and keep their ids
+		sequenceWeights = new int[distinctCount];
+		for (int i = 0; i < sequenceCount; i++) {
+			sequenceWeights[distinctIDs[i]]++;
+		}
+		originalIDStarts = new int[distinctCount + 1];
+		for (int k = 0; k < distinctCount; k++) {
+			originalIDStarts[k + 1] = originalIDStarts[k] + sequenceWeights[k];
+		}
+		originalIDs = new int[sequenceCount];
+		int[] nextPositions = Arrays.copyOf(originalIDStarts, distinctCount);
+		for (int i = 0; i < sequenceCount; i++) {
+			originalIDs[nextPositions[distinctIDs[i]]++] = i;
+		}
+		
+		// keep the first occurrence of each distinct sequence
+		int[] distinctStarts = new int[distinctCount + 1];
+		TokenStore.Writer writer = tokens.rewrite();
+		int position = 0;
+		for (int i = 0; i < sequenceCount; i++) {
+			int k = distinctIDs[i];
+			if (originalIDs[originalIDStarts[k]] == i) {
+				distinctStarts[k] = position;
+				writer.startSequence();
+				for (int j = sequenceStarts[i]; j < sequenceStarts[i + 1]; j++) {
+					writer.write(tokens.get(j));
+					position++;
+				}
+			}
+		}
+		writer.finish();
+		distinctStarts[distinctCount] = position;
+		sequenceStarts = distinctStarts;
+		sequenceCount = distinctCount;
+		tokenCount = position;
+		
+		// the item index is not valid anymore
+		if (indexedItems != null) {
+			buildItemIndex();
+		}
+	}
+	
+	/**
+	 * Check if two sequences of this database are identical.
+	 * @param first the id of the first sequence
+	 * @param second the id of the second sequence
+	 * @return true if they contain the same tokens.
+	 */
+	private boolean isSameSequence(int first, int second) {
+		int length = sequenceStarts[first + 1] - sequenceStarts[first];
+		if (length != sequenceStarts[second + 1] - sequenceStarts[second]) {
+			return false;
+		}
+		for (int j = 0; j < length; j++) {
+			if (tokens.get(sequenceStarts[first] + j) != tokens.get(sequenceStarts[second] + j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Check if the identical sequences of this database have been merged.
+	 * @return true if the sequences have weights.
+	 */
+	public boolean isDeduplicated() {
+		return sequenceWeights != null;
+	}
+	
+	/**
+	 * Get the weight of each sequence, which is its number of occurrences in the input file.
+	 * @return the array of weights, or null if the identical sequences have not been merged
+	 *         (all the weights are 1).
+	 */
+	public int[] getSequenceWeights() {
+		return sequenceWeights;
+	}
+	
+	/**
+	 * Get the number of sequences of the input file, which is the sum of the weights
+	 * of the sequences.
+	 * @return the number of sequences.
+	 */
+	public int getTotalWeight() {
+		return sequenceWeights == null ? sequenceCount : originalIDs.length;
+	}
+	
+	/**
+	 * Get the ids of the sequences of the input file that are identical to a sequence.
+	 * @param sequenceID the sequence id
+	 * @return a read-only list of sequence ids of the input file in increasing order.
+	 */
+	public List<Integer> getOriginalSequenceIDs(int sequenceID) {
+		if (sequenceWeights == null) {
+			return Collections.singletonList(sequenceID);
+		}
+		final int start = originalIDStarts[sequenceID];
+		final int size = originalIDStarts[sequenceID + 1] - start;
+		return new AbstractList<Integer>() {
+			public Integer get(int index) {
+				return originalIDs[start + index];
+			}
+			public int size() {
+				return size;
+			}
+		};
 	}
 	
 	/**
-	 * Get the sequences from this sequence database.
-	 * @return A list of sequences (int[]) in SPMF format.
+	 * Get the array containing the position of the first token of each sequence
+	 * in the array of tokens, followed by the position after the last sequence.
+	 * It can be modified together with the array of tokens to shrink the
+	 * sequences, as long as the sequence ids are not modified.
+	 * @return the array of positions.
 	 */
-	public List<int[]> getSequences() {
-		return sequences;
+	public int[] getSequenceStarts() {
+		return sequenceStarts;
 	}
 
 }
@@ -0,0 +1,335 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads and writes the binary cache file of a sequence database.
+ * The cache file of a dataset is stored next to it, with the same name followed by
+ * the extension ".cache". It contains the arrays of tokens and sequence starts of the
+ * database, its item index, its profile and the flag indicating whether it contains itemsets 
+ * with multiple items, so that a run on a dataset that was already loaded only needs to
+ * map the cache file in memory instead of parsing the text file and scanning it.
+ * If the database stores its tokens off the heap, they are not copied: the part of the 
+ * cache file containing them stays mapped in memory.
+ * <br/><br/>
+ * The cache file starts with a header of HEADER_SIZE bytes containing the length, 
+ * the last modification time and a checksum of the first and last bytes of the text file.
+ * The cache file is ignored if any of them does not match the text file.
+ *
+ * @see SequenceDatabase
+ */
+public class SequenceDatabaseCache {
+
+	/** the extension of the cache file of a dataset */
+	public static final String EXTENSION = ".cache";
+	
+	/** the first bytes of a cache file */
+	private static final int MAGIC = 0x53504d43;
+	
+	/** the version of the format of the cache file */
+	private static final int VERSION = 2;
+	
+	/** the size of the header of the cache file in bytes */
+	private static final int HEADER_SIZE = 64;
+	
+	/** the number of bytes at the beginning and at the end of the text file used for the checksum */
+	private static final int CHECKSUM_SAMPLE_SIZE = 1 << 16;
+	
+	/** the maximum number of bytes of the cache file that are mapped in memory at once */
+	private static final int MAPPING_WINDOW_SIZE = 1 << 28;
+	
+	/** the size of the buffer used to write the cache file */
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Load a sequence database from the cache file of a dataset, if it exists and 
+	 * is up to date.
+	 * @param path the path of the text file of the dataset
+	 * @param database the sequence database where the dataset is loaded
+	 * @return true if the database was loaded from the cache file, false otherwise.
+	 * @throws IOException exception if error while reading the text file.
+	 */
+	public static boolean load(String path, SequenceDatabase database) throws IOException {
+		File source = new File(path);
+		File cache = new File(path + EXTENSION);
+		if (!cache.isFile() || !source.isFile()) {
+			return false;
+		}
+		RandomAccessFile file = null;
+		try {
+			// the tokens of the database are modified by PrefixSpan, so the cache file is mapped
+			// in private mode if they are stored off the heap, which requires a writable file
+			boolean mapTokens = database.useOffHeapStorage && !database.useCompressedStorage && cache.canWrite();
+			file = new RandomAccessFile(cache, mapTokens ? "rw" : "r");
+			FileChannel channel = file.getChannel();
+			if (channel.size() < HEADER_SIZE) {
+				return false;
+			}
+			
+			// check that the cache file corresponds to the current text file
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION
+					|| header.getLong() != source.length()
+					|| header.getLong() != source.lastModified()
+					|| header.getLong() != checksum(source)) {
+				return false;
+			}
+			int sequenceCount = header.getInt();
+			int tokenCount = header.getInt();
+			int flags = header.getInt();
+			int itemCount = header.getInt();
+			int indexSize = header.getInt();
+			int profileSize = header.getInt();
+			long expectedSize = HEADER_SIZE + 4L * (sequenceCount + 1 + tokenCount 
+					+ itemCount + itemCount + 1 + indexSize) + profileSize;
+			if (channel.size() != expectedSize) {
+				return false;
+			}
+			
+			// read the arrays of the database
+			long offset = HEADER_SIZE;
+			int[] sequenceStarts = new int[sequenceCount + 1];
+			offset = readInts(channel, offset, sequenceStarts);
+			TokenStore tokens;
+			if (mapTokens) {
+				tokens = TokenStore.map(channel, FileChannel.MapMode.PRIVATE, offset, tokenCount, ByteOrder.BIG_ENDIAN);
+				offset += 4L * tokenCount;
+			} else if (database.useOffHeapStorage && !database.useCompressedStorage) {
+				MutableTokenStore offHeapTokens = TokenStore.allocateDirect(tokenCount);
+				offHeapTokens.put(0, TokenStore.map(channel, FileChannel.MapMode.READ_ONLY, offset, tokenCount, ByteOrder.BIG_ENDIAN));
+				tokens = offHeapTokens;
+				offset += 4L * tokenCount;
+			} else {
+				int[] array = new int[tokenCount];
+				offset = readInts(channel, offset, array);
+				tokens = database.useCompressedStorage 
+						? CompressedTokenStore.encode(array, tokenCount, sequenceStarts, sequenceCount)
+						: TokenStore.wrap(array);
+			}
+			int[] indexedItems = new int[itemCount];
+			offset = readInts(channel, offset, indexedItems);
+			int[] indexedItemStarts = new int[itemCount + 1];
+			offset = readInts(channel, offset, indexedItemStarts);
+			int[] indexedSequenceIDs = new int[indexSize];
+			offset = readInts(channel, offset, indexedSequenceIDs);
+			byte[] profileBytes = new byte[profileSize];
+			channel.map(FileChannel.MapMode.READ_ONLY, offset, profileSize).get(profileBytes);
+			DatasetProfile profile = DatasetProfile.read(new DataInputStream(new ByteArrayInputStream(profileBytes)));
+			
+			database.sequenceStarts = sequenceStarts;
+			database.sequenceCount = sequenceCount;
+			database.tokens = tokens;
+			database.tokenCount = tokenCount;
+			database.profile = profile;
+			database.itemOccurrenceCount = profile.getItemOccurrenceCount();
+			database.indexedItems = indexedItems;
+			database.indexedItemStarts = indexedItemStarts;
+			database.indexedSequenceIDs = indexedSequenceIDs;
+			database.containsItemsetsWithMultipleItems = (flags & 1) != 0;
+			return true;
+		} catch (IOException e) {
+			// the cache file cannot be read, the text file will be parsed instead
+			return false;
+		} finally {
+			if (file != null) {
+				file.close();
+			}
+		}
+	}
+	
+	/**
+	 * Save a sequence database in the cache file of a dataset. The item index of the
+	 * database must have been built. The file is first written with a temporary name,
+	 * so that a partially written cache file is never used, and the temporary file is
+	 * deleted if an error occurs.
+	 * @param path the path of the text file of the dataset
+	 * @param database the sequence database loaded from the text file
+	 * @throws IOException exception if error while writing the file.
+	 */
+	public static void save(String path, SequenceDatabase database) throws IOException {
+		File source = new File(path);
+		File cache = new File(path + EXTENSION);
+		File temporary = new File(path + EXTENSION + ".tmp");
+		int sequenceCount = database.size();
+		int tokenCount = database.sequenceStarts[sequenceCount];
+		int itemCount = database.indexedItems.length;
+		int indexSize = database.indexedSequenceIDs.length;
+		ByteArrayOutputStream profileBytes = new ByteArrayOutputStream();
+		database.profile.write(new DataOutputStream(profileBytes));
+		
+		RandomAccessFile file = null;
+		boolean saved = false;
+		try {
+			file = new RandomAccessFile(temporary, "rw");
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+			
+			// write the header
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(source.length());
+			buffer.putLong(source.lastModified());
+			buffer.putLong(checksum(source));
+			buffer.putInt(sequenceCount);
+			buffer.putInt(tokenCount);
+			buffer.putInt(database.containsItemsetsWithMultipleItems ? 1 : 0);
+			buffer.putInt(itemCount);
+			buffer.putInt(indexSize);
+			buffer.putInt(profileBytes.size());
+			while (buffer.position() < HEADER_SIZE) {
+				buffer.put((byte) 0);
+			}
+			
+			// write the arrays of the database
+			writeInts(channel, buffer, database.sequenceStarts, sequenceCount + 1);
+			writeInts(channel, buffer, database.tokens, tokenCount);
+			writeInts(channel, buffer, database.indexedItems, itemCount);
+			writeInts(channel, buffer, database.indexedItemStarts, itemCount + 1);
+			writeInts(channel, buffer, database.indexedSequenceIDs, indexSize);
+			writeBytes(channel, buffer, profileBytes.toByteArray());
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			file.close();
+			file = null;
+			Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			saved = true;
+		} finally {
+			if (file != null) {
+				file.close();
+			}
+			// a partially written cache file is not kept
+			if (!saved) {
+				temporary.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Read an array of integers from a file, by mapping it in memory.
+	 * @param channel the channel of the file
+	 * @param offset the position of the first integer in the file
+	 * @param array the array where the integers are stored
+	 * @return the position after the last integer in the file
+	 * @throws IOException exception if error while reading the file.
+	 */
+	private static long readInts(FileChannel channel, long offset, int[] array) throws IOException {
+		int read = 0;
+		while (read < array.length) {
+			int count = Math.min(array.length - read, MAPPING_WINDOW_SIZE / 4);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * count);
+			window.asIntBuffer().get(array, read, count);
+			read += count;
+			offset += 4L * count;
+		}
+		return offset;
+	}
+	
+	/**
+	 * Write the tokens of a store to a file, through a buffer that is written
+	 * to the file each time it is full.
+	 * @param channel the channel of the file
+	 * @param buffer the buffer
+	 * @param tokens the store
+	 * @param count the number of tokens to write
+	 * @throws IOException exception if error while writing the file.
+	 */
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, TokenStore tokens, int count) throws IOException {
+		int[] array = new int[Math.min(count, WRITE_BUFFER_SIZE / 4)];
+		for (int written = 0; written < count; written += array.length) {
+			int length = Math.min(array.length, count - written);
+			tokens.get(written, array, 0, length);
+			writeInts(channel, buffer, array, length);
+		}
+	}
+	
+	/**
+	 * Write an array of integers to a file, through a buffer that is written
+	 * to the file each time it is full.
+	 * @param channel the channel of the file
+	 * @param buffer the buffer
+	 * @param array the array of integers
+	 * @param count the number of integers to write
+	 * @throws IOException exception if error while writing the file.
+	 */
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] array, int count) throws IOException {
+		int written = 0;
+		while (written < count) {
+			if (buffer.remaining() < 4) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				buffer.clear();
+			}
+			IntBuffer ints = buffer.asIntBuffer();
+			int length = Math.min(count - written, ints.remaining());
+			ints.put(array, written, length);
+			buffer.position(buffer.position() + 4 * length);
+			written += length;
+		}
+	}
+	
+	/**
+	 * Write an array of bytes to a file, through a buffer that is written
+	 * to the file each time it is full.
+	 * @param channel the channel of the file
+	 * @param buffer the buffer
+	 * @param array the array of bytes
+	 * @throws IOException exception if error while writing the file.
+	 */
+	private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] array) throws IOException {
+		int written = 0;
+		while (written < array.length) {
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				buffer.clear();
+			}
+			int length = Math.min(array.length - written, buffer.remaining());
+			buffer.put(array, written, length);
+			written += length;
+		}
+	}
+	
+	/**
+	 * Calculate a checksum of the first and last bytes of a file.
+	 * @param file the file
+	 * @return the checksum
+	 * @throws IOException exception if error while reading the file.
+	 */
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			long length = input.length();
+			byte[] sample = new byte[(int) Math.min(length, CHECKSUM_SAMPLE_SIZE)];
+			input.readFully(sample);
+			crc.update(sample);
+			if (length > CHECKSUM_SAMPLE_SIZE) {
+				input.seek(length - sample.length);
+				input.readFully(sample);
+				crc.update(sample);
+			}
+		} finally {
+			input.close();
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,807 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of ids of sequences, compressed as a Roaring bitmap (Chambi et al., "Better bitmap 
+ * performance with Roaring bitmaps", 2016). The ids are grouped by their 16 high bits, and 
+ * the 16 low bits of the ids of a group (a container) are kept in a sorted array if there are
+ * at most 4096 of them, or in a bitmap of 2^16 bits otherwise. So an id takes at most 2 bytes, 
+ * and the ids of a dense group take 1 bit for each possible id, instead of the 16 bytes 
+ * of an Integer in a list.
+ * <br/><br/>
+ * The sets are immutable, and they are built with a SequenceIDSet.Builder. The intersection 
+ * and the union of two sets, and the size of the intersection, are computed container by container:
+ * by merging the arrays, by looking up the values of an array in a bitmap, or with bitwise 
+ * operations on the words of the bitmaps. The containers that are not changed by an operation 
+ * are shared by its result.
+ * <br/><br/>
+ * A set can be encoded to bytes, as in the binary pattern files of PatternWriter. Each container 
+ * is encoded as the differences between its consecutive values or as the words of its bitmap 
+ * that are not before the first id or after the last one, whichever is smaller.
+ *
+ * @see PatternWriter
+ */
+public class SequenceIDSet {
+	
+	/** the maximum number of ids of a container kept in an array */
+	static final int MAX_ARRAY_SIZE = 4096;
+	
+	/** the number of words of the bitmap of a container */
+	private static final int BITMAP_WORDS = 1 << 10;
+	
+	/** the set without ids */
+	public static final SequenceIDSet EMPTY = new SequenceIDSet(new char[0], new char[0][], new long[0][], new int[0], 0);
+	
+	/** the 16 high bits of the ids of each container, in increasing order */
+	private final char[] keys;
+	
+	/** the 16 low bits of the ids of each container kept in an array, in increasing order (null for a bitmap) */
+	private final char[][] arrays;
+	
+	/** the bitmap of each container with more than MAX_ARRAY_SIZE ids (null for an array) */
+	private final long[][] bitmaps;
+	
+	/** the number of ids of each container */
+	private final int[] cardinalities;
+	
+	/** the number of ids of the set */
+	private final int cardinality;
+	
+	private SequenceIDSet(char[] keys, char[][] arrays, long[][] bitmaps, int[] cardinalities, int cardinality) {
+		this.keys = keys;
+		this.arrays = arrays;
+		this.bitmaps = bitmaps;
+		this.cardinalities = cardinalities;
+		this.cardinality = cardinality;
+	}
+	
+	/**
+	 * Create a set from ids.
+	 * @param ids the ids, in increasing order (with no duplicates)
+	 * @param count the number of ids
+	 * @return the set
+	 */
+	public static SequenceIDSet of(int[] ids, int count) {
+		// count the containers
+		int containerCount = 0;
+		for(int i = 0; i < count; i++){
+			if(i == 0 || (ids[i] >>> 16) != (ids[i - 1] >>> 16)){
+				containerCount++;
+			}
+		}
+		char[] keys = new char[containerCount];
+		char[][] arrays = new char[containerCount][];
+		long[][] bitmaps = new long[containerCount][];
+		int[] cardinalities = new int[containerCount];
+		int start = 0;
+		for(int c = 0; c < containerCount; c++){
+			int key = ids[start] >>> 16;
+			int end = start + 1;
+			while(end < count && (ids[end] >>> 16) == key){
+				end++;
+			}
+			keys[c] = (char) key;
+			cardinalities[c] = end - start;
+			if(end - start <= MAX_ARRAY_SIZE){
+				char[] array = new char[end - start];
+				for(int i = start; i < end; i++){
+					array[i - start] = (char) ids[i];
+				}
+				arrays[c] = array;
+			}else{
+				long[] bitmap = new long[BITMAP_WORDS];
+				for(int i = start; i < end; i++){
+					int low = ids[i] & 0xffff;
+					bitmap[low >>> 6] |= 1L << low;
+				}
+				bitmaps[c] = bitmap;
+			}
+			start = end;
+		}
+		return new SequenceIDSet(keys, arrays, bitmaps, cardinalities, count);
+	}
+	
+	/**
+	 * Create a set from ids.
+	 * @param ids the ids, in any order
+	 * @return the set
+	 */
+	public static SequenceIDSet of(List<Integer> ids) {
+		Builder builder = new Builder();
+		for(int id : ids){
+			builder.add(id);
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Get the number of ids of this set.
+	 * @return the number of ids
+	 */
+	public int getCardinality() {
+		return cardinality;
+	}
+	
+	/**
+	 * Check if this set contains an id.
+	 * @param id the id
+	 * @return true if it is in the set
+	 */
+	public boolean contains(int id) {
+		int c = Arrays.binarySearch(keys, (char) (id >>> 16));
+		if(c < 0){
+			return false;
+		}
+		if(arrays[c] != null){
+			return Arrays.binarySearch(arrays[c], (char) id) >= 0;
+		}
+		return (bitmaps[c][(id & 0xffff) >>> 6] & (1L << id)) != 0;
+	}
+	
+	/**
+	 * Compute the intersection of this set and another set.
+	 * @param other the other set
+	 * @return the ids that are in both sets
+	 */
+	public SequenceIDSet and(SequenceIDSet other) {
+		int maxCount = Math.min(keys.length, other.keys.length);
+		char[] newKeys = new char[maxCount];
+		char[][] newArrays = new char[maxCount][];
+		long[][] newBitmaps = new long[maxCount][];
+		int[] newCardinalities = new int[maxCount];
+		int count = 0;
+		int total = 0;
+		int i = 0;
+		int j = 0;
+		while(i < keys.length && j < other.keys.length){
+			if(keys[i] < other.keys[j]){
+				i++;
+			}else if(keys[i] > other.keys[j]){
+				j++;
+			}else{
+				char[] array = null;
+				long[] bitmap = null;
+				if(arrays[i] != null && other.arrays[j] != null){
+					array = and(arrays[i], other.arrays[j]);
+				}else if(arrays[i] != null){
+					array = and(arrays[i], other.bitmaps[j]);
+				}else if(other.arrays[j] != null){
+					array = and(other.arrays[j], bitmaps[i]);
+				}else{
+					bitmap = new long[BITMAP_WORDS];
+					for(int w = 0; w < BITMAP_WORDS; w++){
+						bitmap[w] = bitmaps[i][w] & other.bitmaps[j][w];
+					}
+				}
+				int size = array != null ? array.length : cardinality(bitmap);
+				if(size > 0){
+					newKeys[count] = keys[i];
+					newCardinalities[count] = size;
+					if(bitmap != null && size <= MAX_ARRAY_SIZE){
+						newArrays[count] = toArray(bitmap, size);
+					}else{
+						newArrays[count] = array;
+						newBitmaps[count] = bitmap;
+					}
+					count++;
+					total += size;
+				}
+				i++;
+				j++;
+			}
+		}
+		return create(newKeys, newArrays, newBitmaps, newCardinalities, count, total);
+	}
+	
+	/**
+	 * Compute the number of ids that are in this set and in another set, without building 
+	 * their intersection.
+	 * @param other the other set
+	 * @return the number of ids in both sets
+	 */
+	public int andCardinality(SequenceIDSet other) {
+		int total = 0;
+		int i = 0;
+		int j = 0;
+		while(i < keys.length && j < other.keys.length){
+			if(keys[i] < other.keys[j]){
+				i++;
+			}else if(keys[i] > other.keys[j]){
+				j++;
+			}else{
+				if(arrays[i] != null && other.arrays[j] != null){
+					total += andCardinality(arrays[i], other.arrays[j]);
+				}else if(arrays[i] != null){
+					total += andCardinality(arrays[i], other.bitmaps[j]);
+				}else if(other.arrays[j] != null){
+					total += andCardinality(other.arrays[j], bitmaps[i]);
+				}else{
+					for(int w = 0; w < BITMAP_WORDS; w++){
+						total += Long.bitCount(bitmaps[i][w] & other.bitmaps[j][w]);
+					}
+				}
+				i++;
+				j++;
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * Compute the union of this set and another set.
+	 * @param other the other set
+	 * @return the ids that are in at least one of the sets
+	 */
+	public SequenceIDSet or(SequenceIDSet other) {
+		int maxCount = keys.length + other.keys.length;
+		char[] newKeys = new char[maxCount];
+		char[][] newArrays = new char[maxCount][];
+		long[][] newBitmaps = new long[maxCount][];
+		int[] newCardinalities = new int[maxCount];
+		int count = 0;
+		int total = 0;
+		int i = 0;
+		int j = 0;
+		while(i < keys.length || j < other.keys.length){
+			// the containers of a single set are shared
+			if(j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])){
+				newKeys[count] = keys[i];
+				newArrays[count] = arrays[i];
+				newBitmaps[count] = bitmaps[i];
+				newCardinalities[count] = cardinalities[i];
+				i++;
+			}else if(i == keys.length || keys[i] > other.keys[j]){
+				newKeys[count] = other.keys[j];
+				newArrays[count] = other.arrays[j];
+				newBitmaps[count] = other.bitmaps[j];
+				newCardinalities[count] = other.cardinalities[j];
+				j++;
+			}else{
+				newKeys[count] = keys[i];
+				if(arrays[i] != null && other.arrays[j] != null){
+					char[] array = or(arrays[i], other.arrays[j]);
+					if(array.length <= MAX_ARRAY_SIZE){
+						newArrays[count] = array;
+					}else{
+						newBitmaps[count] = toBitmap(array);
+					}
+					newCardinalities[count] = array.length;
+				}else{
+					long[] bitmap;
+					if(bitmaps[i] != null && other.bitmaps[j] != null){
+						bitmap = new long[BITMAP_WORDS];
+						for(int w = 0; w < BITMAP_WORDS; w++){
+							bitmap[w] = bitmaps[i][w] | other.bitmaps[j][w];
+						}
+					}else{
+						bitmap = (bitmaps[i] != null ? bitmaps[i] : other.bitmaps[j]).clone();
+						for(char low : arrays[i] != null ? arrays[i] : other.arrays[j]){
+							bitmap[low >>> 6] |= 1L << low;
+						}
+					}
+					newBitmaps[count] = bitmap;
+					newCardinalities[count] = cardinality(bitmap);
+				}
+				i++;
+				j++;
+			}
+			total += newCardinalities[count];
+			count++;
+		}
+		return create(newKeys, newArrays, newBitmaps, newCardinalities, count, total);
+	}
+	
+	/**
+	 * Copy the ids of this set to an array.
+	 * @param buffer the array, whose length must be at least the cardinality of the set
+	 * @return the number of ids copied, which is the cardinality of the set
+	 */
+	public int copyTo(int[] buffer) {
+		int position = 0;
+		for(int c = 0; c < keys.length; c++){
+			int high = keys[c] << 16;
+			if(arrays[c] != null){
+				for(char low : arrays[c]){
+					buffer[position++] = high | low;
+				}
+			}else{
+				long[] bitmap = bitmaps[c];
+				for(int w = 0; w < BITMAP_WORDS; w++){
+					long word = bitmap[w];
+					while(word != 0){
+						buffer[position++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+					}
+				}
+			}
+		}
+		return position;
+	}
+	
+	/**
+	 * Get the ids of this set.
+	 * @return the ids, in increasing order
+	 */
+	public int[] toArray() {
+		int[] ids = new int[cardinality];
+		copyTo(ids);
+		return ids;
+	}
+	
+	/**
+	 * Get the ids of this set as a list. The ids are copied to an array.
+	 * @return a read-only list of the ids, in increasing order
+	 */
+	public List<Integer> toList() {
+		final int[] ids = toArray();
+		return new AbstractList<Integer>() {
+			public Integer get(int index) {
+				return ids[index];
+			}
+			public int size() {
+				return ids.length;
+			}
+		};
+	}
+	
+	/**
+	 * Get an estimation of the memory used by this set.
+	 * @return the number of bytes
+	 */
+	public long getSizeInBytes() {
+		long size = 16 + 4 * 16 + 14 * keys.length;
+		for(int c = 0; c < keys.length; c++){
+			size += arrays[c] != null ? 16 + 2 * arrays[c].length : 16 + 8 * BITMAP_WORDS;
+		}
+		return size;
+	}
+	
+	/**
+	 * Get the maximum number of bytes of the encoding of this set (see encode()).
+	 * @return the number of bytes
+	 */
+	public int getMaxEncodedLength() {
+		int length = 5;
+		for(int c = 0; c < keys.length; c++){
+			length += 8 + Math.min(3 * cardinalities[c], 4 + 8 * BITMAP_WORDS);
+		}
+		return length;
+	}
+	
+	/**
+	 * Encode this set to bytes. The number of containers is followed by each container: its key,
+	 * then its cardinality times 2, plus 1 if its bitmap is encoded. The ids of a container are 
+	 * encoded either as the difference between each value and the previous one (the first one is
+	 * the difference with 0), or as the index of the first word of the bitmap that is not 0, the 
+	 * number of words until the last one that is not 0 and these words (8 bytes each, least 
+	 * significant first). The numbers are unsigned varints (7 bits per byte, least significant first).
+	 * @param buffer the array receiving the bytes, with at least getMaxEncodedLength() bytes after the offset
+	 * @param offset the position of the first byte in the array
+	 * @return the position after the last byte in the array
+	 */
+	public int encode(byte[] buffer, int offset) {
+		offset = putVarint(buffer, offset, keys.length);
+		for(int c = 0; c < keys.length; c++){
+			// the first and last words of the bitmap that are not 0
+			int firstWord;
+			int lastWord;
+			if(arrays[c] != null){
+				firstWord = arrays[c][0] >>> 6;
+				lastWord = arrays[c][arrays[c].length - 1] >>> 6;
+			}else{
+				firstWord = 0;
+				while(bitmaps[c][firstWord] == 0){
+					firstWord++;
+				}
+				lastWord = BITMAP_WORDS - 1;
+				while(bitmaps[c][lastWord] == 0){
+					lastWord--;
+				}
+			}
+			int bitmapLength = 4 + 8 * (lastWord - firstWord + 1);
+			// each difference takes at least one byte
+			boolean encodeBitmap = cardinalities[c] > bitmapLength 
+					|| (cardinalities[c] > bitmapLength / 3 && differencesLength(c) > bitmapLength);
+			offset = putVarint(buffer, offset, keys[c]);
+			offset = putVarint(buffer, offset, (cardinalities[c] << 1) | (encodeBitmap ? 1 : 0));
+			if(encodeBitmap){
+				long[] bitmap = arrays[c] != null ? toBitmap(arrays[c]) : bitmaps[c];
+				offset = putVarint(buffer, offset, firstWord);
+				offset = putVarint(buffer, offset, lastWord - firstWord + 1);
+				for(int w = firstWord; w <= lastWord; w++){
+					long word = bitmap[w];
+					for(int b = 0; b < 8; b++){
+						buffer[offset++] = (byte) (word >>> (8 * b));
+					}
+				}
+			}else if(arrays[c] != null){
+				int previous = 0;
+				for(char low : arrays[c]){
+					offset = putVarint(buffer, offset, low - previous);
+					previous = low;
+				}
+			}else{
+				int previous = 0;
+				for(int w = 0; w < BITMAP_WORDS; w++){
+					long word = bitmaps[c][w];
+					while(word != 0){
+						int low = (w << 6) | Long.numberOfTrailingZeros(word);
+						offset = putVarint(buffer, offset, low - previous);
+						previous = low;
+						word &= word - 1;
+					}
+				}
+			}
+		}
+		return offset;
+	}
+	
+	/**
+	 * Decode a set encoded by encode().
+	 * @param buffer the array containing the bytes
+	 * @param offset the position of the first byte in the array
+	 * @param length the number of bytes
+	 * @return the set
+	 * @throws IllegalArgumentException if the bytes are not a valid encoding
+	 */
+	public static SequenceIDSet decode(byte[] buffer, int offset, int length) {
+		int end = offset + length;
+		int[] position = {offset};
+		int count = getVarint(buffer, position, end);
+		if(count < 0 || count > 1 << 16){
+			throw new IllegalArgumentException("Invalid sequence id set");
+		}
+		char[] keys = new char[count];
+		char[][] arrays = new char[count][];
+		long[][] bitmaps = new long[count][];
+		int[] cardinalities = new int[count];
+		int total = 0;
+		for(int c = 0; c < count; c++){
+			keys[c] = (char) getVarint(buffer, position, end);
+			int header = getVarint(buffer, position, end);
+			int size = header >>> 1;
+			if(size == 0 || size > 1 << 16){
+				throw new IllegalArgumentException("Invalid sequence id set");
+			}
+			if((header & 1) != 0){
+				int firstWord = getVarint(buffer, position, end);
+				int wordCount = getVarint(buffer, position, end);
+				if(firstWord + wordCount > BITMAP_WORDS || position[0] + 8 * wordCount > end){
+					throw new IllegalArgumentException("Invalid sequence id set");
+				}
+				long[] bitmap = new long[BITMAP_WORDS];
+				for(int w = firstWord; w < firstWord + wordCount; w++){
+					long word = 0;
+					for(int b = 0; b < 8; b++){
+						word |= (buffer[position[0]++] & 0xffL) << (8 * b);
+					}
+					bitmap[w] = word;
+				}
+				if(size <= MAX_ARRAY_SIZE){
+					arrays[c] = toArray(bitmap, size);
+				}else{
+					bitmaps[c] = bitmap;
+				}
+			}else{
+				char[] array = new char[size];
+				int previous = 0;
+				for(int i = 0; i < size; i++){
+					previous += getVarint(buffer, position, end);
+					array[i] = (char) previous;
+				}
+				if(size <= MAX_ARRAY_SIZE){
+					arrays[c] = array;
+				}else{
+					bitmaps[c] = toBitmap(array);
+				}
+			}
+			cardinalities[c] = size;
+			total += size;
+		}
+		return new SequenceIDSet(keys, arrays, bitmaps, cardinalities, total);
+	}
+	
+	/**
+	 * Get the number of bytes of the differences between the consecutive ids of a container.
+	 * @param c the container
+	 * @return the number of bytes
+	 */
+	private int differencesLength(int c) {
+		int length = 0;
+		int previous = 0;
+		if(arrays[c] != null){
+			for(char low : arrays[c]){
+				length += varintLength(low - previous);
+				previous = low;
+			}
+			return length;
+		}
+		for(int w = 0; w < BITMAP_WORDS; w++){
+			long word = bitmaps[c][w];
+			while(word != 0){
+				int low = (w << 6) | Long.numberOfTrailingZeros(word);
+				length += varintLength(low - previous);
+				previous = low;
+				word &= word - 1;
+			}
+		}
+		return length;
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		if(object instanceof SequenceIDSet == false){
+			return false;
+		}
+		SequenceIDSet other = (SequenceIDSet) object;
+		if(cardinality != other.cardinality || Arrays.equals(keys, other.keys) == false){
+			return false;
+		}
+		for(int c = 0; c < keys.length; c++){
+			if(Arrays.equals(arrays[c], other.arrays[c]) == false 
+					|| Arrays.equals(bitmaps[c], other.bitmaps[c]) == false){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = cardinality;
+		for(int c = 0; c < keys.length; c++){
+			hash = 31 * hash + keys[c];
+			hash = 31 * hash + (arrays[c] != null ? Arrays.hashCode(arrays[c]) : Arrays.hashCode(bitmaps[c]));
+		}
+		return hash;
+	}
+	
+	/**
+	 * Get the ids of this set, separated by spaces.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder r = new StringBuilder();
+		for(int id : toArray()){
+			if(r.length() > 0){
+				r.append(' ');
+			}
+			r.append(id);
+		}
+		return r.toString();
+	}
+	
+	/**
+	 * Create a set from the first containers of arrays that may be larger.
+	 */
+	private static SequenceIDSet create(char[] keys, char[][] arrays, long[][] bitmaps, int[] cardinalities, int count, int total) {
+		if(count < keys.length){
+			keys = Arrays.copyOf(keys, count);
+			arrays = Arrays.copyOf(arrays, count);
+			bitmaps = Arrays.copyOf(bitmaps, count);
+			cardinalities = Arrays.copyOf(cardinalities, count);
+		}
+		return new SequenceIDSet(keys, arrays, bitmaps, cardinalities, total);
+	}
+	
+	/**
+	 * Intersect two sorted arrays. If one is much smaller, its values are looked up in 
+	 * the other one with a binary search instead of merging them.
+	 */
+	private static char[] and(char[] a, char[] b) {
+		if(a.length > b.length){
+			char[] swap = a;
+			a = b;
+			b = swap;
+		}
+		char[] result = new char[a.length];
+		int count = 0;
+		if(a.length * 16 < b.length){
+			int from = 0;
+			for(char value : a){
+				int index = Arrays.binarySearch(b, from, b.length, value);
+				if(index >= 0){
+					result[count++] = value;
+					from = index + 1;
+				}else{
+					from = -index - 1;
+				}
+			}
+		}else{
+			int i = 0;
+			int j = 0;
+			while(i < a.length && j < b.length){
+				if(a[i] < b[j]){
+					i++;
+				}else if(a[i] > b[j]){
+					j++;
+				}else{
+					result[count++] = a[i];
+					i++;
+					j++;
+				}
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+	
+	private static char[] and(char[] array, long[] bitmap) {
+		char[] result = new char[array.length];
+		int count = 0;
+		for(char value : array){
+			if((bitmap[value >>> 6] & (1L << value)) != 0){
+				result[count++] = value;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+	
+	private static int andCardinality(char[] a, char[] b) {
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length){
+			if(a[i] < b[j]){
+				i++;
+			}else if(a[i] > b[j]){
+				j++;
+			}else{
+				count++;
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+	
+	private static int andCardinality(char[] array, long[] bitmap) {
+		int count = 0;
+		for(char value : array){
+			if((bitmap[value >>> 6] & (1L << value)) != 0){
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Merge two sorted arrays.
+	 */
+	private static char[] or(char[] a, char[] b) {
+		char[] result = new char[a.length + b.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while(i < a.length && j < b.length){
+			if(a[i] < b[j]){
+				result[count++] = a[i++];
+			}else if(a[i] > b[j]){
+				result[count++] = b[j++];
+			}else{
+				result[count++] = a[i++];
+				j++;
+			}
+		}
+		while(i < a.length){
+			result[count++] = a[i++];
+		}
+		while(j < b.length){
+			result[count++] = b[j++];
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+	
+	private static int cardinality(long[] bitmap) {
+		int count = 0;
+		for(long word : bitmap){
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+	
+	private static char[] toArray(long[] bitmap, int cardinality) {
+		char[] array = new char[cardinality];
+		int count = 0;
+		for(int w = 0; w < BITMAP_WORDS; w++){
+			long word = bitmap[w];
+			while(word != 0){
+				array[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return array;
+	}
+	
+	private static long[] toBitmap(char[] array) {
+		long[] bitmap = new long[BITMAP_WORDS];
+		for(char value : array){
+			bitmap[value >>> 6] |= 1L << value;
+		}
+		return bitmap;
+	}
+	
+	private static int varintLength(int value) {
+		int length = 1;
+		while((value & ~0x7f) != 0){
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+	
+	private static int putVarint(byte[] buffer, int offset, int value) {
+		while((value & ~0x7f) != 0){
+			buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[offset++] = (byte) value;
+		return offset;
+	}
+	
+	private static int getVarint(byte[] buffer, int[] position, int end) {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			if(position[0] == end){
+				break;
+			}
+			int b = buffer[position[0]++];
+			value |= (b & 0x7f) << shift;
+			if(b >= 0){
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Invalid sequence id set");
+	}
+	
+	/**
+	 * This class builds a set from ids given in any order. It can be reused for several sets.
+	 */
+	public static final class Builder {
+		
+		/** the ids added since the last set was built */
+		private int[] ids = new int[64];
+		private int count = 0;
+		
+		/** true if the ids have been added in increasing order */
+		private boolean sorted = true;
+		
+		/**
+		 * Add an id to the next set.
+		 * @param id the id (not negative)
+		 * @return this builder
+		 */
+		public Builder add(int id) {
+			if(count == ids.length){
+				ids = Arrays.copyOf(ids, 2 * count);
+			}
+			if(count > 0 && ids[count - 1] >= id){
+				sorted = false;
+			}
+			ids[count++] = id;
+			return this;
+		}
+		
+		/**
+		 * Build the set of the ids added since the last set was built, and start the next set.
+		 * @return the set
+		 */
+		public SequenceIDSet build() {
+			if(sorted == false){
+				Arrays.sort(ids, 0, count);
+				// remove the duplicates
+				int distinct = 1;
+				for(int i = 1; i < count; i++){
+					if(ids[i] != ids[distinct - 1]){
+						ids[distinct++] = ids[i];
+					}
+				}
+				count = distinct;
+			}
+			SequenceIDSet set = count == 0 ? EMPTY : of(ids, count);
+			count = 0;
+			sorted = true;
+			return set;
+		}
+	}
+}
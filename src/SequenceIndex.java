@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * An index of the positions of the items in the long sequences of a sequence database.
+ * For each indexed sequence, it contains the distinct items of the sequence, in increasing
+ * order, and the positions of the occurrences of each item, in increasing order. It is 
+ * used to find the next occurrence of an item after a position without reading the 
+ * tokens between them, and to know if an item occurs after a position.
+ * The short sequences are not indexed, because they are read faster than they are looked up.
+ * <br/><br/>
+ * The index is built for the tokens of the sequences as they are mined, after the infrequent
+ * items have been removed, because the removal changes the positions of the items.
+ *
+ * @see AlgoPrefixSpan
+ */
+public class SequenceIndex {
+	
+	/** the default minimum number of tokens of a sequence to be indexed */
+	public static final int DEFAULT_MIN_INDEXED_LENGTH = 256;
+	
+	/** for each sequence, the position of its first distinct item in the array of items, 
+	 * followed by the number of items. A sequence is indexed if it has at least one item. */
+	private final int[] itemStarts;
+	
+	/** the distinct items of the indexed sequences */
+	private int[] items;
+	
+	/** for each distinct item of an indexed sequence, the position of its first occurrence 
+	 * in the array of occurrences, followed by the number of occurrences */
+	private int[] occurrenceStarts;
+	
+	/** the positions of the occurrences of the items in the array of tokens */
+	private int[] occurrences;
+	
+	/** the number of indexed sequences */
+	private int indexedSequenceCount = 0;
+	
+	/**
+	 * Build the index of the sequences that are long enough.
+	 * @param tokens the tokens of the sequences
+	 * @param sequenceStarts the position of the first token of each sequence, followed by the number of tokens
+	 * @param sequenceCount the number of sequences
+	 * @param minIndexedLength the minimum number of tokens of a sequence to be indexed
+	 */
+	public SequenceIndex(TokenStore tokens, int[] sequenceStarts, int sequenceCount, int minIndexedLength) {
+		itemStarts = new int[sequenceCount + 1];
+		items = new int[16];
+		occurrenceStarts = new int[17];
+		occurrences = new int[16];
+		int itemCount = 0;
+		int occurrenceCount = 0;
+		// the occurrences of the items of a sequence, as (item, position) sorted by item and position
+		long[] keys = new long[16];
+		for(int s = 0; s < sequenceCount; s++){
+			itemStarts[s] = itemCount;
+			int start = sequenceStarts[s];
+			int end = sequenceStarts[s + 1];
+			if(end - start < minIndexedLength){
+				continue;
+			}
+			// sort the occurrences of the items
+			int keyCount = 0;
+			for(int i = start; i < end; i++){
+				int token = tokens.get(i);
+				if(token > 0){
+					if(keyCount == keys.length){
+						keys = Arrays.copyOf(keys, keyCount * 2);
+					}
+					keys[keyCount++] = ((long) token << 32) | i;
+				}
+			}
+			if(keyCount == 0){
+				continue;
+			}
+			Arrays.sort(keys, 0, keyCount);
+			
+			// add the distinct items and their occurrences
+			if(occurrenceCount + keyCount > occurrences.length){
+				occurrences = Arrays.copyOf(occurrences, Math.max(occurrenceCount + keyCount, occurrences.length * 3 / 2));
+			}
+			for(int k = 0; k < keyCount; k++){
+				int item = (int) (keys[k] >>> 32);
+				if(itemCount == itemStarts[s] || items[itemCount - 1] != item){
+					if(itemCount == items.length){
+						items = Arrays.copyOf(items, itemCount * 2);
+						occurrenceStarts = Arrays.copyOf(occurrenceStarts, itemCount * 2 + 1);
+					}
+					items[itemCount] = item;
+					occurrenceStarts[itemCount] = occurrenceCount;
+					itemCount++;
+				}
+				occurrences[occurrenceCount++] = (int) keys[k];
+			}
+			occurrenceStarts[itemCount] = occurrenceCount;
+			indexedSequenceCount++;
+		}
+		itemStarts[sequenceCount] = itemCount;
+		items = Arrays.copyOf(items, itemCount);
+		occurrenceStarts = Arrays.copyOf(occurrenceStarts, itemCount + 1);
+		occurrences = Arrays.copyOf(occurrences, occurrenceCount);
+	}
+	
+	/**
+	 * Check if a sequence is indexed
+	 * @param sequenceID the id of the sequence
+	 * @return true if it is indexed
+	 */
+	public boolean isIndexed(int sequenceID) {
+		return itemStarts[sequenceID + 1] > itemStarts[sequenceID];
+	}
+	
+	/**
+	 * Get the number of indexed sequences
+	 * @return the number of sequences
+	 */
+	public int getIndexedSequenceCount() {
+		return indexedSequenceCount;
+	}
+	
+	/**
+	 * Get the number of distinct items of an indexed sequence
+	 * @param sequenceID the id of the sequence
+	 * @return the number of items
+	 */
+	public int getItemCount(int sequenceID) {
+		return itemStarts[sequenceID + 1] - itemStarts[sequenceID];
+	}
+	
+	/**
+	 * Find the next occurrence of an item in an indexed sequence
+	 * @param sequenceID the id of the sequence
+	 * @param item the item
+	 * @param position the position where the search starts in the array of tokens
+	 * @return the position of the first occurrence of the item that is not before the given 
+	 *         position, or -1 if there is none
+	 */
+	public int nextOccurrence(int sequenceID, int item, int position) {
+		int index = Arrays.binarySearch(items, itemStarts[sequenceID], itemStarts[sequenceID + 1], item);
+		if(index < 0){
+			return -1;
+		}
+		int end = occurrenceStarts[index + 1];
+		// most items occur once or a few times in a sequence
+		if(occurrences[end - 1] < position){
+			return -1;
+		}
+		int occurrence = Arrays.binarySearch(occurrences, occurrenceStarts[index], end, position);
+		return occurrences[occurrence >= 0 ? occurrence : -occurrence - 1];
+	}
+	
+	/**
+	 * Find the last occurrence of an item in an indexed sequence
+	 * @param sequenceID the id of the sequence
+	 * @param item the item
+	 * @return the position of the last occurrence of the item, or -1 if it does not occur
+	 */
+	public int lastOccurrence(int sequenceID, int item) {
+		int index = Arrays.binarySearch(items, itemStarts[sequenceID], itemStarts[sequenceID + 1], item);
+		return index < 0 ? -1 : occurrences[occurrenceStarts[index + 1] - 1];
+	}
+}
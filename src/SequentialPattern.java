@@ -34,7 +34,7 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 	private final List<Itemset> itemsets;
 	
 	// IDs of sequences containing this pattern
-	private List<Integer> sequencesIds;
+	private SequenceIDSet sequencesIds;
 	
 	// whether the sequence was found (used in ProSecCo)
 	private boolean isFound = false;
@@ -48,6 +48,14 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 	 * @param a set of integer containing sequence IDs
 	 */
 	public void setSequenceIDs(List<Integer> sequencesIds) {
+		this.sequencesIds = sequencesIds == null ? null : SequenceIDSet.of(sequencesIds);
+	}
+	
+	/**
+	 * Set the set of IDs of sequence containing this prefix
+	 * @param sequencesIds the compressed set of sequence IDs
+	 */
+	public void setSequenceIDs(SequenceIDSet sequencesIds) {
 		this.sequencesIds = sequencesIds;
 	}
 
@@ -65,7 +73,7 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 	 * @return the support as a string
 	 */
 	public String getRelativeSupportFormated(int sequencecount) {
-		double relSupport = ((double)sequencesIds.size()) / ((double) sequencecount);
+		double relSupport = ((double)sequencesIds.getCardinality()) / ((double) sequencecount);
 		// pretty formating :
 		DecimalFormat format = new DecimalFormat();
 		format.setMinimumFractionDigits(0); 
@@ -78,7 +86,7 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 	 * @return the support (an integer >= 1)
 	 */
 	public int getAbsoluteSupport(){
-		return sequencesIds.size();
+		return sequencesIds.getCardinality();
 	}
 
 	/**
@@ -100,7 +108,8 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 			clone.addItemset(it.cloneItemSet());
 		}
 		clone.additionalSupport = this.additionalSupport;
-		clone.sequencesIds = new ArrayList<Integer>(this.sequencesIds);
+		// the set is immutable
+		clone.sequencesIds = this.sequencesIds;
 		return clone;
 	}
 
@@ -185,7 +194,20 @@ public class SequentialPattern implements Comparable<SequentialPattern>{
 
 
 
+	/**
+	 * Get the IDs of the sequences containing this pattern
+	 * @return a read-only list of the IDs, in increasing order (they are copied from the set)
+	 */
 	public List<Integer> getSequenceIDs() {
+		return sequencesIds.toList();
+	}
+	
+	/**
+	 * Get the IDs of the sequences containing this pattern, as a compressed set that can be 
+	 * intersected with the set of another pattern
+	 * @return the set of IDs
+	 */
+	public SequenceIDSet getSequenceIDSet() {
 		return sequencesIds;
 	}
 
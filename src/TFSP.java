@@ -14,7 +14,9 @@ public class TFSP {
         long timeMaxDev;
         long timeMiningDataset;
         long start = System.currentTimeMillis();
-        double maxDev = Algorithms.computeMaxDevVC(dataset, delta);
+        // the dataset is read only once, and its profile is computed while it is loaded
+        SequenceDatabase database = Algorithms.loadDataset(dataset, true);
+        double maxDev = Algorithms.computeMaxDevVC(database.getProfile(), delta);
         timeMaxDev = System.currentTimeMillis() - start;
         double newTheta;
         if (FPF) {
@@ -36,7 +38,7 @@ public class TFSP {
         System.out.println("Corrected Theta: " + newTheta);
         System.out.println("Output File: " + outputFile);
         start = System.currentTimeMillis();
-        int numFSP = Algorithms.mining(dataset, outputFile, newTheta);
+        int numFSP = Algorithms.mining(database, outputFile, newTheta);
         timeMiningDataset = System.currentTimeMillis() - start;
         System.out.println("TFSP Founds: " + numFSP);
         System.out.println("Time Upper Bound on Maximum Deviation Computation: " + timeMaxDev + "ms");
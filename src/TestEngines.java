@@ -0,0 +1,47 @@
+import java.io.File;
+
+/**
+ * This class compares the two mining engines, PrefixSpan (projected databases, Algorithms.mining)
+ * and SPAM (vertical bitmaps, Algorithms.miningSPAM), on the datasets in the data folder. For each dataset and minimum frequency
+ * threshold, it mines the FSP with both engines, checks that they find the same number of FSP, and prints
+ * their running times.
+ */
+public class TestEngines {
+
+    public static void main(String[] args) {
+        String[] datasets = {"BIBLE", "BMS1", "BMS2", "FIFA", "KOSARAK", "LEVIATHAN", "MSNBC", "SIGN"};
+        double[][] theta = {{0.1, 0.05}, {0.004, 0.001}, {0.003, 0.001}, {0.25, 0.15}, {0.01, 0.002},
+                {0.1, 0.03}, {0.02, 0.005}, {0.4, 0.2}};
+        int iteration = 3;
+        new File("data/engines").mkdirs();
+        for (int index = 0; index < datasets.length; index++) {
+            String file = "data/" + datasets[index] + ".txt";
+            if (!new File(file).exists()) continue;
+            for (double t : theta[index]) {
+                String output = "data/engines/" + datasets[index] + "_FSP_";
+                long timePrefixSpan = 0;
+                long timeSPAM = 0;
+                int countPrefixSpan = 0;
+                int countSPAM = 0;
+                // the first iteration is not measured (warm-up of the JVM)
+                for (int i = 0; i <= iteration; i++) {
+                    long start = System.currentTimeMillis();
+                    countPrefixSpan = Algorithms.mining(file, output + "PrefixSpan.txt", t, true);
+                    long end = System.currentTimeMillis() - start;
+                    if (i > 0) timePrefixSpan += end;
+                    start = System.currentTimeMillis();
+                    countSPAM = Algorithms.miningSPAM(file, output + "SPAM.txt", t, true);
+                    end = System.currentTimeMillis() - start;
+                    if (i > 0) timeSPAM += end;
+                    System.gc();
+                }
+                System.out.println("Dataset: " + file + " Theta: " + t);
+                System.out.println("FSP PrefixSpan: " + countPrefixSpan + " FSP SPAM: " + countSPAM
+                        + (countPrefixSpan == countSPAM ? "" : " (DIFFERENT)"));
+                System.out.println("AVG Time PrefixSpan: " + timePrefixSpan / (iteration * 1.) + "ms");
+                System.out.println("AVG Time SPAM: " + timeSPAM / (iteration * 1.) + "ms");
+                System.out.println("Faster: " + (timePrefixSpan <= timeSPAM ? "PrefixSpan" : "SPAM"));
+            }
+        }
+    }
+}
@@ -21,8 +21,7 @@ public class TestSampling {
         ArrayList<String> dataset;
         ArrayList<Integer> newDataset = null;
         try {
-            FileInputStream fin = new FileInputStream(new File(fileIn));
-            br = new BufferedReader(new InputStreamReader(fin));
+            br = new BufferedReader(new InputStreamReader(FileChunks.open(fileIn)));
             dataset = new ArrayList<>();
             newDataset = new ArrayList<>();
             String line;
@@ -65,37 +64,32 @@ public class TestSampling {
      * @param theta         the minimum frequency threshold
      */
     public static void checkAppFPF(String file, double epsilon, int datasetSize, int sampleSize, int n, double theta) {
-        BufferedReader br = null;
-        HashMap<String, Double> the = new HashMap<>();
-        HashMap<String, Double> samp;
+        PatternReader reader = null;
+        HashMap<PatternReader.Key, Double> the = new HashMap<>();
+        HashMap<PatternReader.Key, Double> samp;
         String sampleMinned = "data/sampling/" + file + "_SAMPLE_FSP_FPF_";
-        String datasetMinned = "data/sampling/" + file + "_FSP.txt";
+        String datasetMinned = "data/sampling/" + file + "_FSP.bin";
         try {
-            FileInputStream fin = new FileInputStream(new File(datasetMinned));
-            br = new BufferedReader(new InputStreamReader(fin));
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] splitted = line.split(" #SUP: ");
-                double sup = Double.parseDouble(splitted[1]) / datasetSize;
-                the.put(splitted[0], sup);
+            reader = new PatternReader(datasetMinned);
+            while (reader.next()) {
+                double sup = reader.support() / (double) datasetSize;
+                the.put(reader.key(), sup);
             }
-            br.close();
+            reader.close();
             double maxTot = 0.;
             double avgMaxTot = 0.;
             int notApp = 0;
             for (int i = 0; i < n; i++) {
                 samp = new HashMap<>();
                 boolean isApprox = true;
-                fin = new FileInputStream(new File(sampleMinned + i + ".txt"));
-                br = new BufferedReader(new InputStreamReader(fin));
-                while ((line = br.readLine()) != null) {
-                    String[] splitted = line.split(" #SUP: ");
-                    double sup = Double.parseDouble(splitted[1]) / sampleSize;
-                    samp.put(splitted[0], sup);
+                reader = new PatternReader(sampleMinned + i + ".bin");
+                while (reader.next()) {
+                    double sup = reader.support() / (double) sampleSize;
+                    samp.put(reader.key(), sup);
                 }
-                br.close();
+                reader.close();
                 double max = 0.;
-                for (String seq : samp.keySet()) {
+                for (PatternReader.Key seq : samp.keySet()) {
                     double curr;
                     if (!the.containsKey(seq) || (curr = Math.abs(samp.get(seq) - the.get(seq))) > epsilon / 2.) {
                         isApprox = false;
@@ -105,7 +99,7 @@ public class TestSampling {
                     if (max < curr) max = curr;
                 }
                 if (isApprox) {
-                    for (String seq : the.keySet()) {
+                    for (PatternReader.Key seq : the.keySet()) {
                         if (the.get(seq) > theta + epsilon) {
                             if (!samp.containsKey(seq)) {
                                 notApp++;
@@ -123,9 +117,9 @@ public class TestSampling {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -145,47 +139,40 @@ public class TestSampling {
      * @param n             the number of enlarged datasets from the same real dataset (5)
      */
     public static void checkApp(String file, double epsilon, int datasetSize, int sampleSize, int n) {
-        BufferedReader br = null;
-        HashMap<String, Double> eps = new HashMap<>();
-        HashMap<String, Double> the = new HashMap<>();
-        HashMap<String, Double> samp;
+        PatternReader reader = null;
+        HashMap<PatternReader.Key, Double> eps = new HashMap<>();
+        HashMap<PatternReader.Key, Double> the = new HashMap<>();
+        HashMap<PatternReader.Key, Double> samp;
         String sampleMinned = "data/sampling/" + file + "_SAMPLE_FSP_";
-        String datasetMinned = "data/sampling/" + file + "_FSP.txt";
-        String datasetMinnedEps = "data/sampling/" + file + "_FSP_EPS.txt";
+        String datasetMinned = "data/sampling/" + file + "_FSP.bin";
+        String datasetMinnedEps = "data/sampling/" + file + "_FSP_EPS.bin";
         try {
-            FileInputStream fin = new FileInputStream(new File(datasetMinned));
-            br = new BufferedReader(new InputStreamReader(fin));
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] splitted = line.split(" #SUP: ");
-                double sup = Double.parseDouble(splitted[1]) / datasetSize;
-                the.put(splitted[0], sup);
+            reader = new PatternReader(datasetMinned);
+            while (reader.next()) {
+                double sup = reader.support() / (double) datasetSize;
+                the.put(reader.key(), sup);
             }
-            br.close();
-            fin = new FileInputStream(new File(datasetMinnedEps));
-            br = new BufferedReader(new InputStreamReader(fin));
-            while ((line = br.readLine()) != null) {
-                String[] splitted = line.split(" #SUP: ");
-                double sup = Double.parseDouble(splitted[1]) / datasetSize;
-                eps.put(splitted[0], sup);
+            reader.close();
+            reader = new PatternReader(datasetMinnedEps);
+            while (reader.next()) {
+                double sup = reader.support() / (double) datasetSize;
+                eps.put(reader.key(), sup);
             }
-            br.close();
+            reader.close();
             double maxTot = 0.;
             double avgMaxTot = 0.;
             int notApp = 0;
             for (int i = 0; i < n; i++) {
                 samp = new HashMap<>();
                 boolean isApprox = true;
-                fin = new FileInputStream(new File(sampleMinned + i + ".txt"));
-                br = new BufferedReader(new InputStreamReader(fin));
-                while ((line = br.readLine()) != null) {
-                    String[] splitted = line.split(" #SUP: ");
-                    double sup = Double.parseDouble(splitted[1]) / sampleSize;
-                    samp.put(splitted[0], sup);
+                reader = new PatternReader(sampleMinned + i + ".bin");
+                while (reader.next()) {
+                    double sup = reader.support() / (double) sampleSize;
+                    samp.put(reader.key(), sup);
                 }
-                br.close();
+                reader.close();
                 double max = 0.;
-                for (String seq : samp.keySet()) {
+                for (PatternReader.Key seq : samp.keySet()) {
                     double curr;
                     if (!eps.containsKey(seq) || (curr = Math.abs(samp.get(seq) - eps.get(seq))) > epsilon / 2.) {
                         isApprox = false;
@@ -195,7 +182,7 @@ public class TestSampling {
                     if (max < curr) max = curr;
                 }
                 if (isApprox) {
-                    for (String seq : the.keySet()) {
+                    for (PatternReader.Key seq : the.keySet()) {
                         if (!samp.containsKey(seq)) {
                             notApp++;
                             break;
@@ -212,9 +199,9 @@ public class TestSampling {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -233,8 +220,9 @@ public class TestSampling {
             String sampleFile = "data/sampling/" + datasets[index] + "_SAMPLE.txt";
             String sampleMinned = "data/sampling/" + datasets[index] + "_SAMPLE_FSP_";
             String sampleMinnedFPF = "data/sampling/" + datasets[index] + "_SAMPLE_FSP_FPF_";
-            String datasetMinned = "data/sampling/" + datasets[index] + "_FSP.txt";
-            String datasetMinnedEps = "data/sampling/" + datasets[index] + "_FSP_EPS.txt";
+            // the FSP are written in the binary format, that is smaller and faster to read
+            String datasetMinned = "data/sampling/" + datasets[index] + "_FSP.bin";
+            String datasetMinnedEps = "data/sampling/" + datasets[index] + "_FSP_EPS.bin";
             double epsilon = 0.01;
             double delta = 0.1;
             int datasetSize = replicate(file, datasetFile, rep);
@@ -251,29 +239,30 @@ public class TestSampling {
             System.out.println("Theta: " + theta[index]);
             for (int i = 0; i < iteration; i++) {
                 start = System.currentTimeMillis();
-                sampleSize = Algorithms.computeSampleSize(datasetFile, epsilon, delta)[1];
+                int[] sizes = Algorithms.computeSampleSize(datasetFile, epsilon, delta);
+                sampleSize = sizes[1];
                 end = System.currentTimeMillis() - start;
                 timeSampleSize += end;
                 start = System.currentTimeMillis();
-                Algorithms.createSample(datasetFile, datasetSize, sampleFile, sampleSize, i);
+                Algorithms.createSample(datasetFile, sizes[0], sampleFile, sampleSize, i);
                 end = System.currentTimeMillis() - start;
                 timeSampleCreation += end;
                 start = System.currentTimeMillis();
-                Algorithms.mining(sampleFile, sampleMinned + i + ".txt", theta[index] - epsilon / 2.);
+                Algorithms.mining(sampleFile, sampleMinned + i + ".bin", theta[index] - epsilon / 2.);
                 end = System.currentTimeMillis() - start;
                 timeMiningSample += end;
                 start = System.currentTimeMillis();
-                Algorithms.mining(sampleFile, sampleMinnedFPF + i + ".txt", theta[index] + epsilon / 2.);
+                Algorithms.mining(sampleFile, sampleMinnedFPF + i + ".bin", theta[index] + epsilon / 2.);
                 end = System.currentTimeMillis() - start;
                 timeMiningSampleFPF += end;
                 start = System.currentTimeMillis();
-                Algorithms.mining(datasetFile, datasetMinned, theta[index]);
+                Algorithms.mining(datasetFile, datasetMinned, theta[index], true, true);
                 end = System.currentTimeMillis() - start;
                 timeMiningDataset += end;
                 System.gc();
             }
             System.out.println("|S|/|D|:" + sampleSize/(datasetSize*1.));
-            Algorithms.mining(datasetFile, datasetMinnedEps, theta[index] - epsilon);
+            Algorithms.mining(datasetFile, datasetMinnedEps, theta[index] - epsilon, true, true);
             checkApp(datasets[index], epsilon, datasetSize, sampleSize, iteration);
             checkAppFPF(datasets[index], epsilon, datasetSize, sampleSize, iteration, theta[index]);
             System.out.println("AVG Time Sample Size Computation: " + timeSampleSize / (iteration*1.)+"ms");
@@ -29,8 +29,7 @@ public class TestTFSP {
         BufferedWriter bw = null;
         ArrayList<String> dat = new ArrayList<>();
         try {
-            FileInputStream fin = new FileInputStream(new File(dataset));
-            br = new BufferedReader(new InputStreamReader(fin));
+            br = new BufferedReader(new InputStreamReader(FileChunks.open(dataset)));
             String line;
             while ((line = br.readLine()) != null) {
                 dat.add(line);
@@ -66,38 +65,28 @@ public class TestTFSP {
      * @param j       the index of the theta considered
      */
     static void getPercentageFPFN(String dataset, int j) {
-        BufferedReader br = null;
-        HashSet<String> gt = new HashSet<>();
+        PatternReader reader = null;
+        HashSet<PatternReader.Key> gt = new HashSet<>();
         try {
-            String gtFSP = "data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".txt";
-            FileInputStream fin = new FileInputStream(new File(gtFSP));
-            br = new BufferedReader(new InputStreamReader(fin));
-            String line = br.readLine();
-            while (line != null) {
-                gt.add(line.split(" #SUP: ")[0]);
-                line = br.readLine();
-            }
-            br.close();
+            String gtFSP = "data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".bin";
+            reader = new PatternReader(gtFSP);
+            while (reader.next()) gt.add(reader.key());
+            reader.close();
             int totFp = 0;
             int totFn = 0;
             for (int k = 0; k < 4; k++) {
-                HashSet<String> fsp = new HashSet<>();
+                HashSet<PatternReader.Key> fsp = new HashSet<>();
                 int fp = 0;
                 int fn = 0;
-                String sampleFSP = "data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_THETA" + (j + 1) + ".txt";
-                fin = new FileInputStream(new File(sampleFSP));
-                br = new BufferedReader(new InputStreamReader(fin));
-                line = br.readLine();
-                while (line != null) {
-                    fsp.add(line.split(" #SUP: ")[0]);
-                    line = br.readLine();
-                }
-                br.close();
+                String sampleFSP = "data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_THETA" + (j + 1) + ".bin";
+                reader = new PatternReader(sampleFSP);
+                while (reader.next()) fsp.add(reader.key());
+                reader.close();
 
-                for (String s : gt) {
+                for (PatternReader.Key s : gt) {
                     if (!fsp.contains(s)) fn++;
                 }
-                for (String s : fsp) {
+                for (PatternReader.Key s : fsp) {
                     if (!gt.contains(s)) fp++;
                 }
                 if (fn > 0) totFn++;
@@ -109,9 +98,9 @@ public class TestTFSP {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -129,35 +118,24 @@ public class TestTFSP {
      * @param vc      true if the maxDev has been computed with the VC-dimension
      */
     static void getPercentageFP(String dataset, int j, boolean vc) {
-        BufferedReader br = null;
-        HashSet<String> gt = new HashSet<>();
+        PatternReader reader = null;
+        HashSet<PatternReader.Key> gt = new HashSet<>();
         try {
-            FileInputStream fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".txt"));
-            br = new BufferedReader(new InputStreamReader(fin));
-            String line = br.readLine();
-            while (line != null) {
-                gt.add(line.split(" #SUP: ")[0]);
-                line = br.readLine();
-            }
-            br.close();
+            reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".bin");
+            while (reader.next()) gt.add(reader.key());
+            reader.close();
             int totFp = 0;
             double percTFSP = 0.;
             for (int k = 0; k < 4; k++) {
-                HashSet<String> fsp = new HashSet<>();
+                HashSet<PatternReader.Key> fsp = new HashSet<>();
                 int fp = 0;
                 if (vc)
-                    fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_P" + (j + 1) + "_VC.txt"));
+                    reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_P" + (j + 1) + "_VC.bin");
                 else
-                    fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_P" + (j + 1) + "_RAD.txt"));
-                br = new BufferedReader(new InputStreamReader(fin));
-                line = br.readLine();
-                while (line != null) {
-                    fsp.add(line.split(" #SUP: ")[0]);
-                    line = br.readLine();
-                }
-                br.close();
-                fin.close();
-                for (String s : fsp) {
+                    reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_P" + (j + 1) + "_RAD.bin");
+                while (reader.next()) fsp.add(reader.key());
+                reader.close();
+                for (PatternReader.Key s : fsp) {
                     if (!gt.contains(s)) fp++;
                 }
                 if (fp > 0) totFp++;
@@ -176,9 +154,9 @@ public class TestTFSP {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -196,36 +174,25 @@ public class TestTFSP {
      * @param vc      true if the maxDev has been computed with the VC-dimension
      */
     static void getPercentageALL(String dataset, int j, boolean vc) {
-        BufferedReader br = null;
-        HashSet<String> gt = new HashSet<>();
+        PatternReader reader = null;
+        HashSet<PatternReader.Key> gt = new HashSet<>();
         try {
 
-            FileInputStream fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".txt"));
-            br = new BufferedReader(new InputStreamReader(fin));
-            String line = br.readLine();
-            while (line != null) {
-                gt.add(line.split(" #SUP: ")[0]);
-                line = br.readLine();
-            }
-            br.close();
+            reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_GT" + (j + 1) + ".bin");
+            while (reader.next()) gt.add(reader.key());
+            reader.close();
             int totALL = 0;
             double percFP = 0.;
             for (int k = 0; k < 4; k++) {
-                HashSet<String> fsp = new HashSet<>();
+                HashSet<PatternReader.Key> fsp = new HashSet<>();
                 int fn = 0;
                 if (vc)
-                    fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_M" + (j + 1) + "_VC.txt"));
+                    reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_M" + (j + 1) + "_VC.bin");
                 else
-                    fin = new FileInputStream(new File("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_M" + (j + 1) + "_RAD.txt"));
-                br = new BufferedReader(new InputStreamReader(fin));
-                line = br.readLine();
-                while (line != null) {
-                    fsp.add(line.split(" #SUP: ")[0]);
-                    line = br.readLine();
-                }
-                br.close();
-                fin.close();
-                for (String s : gt) {
+                    reader = new PatternReader("data/TFSP/samples/minedFiles/" + dataset + "_S" + (k + 1) + "_M" + (j + 1) + "_RAD.bin");
+                while (reader.next()) fsp.add(reader.key());
+                reader.close();
+                for (PatternReader.Key s : gt) {
                     if (!fsp.contains(s)) fn++;
                 }
                 if (fn == 0) totALL++;
@@ -244,9 +211,9 @@ public class TestTFSP {
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -298,17 +265,24 @@ public class TestTFSP {
             for (int i = 0; i < datasets.length; i++) {
                 System.out.println(datasets[i] + ": ");
                 String dataset = "data/" + datasets[i] + ".txt";
+                // the dataset and each sample are mined once with the two thresholds
+                double[] datasetThetas = {thetas[2 * i], thetas[2 * i + 1]};
+                // the FSP are written in the binary format, that is smaller and faster to read
+                String[] gtFSP = new String[2];
                 for (int j = 0; j < 2; j++) {
-                    double theta = thetas[2 * i + j];
-                    String gtFSP = "data/TFSP/samples/minedFiles/" + datasets[i] + "_GT" + (j + 1) + ".txt";
-                    System.out.print("Theta: " + theta + " - ");
-                    Algorithms.mining(dataset, gtFSP, theta);
-                    for (int k = 0; k < 4; k++) {
-                        String sample = "data/TFSP/samples/" + datasets[i] + "_S" + (k + 1) + ".txt";
-                        String sampleFSP = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_THETA" + (j + 1) + ".txt";
-                        Algorithms.mining(sample, sampleFSP, theta);
-
+                    gtFSP[j] = "data/TFSP/samples/minedFiles/" + datasets[i] + "_GT" + (j + 1) + ".bin";
+                }
+                Algorithms.mining(dataset, gtFSP, datasetThetas, true);
+                for (int k = 0; k < 4; k++) {
+                    String sample = "data/TFSP/samples/" + datasets[i] + "_S" + (k + 1) + ".txt";
+                    String[] sampleFSP = new String[2];
+                    for (int j = 0; j < 2; j++) {
+                        sampleFSP[j] = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_THETA" + (j + 1) + ".bin";
                     }
+                    Algorithms.mining(sample, sampleFSP, datasetThetas, true);
+                }
+                for (int j = 0; j < 2; j++) {
+                    System.out.print("Theta: " + datasetThetas[j] + " - ");
                     getPercentageFPFN(datasets[i], j);
                 }
             }
@@ -358,18 +332,29 @@ public class TestTFSP {
             System.out.println("*************************");
             System.out.println("TABLE 5:");
             for (int i = 0; i < datasets.length; i++) {
+                // each sample is mined once with theta plus and minus each bound, for the two thresholds
+                // (the files with theta minus the bounds are used for Table 6)
+                for (int k = 0; k < 4; k++) {
+                    String sample = "data/TFSP/samples/" + datasets[i] + "_S" + (k + 1) + ".txt";
+                    String prefix = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1);
+                    String[] sampleFSP = new String[8];
+                    double[] sampleThetas = new double[8];
+                    for (int j = 0; j < 2; j++) {
+                        double theta = thetas[2 * i + j];
+                        sampleFSP[4 * j] = prefix + "_P" + (j + 1) + "_VC.bin";
+                        sampleThetas[4 * j] = theta + maxDevVC[i * 4 + k];
+                        sampleFSP[4 * j + 1] = prefix + "_P" + (j + 1) + "_RAD.bin";
+                        sampleThetas[4 * j + 1] = theta + maxDevRad[i * 4 + k];
+                        sampleFSP[4 * j + 2] = prefix + "_M" + (j + 1) + "_VC.bin";
+                        sampleThetas[4 * j + 2] = theta - maxDevVC[i * 4 + k];
+                        sampleFSP[4 * j + 3] = prefix + "_M" + (j + 1) + "_RAD.bin";
+                        sampleThetas[4 * j + 3] = theta - maxDevRad[i * 4 + k];
+                    }
+                    Algorithms.mining(sample, sampleFSP, sampleThetas, true);
+                }
                 for (int j = 0; j < 2; j++) {
                     double theta = thetas[2 * i + j];
                     System.out.println(datasets[i] + " (theta: " + theta + ")");
-                    for (int k = 0; k < 4; k++) {
-
-                        String sample = "data/TFSP/samples/" + datasets[i] + "_S" + (k + 1) + ".txt";
-                        String sampleFSPVC = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_P" + (j + 1) + "_VC.txt";
-                        String sampleFSPRAD = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_P" + (j + 1) + "_RAD.txt";
-                        Algorithms.mining(sample, sampleFSPVC, theta + maxDevVC[i * 4 + k]);
-                        Algorithms.mining(sample, sampleFSPRAD, theta + maxDevRad[i * 4 + k]);
-
-                    }
                     getPercentageFP(datasets[i], j, true); //VC
                     getPercentageFP(datasets[i], j, false); //RAD
                 }
@@ -381,13 +366,6 @@ public class TestTFSP {
                 for (int j = 0; j < 2; j++) {
                     double theta = thetas[2 * i + j];
                     System.out.println(datasets[i] + " (theta: " + theta + ")");
-                    for (int k = 0; k < 4; k++) {
-                        String sample = "data/TFSP/samples/" + datasets[i] + "_S" + (k + 1) + ".txt";
-                        String sampleFSPVC = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_M" + (j + 1) + "_VC.txt";
-                        String sampleFSPRAD = "data/TFSP/samples/minedFiles/" + datasets[i] + "_S" + (k + 1) + "_M" + (j + 1) + "_RAD.txt";
-                        Algorithms.mining(sample, sampleFSPVC, theta - maxDevVC[i * 4 + k]);
-                        Algorithms.mining(sample, sampleFSPRAD, theta - maxDevRad[i * 4 + k]);
-                    }
                     getPercentageALL(datasets[i], j, true);
                     getPercentageALL(datasets[i], j, false);
                 }
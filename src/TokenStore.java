@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class gives access to the tokens of the sequences of a sequence database 
+ * (items, -1 and -2), by their position. The tokens are stored either in an array 
+ * on the heap, or off the heap in direct buffers or in a file mapped in memory,
+ * so that large datasets can be mined with a small heap, or compressed (see 
+ * CompressedTokenStore).
+ * <br/><br/>
+ * This class only reads the tokens: they are replaced with a writer (see rewrite()),
+ * which every store supports. The stores whose tokens can also be replaced one by one
+ * are MutableTokenStore.
+ * <br/><br/>
+ * Off-heap tokens are stored in segments of SEGMENT_SIZE tokens, because a buffer
+ * cannot contain more than 2^31 bytes.
+ *
+ * @see SequenceDatabase
+ */
+public abstract class TokenStore {
+	
+	/** the base 2 logarithm of the number of tokens in a segment of an off-heap store */
+	private static final int SEGMENT_SHIFT = 28;
+	
+	/** the number of tokens in a segment of an off-heap store */
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	
+	/** the number of tokens in this store */
+	protected int size;
+	
+	/**
+	 * Constructor
+	 * @param size the number of tokens
+	 */
+	protected TokenStore(int size) {
+		this.size = size;
+	}
+	
+	/**
+	 * Get the number of tokens in this store.
+	 * @return the number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get a token.
+	 * @param position the position of the token
+	 * @return the token
+	 */
+	public abstract int get(int position);
+	
+	/**
+	 * Copy consecutive tokens to an array.
+	 * @param position the position of the first token
+	 * @param array the array
+	 * @param offset the position of the first token in the array
+	 * @param length the number of tokens
+	 */
+	public abstract void get(int position, int[] array, int offset, int length);
+	
+	/**
+	 * Get a store that reads the same tokens as this store, and that can be used by another
+	 * thread at the same time as this store. The tokens must not be replaced while it is used.
+	 * @return this store, unless reading a token modifies its state
+	 */
+	public TokenStore duplicate() {
+		return this;
+	}
+	
+	/**
+	 * Get a writer that replaces the tokens of this store, from the first position.
+	 * The tokens that are not yet replaced can still be read while the writer is used, 
+	 * as long as each token is read before a token is written at its position.
+	 * @return the writer
+	 */
+	public abstract Writer rewrite();
+	
+	/**
+	 * A writer of the tokens of the sequences of a store, one after the other.
+	 */
+	public static abstract class Writer {
+		
+		/**
+		 * Indicate that the next token is the first token of a sequence.
+		 */
+		public void startSequence() {
+		}
+		
+		/**
+		 * Write the next token.
+		 * @param token the token
+		 */
+		public abstract void write(int token);
+		
+		/**
+		 * Indicate that all the tokens have been written.
+		 */
+		public void finish() {
+		}
+	}
+	
+	/**
+	 * Create a store for the tokens of an array, on the heap.
+	 * @param tokens the array (it is not copied)
+	 * @return the store
+	 */
+	public static MutableTokenStore wrap(int[] tokens) {
+		return new HeapTokenStore(tokens);
+	}
+	
+	/**
+	 * Create a store of tokens on the heap. 
+	 * @param size the number of tokens
+	 * @return the store, containing only zeros
+	 */
+	public static MutableTokenStore allocate(int size) {
+		return new HeapTokenStore(new int[size]);
+	}
+	
+	/**
+	 * Create a store of tokens in direct buffers, off the heap. Note that the 
+	 * direct memory is limited by the option -XX:MaxDirectMemorySize of the JVM,
+	 * which is equal to the maximum heap size by default.
+	 * @param size the number of tokens
+	 * @return the store, containing only zeros
+	 */
+	public static MutableTokenStore allocateDirect(int size) {
+		IntBuffer[] segments = new IntBuffer[(int) (((long) size + SEGMENT_SIZE - 1) >> SEGMENT_SHIFT)];
+		for (int i = 0; i < segments.length; i++) {
+			int length = Math.min(SEGMENT_SIZE, size - (i << SEGMENT_SHIFT));
+			segments[i] = ByteBuffer.allocateDirect(4 * length).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return new BufferTokenStore(segments, size);
+	}
+	
+	/**
+	 * Create a store for tokens written in a file, by mapping the file in memory. 
+	 * If the file is mapped in private mode, the tokens can be replaced but the changes 
+	 * are not written to the file (this requires a channel opened for writing).
+	 * @param channel the channel of the file
+	 * @param mode the mode of the mapping
+	 * @param offset the position of the first token in the file, in bytes
+	 * @param size the number of tokens
+	 * @param order the byte order of the tokens in the file
+	 * @return the store
+	 * @throws IOException exception if error while mapping the file.
+	 */
+	public static MutableTokenStore map(FileChannel channel, FileChannel.MapMode mode, long offset, int size, 
+			ByteOrder order) throws IOException {
+		IntBuffer[] segments = new IntBuffer[(int) (((long) size + SEGMENT_SIZE - 1) >> SEGMENT_SHIFT)];
+		for (int i = 0; i < segments.length; i++) {
+			int length = Math.min(SEGMENT_SIZE, size - (i << SEGMENT_SHIFT));
+			segments[i] = channel.map(mode, offset + 4L * (i << SEGMENT_SHIFT), 4L * length)
+					.order(order).asIntBuffer();
+		}
+		return new BufferTokenStore(segments, size);
+	}
+	
+	/**
+	 * A store of tokens in an array on the heap.
+	 */
+	private static final class HeapTokenStore extends MutableTokenStore {
+		/** the tokens */
+		private final int[] tokens;
+		
+		/**
+		 * Constructor
+		 * @param tokens the tokens
+		 */
+		HeapTokenStore(int[] tokens) {
+			super(tokens.length);
+			this.tokens = tokens;
+		}
+		
+		public int get(int position) {
+			return tokens[position];
+		}
+		
+		public void set(int position, int token) {
+			tokens[position] = token;
+		}
+		
+		public void get(int position, int[] array, int offset, int length) {
+			System.arraycopy(tokens, position, array, offset, length);
+		}
+		
+		public void put(int position, int[] array, int offset, int length) {
+			System.arraycopy(array, offset, tokens, position, length);
+		}
+	}
+	
+	/**
+	 * A store of tokens in segments of SEGMENT_SIZE tokens, that are direct 
+	 * buffers or files mapped in memory.
+	 */
+	private static final class BufferTokenStore extends MutableTokenStore {
+		/** the segments */
+		private final IntBuffer[] segments;
+		
+		/**
+		 * Constructor
+		 * @param segments the segments
+		 * @param size the number of tokens
+		 */
+		BufferTokenStore(IntBuffer[] segments, int size) {
+			super(size);
+			this.segments = segments;
+		}
+		
+		public int get(int position) {
+			return segments[position >>> SEGMENT_SHIFT].get(position & (SEGMENT_SIZE - 1));
+		}
+		
+		public void set(int position, int token) {
+			segments[position >>> SEGMENT_SHIFT].put(position & (SEGMENT_SIZE - 1), token);
+		}
+		
+		public void get(int position, int[] array, int offset, int length) {
+			while (length > 0) {
+				IntBuffer segment = segments[position >>> SEGMENT_SHIFT].duplicate();
+				segment.position(position & (SEGMENT_SIZE - 1));
+				int count = Math.min(length, segment.remaining());
+				segment.get(array, offset, count);
+				position += count;
+				offset += count;
+				length -= count;
+			}
+		}
+		
+		public void put(int position, int[] array, int offset, int length) {
+			while (length > 0) {
+				IntBuffer segment = segments[position >>> SEGMENT_SHIFT].duplicate();
+				segment.position(position & (SEGMENT_SIZE - 1));
+				int count = Math.min(length, segment.remaining());
+				segment.put(array, offset, count);
+				position += count;
+				offset += count;
+				length -= count;
+			}
+		}
+	}
+}